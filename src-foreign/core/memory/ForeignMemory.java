@@ -0,0 +1,48 @@
+package core.memory;
+
+import jdk.incubator.foreign.MemorySegment;
+import jdk.incubator.foreign.ResourceScope;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+/**
+ * memory segments of the incubating foreign memory api, which all belong to one shared resource scope.
+ * Closing the scope frees the memory and removes the mappings immediately. Buffers derived from the segments
+ * are checked against the scope, so a thread which still holds one gets an IllegalStateException instead of
+ * accessing freed memory.
+ * This class must only be loaded if the module jdk.incubator.foreign is present (see {@link MemoryArena}).
+ * It is compiled separately from src with --add-modules jdk.incubator.foreign.
+ */
+public class ForeignMemory implements MemoryBackend {
+
+    private final ResourceScope scope = ResourceScope.newSharedScope();
+
+    @Override
+    public ByteBuffer allocate(int bytes, int alignment) {
+        return MemorySegment.allocateNative(bytes, alignment, scope).asByteBuffer();
+    }
+
+    @Override
+    public ByteBuffer map(Path path, long position, long size, boolean writable) throws IOException {
+        FileChannel.MapMode mode = writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY;
+        return MemorySegment.mapFile(path, position, size, mode, scope).asByteBuffer();
+    }
+
+    /**
+     * the scope can not be closed while another thread is in the middle of an access, which only lasts for a
+     * single get or put, so closing is retried until that access is done
+     */
+    @Override
+    public void close() {
+        while (scope.isAlive()) {
+            try {
+                scope.close();
+            } catch (IllegalStateException e) {
+                Thread.onSpinWait();
+            }
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package core.simd;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * kernels using the incubating vector api. The species is the widest one supported by the cpu.
+ * This class must only be loaded if the module jdk.incubator.vector is present (see {@link Kernels}).
+ * It is compiled separately from src with --add-modules jdk.incubator.vector.
+ */
+public class SimdKernels implements KernelBackend {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Float> FLOAT_SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    @Override
+    public void add(double[] a, int ao, double[] b, int bo, double[] target, int to, int n) {
+        int i = 0;
+        int bound = SPECIES.loopBound(n);
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector va = DoubleVector.fromArray(SPECIES, a, ao + i);
+            DoubleVector vb = DoubleVector.fromArray(SPECIES, b, bo + i);
+            va.add(vb).intoArray(target, to + i);
+        }
+        for (; i < n; i++) {
+            target[to + i] = a[ao + i] + b[bo + i];
+        }
+    }
+
+    @Override
+    public void sub(double[] a, int ao, double[] b, int bo, double[] target, int to, int n) {
+        int i = 0;
+        int bound = SPECIES.loopBound(n);
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector va = DoubleVector.fromArray(SPECIES, a, ao + i);
+            DoubleVector vb = DoubleVector.fromArray(SPECIES, b, bo + i);
+            va.sub(vb).intoArray(target, to + i);
+        }
+        for (; i < n; i++) {
+            target[to + i] = a[ao + i] - b[bo + i];
+        }
+    }
+
+    @Override
+    public void hadamard(double[] a, int ao, double[] b, int bo, double[] target, int to, int n) {
+        int i = 0;
+        int bound = SPECIES.loopBound(n);
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector va = DoubleVector.fromArray(SPECIES, a, ao + i);
+            DoubleVector vb = DoubleVector.fromArray(SPECIES, b, bo + i);
+            va.mul(vb).intoArray(target, to + i);
+        }
+        for (; i < n; i++) {
+            target[to + i] = a[ao + i] * b[bo + i];
+        }
+    }
+
+    @Override
+    public void scale(double[] a, int ao, double scalar, double[] target, int to, int n) {
+        int i = 0;
+        int bound = SPECIES.loopBound(n);
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, a, ao + i).mul(scalar).intoArray(target, to + i);
+        }
+        for (; i < n; i++) {
+            target[to + i] = a[ao + i] * scalar;
+        }
+    }
+
+    @Override
+    public void axpy(double alpha, double[] x, int xo, double[] y, int yo, int n) {
+        int i = 0;
+        int bound = SPECIES.loopBound(n);
+        DoubleVector va = DoubleVector.broadcast(SPECIES, alpha);
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector vx = DoubleVector.fromArray(SPECIES, x, xo + i);
+            DoubleVector vy = DoubleVector.fromArray(SPECIES, y, yo + i);
+            vx.fma(va, vy).intoArray(y, yo + i);
+        }
+        for (; i < n; i++) {
+            y[yo + i] += alpha * x[xo + i];
+        }
+    }
+
+    @Override
+    public double dot(double[] a, int ao, double[] b, int bo, int n) {
+        int i = 0;
+        int bound = SPECIES.loopBound(n);
+        DoubleVector acc = DoubleVector.zero(SPECIES);
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector va = DoubleVector.fromArray(SPECIES, a, ao + i);
+            DoubleVector vb = DoubleVector.fromArray(SPECIES, b, bo + i);
+            acc = va.fma(vb, acc);
+        }
+        double s = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < n; i++) {
+            s += a[ao + i] * b[bo + i];
+        }
+        return s;
+    }
+
+    @Override
+    public void add(float[] a, int ao, float[] b, int bo, float[] target, int to, int n) {
+        int i = 0;
+        int bound = FLOAT_SPECIES.loopBound(n);
+        for (; i < bound; i += FLOAT_SPECIES.length()) {
+            FloatVector va = FloatVector.fromArray(FLOAT_SPECIES, a, ao + i);
+            FloatVector vb = FloatVector.fromArray(FLOAT_SPECIES, b, bo + i);
+            va.add(vb).intoArray(target, to + i);
+        }
+        for (; i < n; i++) {
+            target[to + i] = a[ao + i] + b[bo + i];
+        }
+    }
+
+    @Override
+    public void sub(float[] a, int ao, float[] b, int bo, float[] target, int to, int n) {
+        int i = 0;
+        int bound = FLOAT_SPECIES.loopBound(n);
+        for (; i < bound; i += FLOAT_SPECIES.length()) {
+            FloatVector va = FloatVector.fromArray(FLOAT_SPECIES, a, ao + i);
+            FloatVector vb = FloatVector.fromArray(FLOAT_SPECIES, b, bo + i);
+            va.sub(vb).intoArray(target, to + i);
+        }
+        for (; i < n; i++) {
+            target[to + i] = a[ao + i] - b[bo + i];
+        }
+    }
+
+    @Override
+    public void hadamard(float[] a, int ao, float[] b, int bo, float[] target, int to, int n) {
+        int i = 0;
+        int bound = FLOAT_SPECIES.loopBound(n);
+        for (; i < bound; i += FLOAT_SPECIES.length()) {
+            FloatVector va = FloatVector.fromArray(FLOAT_SPECIES, a, ao + i);
+            FloatVector vb = FloatVector.fromArray(FLOAT_SPECIES, b, bo + i);
+            va.mul(vb).intoArray(target, to + i);
+        }
+        for (; i < n; i++) {
+            target[to + i] = a[ao + i] * b[bo + i];
+        }
+    }
+
+    @Override
+    public void scale(float[] a, int ao, float scalar, float[] target, int to, int n) {
+        int i = 0;
+        int bound = FLOAT_SPECIES.loopBound(n);
+        for (; i < bound; i += FLOAT_SPECIES.length()) {
+            FloatVector.fromArray(FLOAT_SPECIES, a, ao + i).mul(scalar).intoArray(target, to + i);
+        }
+        for (; i < n; i++) {
+            target[to + i] = a[ao + i] * scalar;
+        }
+    }
+
+    @Override
+    public void axpy(float alpha, float[] x, int xo, float[] y, int yo, int n) {
+        int i = 0;
+        int bound = FLOAT_SPECIES.loopBound(n);
+        FloatVector va = FloatVector.broadcast(FLOAT_SPECIES, alpha);
+        for (; i < bound; i += FLOAT_SPECIES.length()) {
+            FloatVector vx = FloatVector.fromArray(FLOAT_SPECIES, x, xo + i);
+            FloatVector vy = FloatVector.fromArray(FLOAT_SPECIES, y, yo + i);
+            vx.fma(va, vy).intoArray(y, yo + i);
+        }
+        for (; i < n; i++) {
+            y[yo + i] += alpha * x[xo + i];
+        }
+    }
+
+    @Override
+    public float dot(float[] a, int ao, float[] b, int bo, int n) {
+        int i = 0;
+        int bound = FLOAT_SPECIES.loopBound(n);
+        FloatVector acc = FloatVector.zero(FLOAT_SPECIES);
+        for (; i < bound; i += FLOAT_SPECIES.length()) {
+            FloatVector va = FloatVector.fromArray(FLOAT_SPECIES, a, ao + i);
+            FloatVector vb = FloatVector.fromArray(FLOAT_SPECIES, b, bo + i);
+            acc = va.fma(vb, acc);
+        }
+        float s = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < n; i++) {
+            s += a[ao + i] * b[bo + i];
+        }
+        return s;
+    }
+
+    /**
+     * every vector holds SPECIES.length() rows of the slice, x is loaded with a gather
+     */
+    @Override
+    public void sell(double[] val, int[] index, int offset, int c, int width, double[] x, double[] sums) {
+        int r = 0;
+        int bound = SPECIES.loopBound(c);
+        for (; r < bound; r += SPECIES.length()) {
+            DoubleVector acc = DoubleVector.zero(SPECIES);
+            for (int j = 0; j < width; j++) {
+                int o = offset + j * c + r;
+                DoubleVector vx = DoubleVector.fromArray(SPECIES, x, 0, index, o);
+                acc = DoubleVector.fromArray(SPECIES, val, o).fma(vx, acc);
+            }
+            acc.intoArray(sums, r);
+        }
+        for (; r < c; r++) {
+            double sum = 0;
+            for (int j = 0; j < width; j++) {
+                int o = offset + j * c + r;
+                sum += val[o] * x[index[o]];
+            }
+            sums[r] = sum;
+        }
+    }
+
+    @Override
+    public String name() {
+        return "simd (" + SPECIES.length() + " double / " + FLOAT_SPECIES.length() + " float lanes)";
+    }
+}
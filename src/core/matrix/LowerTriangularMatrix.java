@@ -0,0 +1,299 @@
+package core.matrix;
+
+import core.exceptions.NotSupportedOperation;
+import core.matrix.dense.DenseMatrix;
+import core.simd.Kernels;
+import core.vector.DenseVector;
+import core.vector.Vector;
+
+/**
+ * lower triangular n x n matrix in the packed layout of {@link SymmetricMatrix}: the element (i,j) with j <= i
+ * is located at data[i * (i+1) / 2 + j], the elements above the diagonal are 0 and not stored.
+ * This is the type of the cholesky factor of a symmetric matrix.
+ */
+public class LowerTriangularMatrix extends Matrix<LowerTriangularMatrix> {
+
+    private double[] data;
+
+    public LowerTriangularMatrix(int n) {
+        super(n, n);
+        data = new double[SymmetricMatrix.length(n)];
+    }
+
+    public LowerTriangularMatrix(int m, int n) {
+        this(n);
+        if (m != n) throw new RuntimeException("triangular matrices must be square");
+    }
+
+    /**
+     * wraps a packed triangle without copying it
+     */
+    public LowerTriangularMatrix(double[] data, int n) {
+        super(n, n);
+        if (data.length < SymmetricMatrix.length(n)) throw new RuntimeException("storage does not fit dimensions");
+        this.data = data;
+    }
+
+    private static int start(int row) {
+        return SymmetricMatrix.start(row);
+    }
+
+    /**
+     * solves L * x = b by forward substitution
+     */
+    public DenseVector solve(DenseVector b) {
+        if (b.getSize() != this.getN()) throw new RuntimeException();
+        double[] x = new DenseVector(b).getValues();
+        for (int i = 0; i < this.getN(); i++) {
+            int r = start(i);
+            x[i] = (x[i] - Kernels.dot(data, r, x, 0, i)) / data[r + i];
+        }
+        return new DenseVector(x);
+    }
+
+    /**
+     * solves L^T * x = b by backward substitution. Every solved x[i] is subtracted from the remaining
+     * entries using row i of L, so L is still traversed along its rows.
+     */
+    public DenseVector solveTransposed(DenseVector b) {
+        if (b.getSize() != this.getN()) throw new RuntimeException();
+        double[] x = new DenseVector(b).getValues();
+        for (int i = this.getN() - 1; i >= 0; i--) {
+            int r = start(i);
+            x[i] /= data[r + i];
+            Kernels.axpy(-x[i], data, r, x, 0, i);
+        }
+        return new DenseVector(x);
+    }
+
+    @Override
+    public void mul_partial_row(DenseVector target, Vector<?> vec, int row) {
+        int r = start(row);
+        if (vec instanceof DenseVector) {
+            target.setValue(row, Kernels.dot(data, r, ((DenseVector) vec).getValues(), 0, row + 1));
+            return;
+        }
+        double sum = 0;
+        for (int j = 0; j <= row; j++) {
+            sum += data[r + j] * vec.getValue(j);
+        }
+        target.setValue(row, sum);
+    }
+
+    @Override
+    public void mul_partial_row(DenseMatrix target, Matrix<?> matrix, int row) {
+        int r = start(row);
+        double[] t = target.getData();
+        int to = target.index(row, 0);
+        for (int j = 0; j < matrix.getN(); j++) {
+            t[to + j] = 0;
+        }
+        for (int k = 0; k <= row; k++) {
+            double a = data[r + k];
+            if (a == 0) continue;
+            if (matrix instanceof DenseMatrix) {
+                DenseMatrix b = (DenseMatrix) matrix;
+                Kernels.axpy(a, b.getData(), b.index(k, 0), t, to, b.getN());
+            } else {
+                for (int j = 0; j < matrix.getN(); j++) {
+                    t[to + j] += a * matrix.getValue(k, j);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void gemv_transposed_partial(double alpha, Vector<?> x, double[] y, int rowStart, int rowEnd) {
+        for (int i = rowStart; i < rowEnd; i++) {
+            double v = alpha * x.getValue(i);
+            if (v == 0) continue;
+            Kernels.axpy(v, data, start(i), y, 0, i + 1);
+        }
+    }
+
+    @Override
+    public void scale_partial_row(LowerTriangularMatrix target, double scalar, int row) {
+        Kernels.scale(data, start(row), scalar, target.data, start(row), row + 1);
+    }
+
+    @Override
+    public void add_partial_row(LowerTriangularMatrix target, LowerTriangularMatrix matrix, int row) {
+        Kernels.add(data, start(row), matrix.data, start(row), target.data, start(row), row + 1);
+    }
+
+    @Override
+    public void sub_partial_row(LowerTriangularMatrix target, LowerTriangularMatrix matrix, int row) {
+        Kernels.sub(data, start(row), matrix.data, start(row), target.data, start(row), row + 1);
+    }
+
+    /**
+     * the transpose is upper triangular and can not be represented by this class
+     */
+    @Override
+    public LowerTriangularMatrix transpose() {
+        throw new NotSupportedOperation();
+    }
+
+    @Override
+    public LowerTriangularMatrix self_transpose() {
+        throw new NotSupportedOperation();
+    }
+
+    @Override
+    public LowerTriangularMatrix self_identity() {
+        for (int i = 0; i < this.getM(); i++) {
+            data[start(i) + i] = 1;
+        }
+        return this;
+    }
+
+    @Override
+    public double norm_1() {
+        double max = 0;
+        for (int i = 0; i < this.getM(); i++) {
+            int r = start(i);
+            double sum = 0;
+            for (int j = 0; j <= i; j++) {
+                sum += Math.abs(data[r + j]);
+            }
+            if (sum > max) max = sum;
+        }
+        return max;
+    }
+
+    @Override
+    public double norm_infinity() {
+        double[] sums = new double[this.getN()];
+        for (int i = 0; i < this.getM(); i++) {
+            int r = start(i);
+            for (int j = 0; j <= i; j++) {
+                sums[j] += Math.abs(data[r + j]);
+            }
+        }
+        double max = 0;
+        for (double sum : sums) {
+            if (sum > max) max = sum;
+        }
+        return max;
+    }
+
+    @Override
+    public boolean isSymmetric() {
+        for (int i = 0; i < this.getM(); i++) {
+            int r = start(i);
+            for (int j = 0; j < i; j++) {
+                if (data[r + j] != 0) return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public double determinant() {
+        double det = 1;
+        for (int i = 0; i < this.getM(); i++) {
+            det *= data[start(i) + i];
+        }
+        return det;
+    }
+
+    @Override
+    public void swapRow(int r1, int row2) {
+        throw new NotSupportedOperation();
+    }
+
+    @Override
+    public void swapColumn(int c1, int c2) {
+        throw new NotSupportedOperation();
+    }
+
+    @Override
+    public void scale_column(int column, double scalar) {
+        for (int i = column; i < this.getM(); i++) {
+            data[start(i) + column] *= scalar;
+        }
+    }
+
+    @Override
+    public void scale_row(int row, double scalar) {
+        scale_partial_row(this, scalar, row);
+    }
+
+    /**
+     * entries above the diagonal can only be set to 0
+     */
+    @Override
+    public void setValue(int m, int n, double value) {
+        if (n > m) {
+            if (value != 0) throw new NotSupportedOperation();
+            return;
+        }
+        data[start(m) + n] = value;
+    }
+
+    @Override
+    public double getValue(int m, int n) {
+        return n > m ? 0 : data[start(m) + n];
+    }
+
+    @Override
+    public boolean hasValue(double v) {
+        if (v == 0 && this.getN() > 1) return true;
+        for (double d : data) {
+            if (d == v) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void replaceValue(double v, double r) {
+        for (int i = 0; i < data.length; i++) {
+            if (data[i] == v) data[i] = r;
+        }
+    }
+
+    @Override
+    public LowerTriangularMatrix newInstance() {
+        return new LowerTriangularMatrix(this.getN());
+    }
+
+    @Override
+    public LowerTriangularMatrix copy() {
+        LowerTriangularMatrix mat = new LowerTriangularMatrix(this.getN());
+        System.arraycopy(data, 0, mat.data, 0, data.length);
+        return mat;
+    }
+
+    @Override
+    public DenseMatrix copyToDense() {
+        DenseMatrix mat = new DenseMatrix(this.getM(), this.getN());
+        for (int i = 0; i < this.getM(); i++) {
+            int r = start(i);
+            for (int j = 0; j <= i; j++) {
+                mat.setValue(i, j, data[r + j]);
+            }
+        }
+        return mat;
+    }
+
+    @Override
+    public int storageSize() {
+        return data.length;
+    }
+
+    public double[] getData() {
+        return data;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < this.getM(); i++) {
+            for (int n = 0; n < this.getN(); n++) {
+                builder.append(String.format("%-8.3f ", getValue(i, n)));
+            }
+            builder.append("\n");
+        }
+        return builder.toString();
+    }
+}
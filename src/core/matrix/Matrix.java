@@ -3,17 +3,22 @@ package core.matrix;
 import core.exceptions.NotMatchingSlotsException;
 import core.exceptions.NotSupportedOperation;
 import core.matrix.dense.DenseMatrix;
+import core.matrix.dense.Gemm;
 import core.threads.Pool;
 import core.threads.PoolThreadRange;
 import core.threads.PoolFunction;
 import core.vector.Vector;
 import core.vector.DenseVector;
 
+import java.util.Arrays;
+
 
 public abstract class Matrix<T extends Matrix<T>> {
 
     protected int M,N;
 
+    private double[][] buffers;
+
 
     public Matrix(int m, int n) {
         M = m;
@@ -37,134 +42,360 @@ public abstract class Matrix<T extends Matrix<T>> {
 
     public abstract int storageSize();
 
+    /**
+     * scratch arrays for the parallel products, one per thread and at least length long. They are allocated on
+     * the first call and reused afterwards like the cached row partitions, so repeated products do not allocate.
+     * The contents are undefined. Parallel products on the same matrix must not run at the same time.
+     */
+    protected double[][] buffers(int threads, int length){
+        double[][] cached = buffers;
+        if(cached != null && cached.length >= threads && (threads == 0 || cached[0].length >= length)) return cached;
+        int size = cached != null && cached.length > 0 ? Math.max(length, cached[0].length) : length;
+        cached = new double[Math.max(threads, cached == null ? 0 : cached.length)][size];
+        buffers = cached;
+        return cached;
+    }
+
+    /**
+     * returns the m x n block starting at (rowStart, colStart). The block shares the storage with this matrix,
+     * so changes to one of them are visible in the other one.
+     */
+    public T view(int rowStart, int colStart, int m, int n){
+        throw new NotSupportedOperation();
+    }
+    public T row(int row){
+        return view(row, 0, 1, this.getN());
+    }
+    public T column(int column){
+        return view(0, column, this.getM(), 1);
+    }
+
 
     public DenseVector mul(Vector<?> vec, Pool pool){
-        if(vec.getSize() != this.getN()) throw new RuntimeException();
+        return mulInto(vec, new DenseVector(this.getM()), pool);
+    }
+    public DenseMatrix mul(Matrix<?> mat, Pool pool){
+        return mulInto(mat, new DenseMatrix(this.getM(), mat.getN()), pool);
+    }
+    public T scale(double scalar, Pool pool){
+        return scaleInto(scalar, this.newInstance(), pool);
+    }
+    public T self_scale(double scalar, Pool pool){
+        return scaleInto(scalar, (T)this, pool);
+    }
+    public T add(T other, Pool pool){
+        return addInto(other, this.newInstance(), pool);
+    }
+    public T self_add(T other, Pool pool){
+        return addInto(other, (T)this, pool);
+    }
+    public T sub(T other, Pool pool){
+        return subInto(other, this.newInstance(), pool);
+    }
+    public T self_sub(T other, Pool pool){
+        return subInto(other, (T)this, pool);
+    }
+
+    public DenseVector mul(Vector<?> vec){
+        return mulInto(vec, new DenseVector(this.getM()));
+    }
+    public DenseMatrix mul(Matrix<?> mat){
+        return mulInto(mat, new DenseMatrix(this.getM(), mat.getN()));
+    }
+    public T scale(double scalar){
+        return scaleInto(scalar, this.newInstance());
+    }
+    public T self_scale(double scalar){
+        return scaleInto(scalar, (T)this);
+    }
+    public T add(T other){
+        return addInto(other, this.newInstance());
+    }
+    public T self_add(T other){
+        return addInto(other, (T)this);
+    }
+    public T sub(T other){
+        return subInto(other, this.newInstance());
+    }
+    public T self_sub(T other){
+        return subInto(other, (T)this);
+    }
 
-        DenseVector target = new DenseVector(this.getM());
+    /**
+     * The *Into methods write their result into the given target instead of allocating a new object.
+     * The target of mulInto must not be one of the operands.
+     * The target of scaleInto, addInto and subInto must have the same dimensions as this matrix and may be this matrix.
+     * They return the target.
+     */
+    public DenseVector mulInto(Vector<?> vec, DenseVector target, Pool pool){
+        if(vec.getSize() != this.getN() || target.getSize() != this.getM()) throw new RuntimeException();
         PoolFunction function = (index, core) -> mul_partial_row(target, vec, index);
         pool.executeTotal(function, this.getM(), false);
-
         return target;
     }
-    public DenseMatrix mul(Matrix<?> mat, Pool pool){
+    public DenseMatrix mulInto(Matrix<?> mat, DenseMatrix target, Pool pool){
         if(mat.getM() != this.getN()) throw new RuntimeException();
-
-        DenseMatrix target = new DenseMatrix(this.getM(), mat.getN());
+        if(target.getM() != this.getM() || target.getN() != mat.getN()) throw new RuntimeException();
         PoolFunction function = (index, core) -> {
             mul_partial_row(target, mat, index);
         };
         pool.executeTotal(function, this.getM(),false);
         return target;
     }
-    public T scale(double scalar, Pool pool){
-        T target = this.newInstance();
+    public T scaleInto(double scalar, T target, Pool pool){
+        if(this.getM() != target.getM() || this.getN() != target.getN()) throw new RuntimeException();
         PoolFunction function = (index, core) -> {
             scale_partial_row(target, scalar,index);
         };
         pool.executeTotal(function, this.getM(),false);
         return target;
     }
-    public T self_scale(double scalar, Pool pool){
-        PoolFunction function = (index, core) -> {
-            scale_partial_row((T)this, scalar,index);
-        };
-        pool.executeTotal(function, this.getM(),false);
-        return (T) this;
-    }
-    public T add(T other, Pool pool){
+    public T addInto(T other, T target, Pool pool){
         if(this.getM() != other.getM() || this.getN() != other.getN()) throw new RuntimeException();
-        T target = this.newInstance();
+        if(this.getM() != target.getM() || this.getN() != target.getN()) throw new RuntimeException();
         PoolFunction function = (index, core) -> {
             add_partial_row(target, other, index);
         };
         pool.executeTotal(function, this.getM(),false);
         return target;
     }
-    public T self_add(T other, Pool pool){
-        if(this.getM() != other.getM() || this.getN() != other.getN()) throw new RuntimeException();
-        PoolFunction function = (index, core) -> {
-            add_partial_row((T)this, other, index);
-        };
-        pool.executeTotal(function, this.getM(), false);
-        return (T)this;
-    }
-    public T sub(T other, Pool pool){
+    public T subInto(T other, T target, Pool pool){
         if(this.getM() != other.getM() || this.getN() != other.getN()) throw new RuntimeException();
-        T target = this.newInstance();
+        if(this.getM() != target.getM() || this.getN() != target.getN()) throw new RuntimeException();
         PoolFunction function = (index, core) -> {
             sub_partial_row(target, other, index);
         };
         pool.executeTotal(function, this.getM(), false);
         return target;
     }
-    public T self_sub(T other, Pool pool){
-        if(this.getM() != other.getM() || this.getN() != other.getN()) throw new RuntimeException();
-        PoolFunction function = (index, core) -> {
-            sub_partial_row((T)this, other, index);
-        };
-        pool.executeTotal(function, this.getM(), false);
-        return (T)this;
-    }
 
-    public DenseVector mul(Vector<?> vec){
-        DenseVector target = new DenseVector(this.getM());
+    public DenseVector mulInto(Vector<?> vec, DenseVector target){
+        if(vec.getSize() != this.getN() || target.getSize() != this.getM()) throw new RuntimeException();
         for(int i = 0; i < this.getM(); i++){
             this.mul_partial_row(target, vec, i);
         }
         return target;
     }
-    public DenseMatrix mul(Matrix<?> mat){
+    public DenseMatrix mulInto(Matrix<?> mat, DenseMatrix target){
         if(mat.getM() != this.getN()) throw new RuntimeException();
-
-        DenseMatrix target = new DenseMatrix(this.getM(), mat.getN());
+        if(target.getM() != this.getM() || target.getN() != mat.getN()) throw new RuntimeException();
         for(int i = 0; i < this.getM(); i++){
             this.mul_partial_row(target, mat, i);
         }
         return target;
     }
-    public T scale(double scalar){
-        T target = this.newInstance();
+    public T scaleInto(double scalar, T target){
+        if(this.getM() != target.getM() || this.getN() != target.getN()) throw new RuntimeException();
         for(int i = 0; i < this.getM(); i++){
             this.scale_partial_row(target, scalar,i);
         }
         return target;
     }
-    public T self_scale(double scalar){
-        for(int i = 0; i < this.getM(); i++){
-            this.scale_partial_row((T)this, scalar,i);
-        }
-        return (T)this;
-    }
-    public T add(T other){
+    public T addInto(T other, T target){
         if(this.getM() != other.getM() || this.getN() != other.getN()) throw new RuntimeException();
-        T target = this.newInstance();
+        if(this.getM() != target.getM() || this.getN() != target.getN()) throw new RuntimeException();
         for(int i = 0; i < this.getM(); i++){
             this.add_partial_row(target, other, i);
         }
         return target;
     }
-    public T self_add(T other){
+    public T subInto(T other, T target){
         if(this.getM() != other.getM() || this.getN() != other.getN()) throw new RuntimeException();
-        for(int i = 0; i < this.getM(); i++){
-            this.add_partial_row((T) this, other, i);
-        }
-        return (T)this;
-    }
-    public T sub(T other){
-        if(this.getM() != other.getM() || this.getN() != other.getN()) throw new RuntimeException();
-        T target = this.newInstance();
+        if(this.getM() != target.getM() || this.getN() != target.getN()) throw new RuntimeException();
         for(int i = 0; i < this.getM(); i++){
             this.sub_partial_row(target, other, i);
         }
         return target;
     }
-    public T self_sub(T other){
-        if(this.getM() != other.getM() || this.getN() != other.getN()) throw new RuntimeException();
+
+    /**
+     * A^T * x without creating the transpose
+     */
+    public DenseVector mulTransposed(Vector<?> vec){
+        return mulTransposedInto(vec, new DenseVector(this.getN()));
+    }
+    public DenseVector mulTransposed(Vector<?> vec, Pool pool){
+        return mulTransposedInto(vec, new DenseVector(this.getN()), pool);
+    }
+    public DenseVector mulTransposedInto(Vector<?> vec, DenseVector target){
+        return gemv(1, this, true, vec, 0, target);
+    }
+    public DenseVector mulTransposedInto(Vector<?> vec, DenseVector target, Pool pool){
+        return gemv(1, this, true, vec, 0, target, pool);
+    }
+
+    /**
+     * computes y = alpha * op(A) * x + beta * y where op(A) is A or A^T.
+     * If beta is 0, y does not need to be initialised. y must not be x.
+     */
+    public static DenseVector gemv(double alpha, Matrix<?> a, boolean trans, Vector<?> x, double beta, DenseVector y){
+        checkGemv(a, trans, x, y);
+        if(!trans){
+            for(int i = 0; i < a.getM(); i++){
+                a.gemv_partial_row(alpha, x, beta, y, i);
+            }
+        }else{
+            scale(y.getValues(), 0, y.getSize(), beta);
+            a.gemv_transposed_partial(alpha, x, y.getValues(), 0, a.getM());
+        }
+        return y;
+    }
+    public static DenseVector gemv(double alpha, Matrix<?> a, boolean trans, Vector<?> x, double beta, DenseVector y,
+                                   Pool pool){
+        checkGemv(a, trans, x, y);
+        if(!trans){
+            PoolFunction function = (index, core) -> a.gemv_partial_row(alpha, x, beta, y, index);
+            pool.executeTotal(function, a.getM(), false);
+        }else{
+            //every thread scatters its block of rows into its own buffer, the buffers are reduced afterwards
+            int threads = pool.getActiveThreads();
+            double[] target = y.getValues();
+            double[][] buffers = a.buffers(threads, a.getN());
+            PoolFunction function = (index, core) -> {
+                Arrays.fill(buffers[index], 0, a.getN(), 0);
+                a.gemv_transposed_partial(alpha, x, buffers[index],
+                        (int) (index * a.getM() / (double) threads),
+                        (int) ((index + 1) * a.getM() / (double) threads));
+            };
+            pool.executeTotal(function, threads, false);
+            PoolFunction reduce = (index, core) -> {
+                int start = (int) (index * a.getN() / (double) threads);
+                int end = (int) ((index + 1) * a.getN() / (double) threads);
+                scale(target, start, end, beta);
+                for(int b = 0; b < threads; b++){
+                    double[] buffer = buffers[b];
+                    for(int i = start; i < end; i++){
+                        target[i] += buffer[i];
+                    }
+                }
+            };
+            pool.executeTotal(reduce, threads, false);
+        }
+        return y;
+    }
+
+    /**
+     * computes C = alpha * op(A) * op(B) + beta * C where op(X) is X or X^T.
+     * If beta is 0, C does not need to be initialised. C must not share storage with A or B.
+     * Products of two dense matrices use {@link core.matrix.dense.Gemm}, everything else is computed row by row.
+     * A^T is never created: with transA the rows of A are scattered into the rows of C.
+     */
+    public static DenseMatrix gemm(double alpha, Matrix<?> a, boolean transA, Matrix<?> b, boolean transB,
+                                   double beta, DenseMatrix c){
+        if(a instanceof DenseMatrix && b instanceof DenseMatrix){
+            return Gemm.gemm(alpha, (DenseMatrix) a, transA, (DenseMatrix) b, transB, beta, c);
+        }
+        checkGemm(a, transA, b, transB, c);
+        if(transA){
+            scale_columns(c, beta, 0, c.getN());
+            a.gemm_transposed_partial(alpha, b, transB, c, 0, c.getN());
+            return c;
+        }
+        for(int i = 0; i < a.getM(); i++){
+            a.gemm_partial_row(alpha, b, transB, beta, c, i);
+        }
+        return c;
+    }
+    public static DenseMatrix gemm(double alpha, Matrix<?> a, boolean transA, Matrix<?> b, boolean transB,
+                                   double beta, DenseMatrix c, Pool pool){
+        if(a instanceof DenseMatrix && b instanceof DenseMatrix){
+            return Gemm.gemm(alpha, (DenseMatrix) a, transA, (DenseMatrix) b, transB, beta, c, pool);
+        }
+        checkGemm(a, transA, b, transB, c);
+        if(transA){
+            //the rows of A scatter into every row of C, so the threads split the columns of C instead
+            int threads = Math.min(pool.getActiveThreads(), c.getN());
+            if(threads == 0) return c;
+            PoolFunction function = (index, core) -> {
+                int start = (int) ((long) index * c.getN() / threads);
+                int end = (int) ((long) (index + 1) * c.getN() / threads);
+                scale_columns(c, beta, start, end);
+                a.gemm_transposed_partial(alpha, b, transB, c, start, end);
+            };
+            pool.executeTotal(function, threads, false);
+            return c;
+        }
+        PoolFunction function = (index, core) -> a.gemm_partial_row(alpha, b, transB, beta, c, index);
+        pool.executeTotal(function, a.getM(), false);
+        return c;
+    }
+
+    private static void checkGemv(Matrix<?> a, boolean trans, Vector<?> x, DenseVector y){
+        if(x.getSize() != (trans ? a.getM() : a.getN())) throw new RuntimeException();
+        if(y.getSize() != (trans ? a.getN() : a.getM())) throw new RuntimeException();
+    }
+    private static void checkGemm(Matrix<?> a, boolean transA, Matrix<?> b, boolean transB, DenseMatrix c){
+        int m = transA ? a.getN() : a.getM();
+        int n = transA ? a.getM() : a.getN();
+        if(n != (transB ? b.getN() : b.getM())) throw new RuntimeException();
+        if(c.getM() != m || c.getN() != (transB ? b.getM() : b.getN())) throw new RuntimeException();
+    }
+    private static void scale_columns(DenseMatrix c, double beta, int start, int end){
+        if(beta == 1) return;
+        double[] data = c.getData();
+        for(int i = 0; i < c.getM(); i++){
+            scale(data, c.index(i, start), c.index(i, start) + end - start, beta);
+        }
+    }
+    private static void scale(double[] values, int start, int end, double beta){
+        if(beta == 1) return;
+        for(int i = start; i < end; i++){
+            values[i] = beta == 0 ? 0 : beta * values[i];
+        }
+    }
+
+    /**
+     * y[row] = alpha * (A * x)[row] + beta * y[row]
+     */
+    public void gemv_partial_row(double alpha, Vector<?> x, double beta, DenseVector y, int row){
+        double sum = 0;
+        for(int i = 0; i < this.getN(); i++){
+            sum += getValue(row, i) * x.getValue(i);
+        }
+        y.setValue(row, beta == 0 ? alpha * sum : alpha * sum + beta * y.getValue(row));
+    }
+
+    /**
+     * y += alpha * A[rowStart:rowEnd, :]^T * x[rowStart:rowEnd]
+     * y has the length N of this matrix.
+     */
+    public void gemv_transposed_partial(double alpha, Vector<?> x, double[] y, int rowStart, int rowEnd){
+        for(int i = rowStart; i < rowEnd; i++){
+            double v = alpha * x.getValue(i);
+            if(v == 0) continue;
+            for(int n = 0; n < this.getN(); n++){
+                y[n] += v * getValue(i, n);
+            }
+        }
+    }
+
+    /**
+     * C[row, :] = alpha * (A * op(B))[row, :] + beta * C[row, :]
+     */
+    public void gemm_partial_row(double alpha, Matrix<?> b, boolean transB, double beta, DenseMatrix c, int row){
+        for(int j = 0; j < c.getN(); j++){
+            double sum = 0;
+            for(int k = 0; k < this.getN(); k++){
+                sum += getValue(row, k) * (transB ? b.getValue(j, k) : b.getValue(k, j));
+            }
+            c.setValue(row, j, beta == 0 ? alpha * sum : alpha * sum + beta * c.getValue(row, j));
+        }
+    }
+
+    /**
+     * C[:, colStart:colEnd] += alpha * (A^T * op(B))[:, colStart:colEnd], computed by scattering the rows of A:
+     * A[i, k] * op(B)[i, :] is added to C[k, :]
+     */
+    public void gemm_transposed_partial(double alpha, Matrix<?> b, boolean transB, DenseMatrix c, int colStart, int colEnd){
         for(int i = 0; i < this.getM(); i++){
-            this.sub_partial_row((T)this, other, i);
+            for(int k = 0; k < this.getN(); k++){
+                double v = alpha * getValue(i, k);
+                if(v == 0) continue;
+                for(int j = colStart; j < colEnd; j++){
+                    c.setValue(k, j, c.getValue(k, j) + v * (transB ? b.getValue(j, i) : b.getValue(i, j)));
+                }
+            }
         }
-        return (T)this;
     }
 
     public abstract void mul_partial_row(DenseVector target, Vector<?> vec, int row);
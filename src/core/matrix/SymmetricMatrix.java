@@ -0,0 +1,367 @@
+package core.matrix;
+
+import core.exceptions.NotSupportedOperation;
+import core.matrix.dense.DenseMatrix;
+import core.simd.Kernels;
+import core.threads.Pool;
+import core.threads.PoolFunction;
+import core.vector.DenseVector;
+import core.vector.Vector;
+
+import java.util.Arrays;
+
+/**
+ * symmetric n x n matrix which only stores the lower triangle (n * (n+1) / 2 entries).
+ * The triangle is packed row by row: the element (i,j) with j <= i is located at data[i * (i+1) / 2 + j],
+ * the element (j,i) refers to the same entry.
+ *
+ * The matrix vector product reads every stored entry once and uses it for both of its positions.
+ */
+public class SymmetricMatrix extends Matrix<SymmetricMatrix> {
+
+    private double[] data;
+
+    public SymmetricMatrix(int n) {
+        super(n, n);
+        data = new double[length(n)];
+    }
+
+    public SymmetricMatrix(int m, int n) {
+        this(n);
+        if (m != n) throw new RuntimeException("symmetric matrices must be square");
+    }
+
+    /**
+     * copies the lower triangle of the given square matrix. The upper triangle is not read.
+     */
+    public SymmetricMatrix(Matrix<?> matrix) {
+        this(matrix.getM(), matrix.getN());
+        for (int i = 0; i < this.getM(); i++) {
+            int r = start(i);
+            for (int j = 0; j <= i; j++) {
+                data[r + j] = matrix.getValue(i, j);
+            }
+        }
+    }
+
+    /**
+     * number of stored entries of a n x n symmetric matrix
+     */
+    public static int length(int n) {
+        long length = (long) n * (n + 1) / 2;
+        if (length > Integer.MAX_VALUE - 8) throw new RuntimeException("matrix too large for packed storage");
+        return (int) length;
+    }
+
+    /**
+     * position of the first entry of the given row in the packed array
+     */
+    public static int start(int row) {
+        return (int) ((long) row * (row + 1) / 2);
+    }
+
+    public int index(int m, int n) {
+        return m >= n ? start(m) + n : start(n) + m;
+    }
+
+    /**
+     * sum_j A[row, j] * x[j]. The part left of the diagonal is contiguous, the part right of it
+     * is the column below the diagonal.
+     */
+    private double rowDot(int row, double[] x) {
+        int r = start(row);
+        double sum = Kernels.dot(data, r, x, 0, row + 1);
+        int k = r + row;
+        for (int j = row + 1; j < this.getN(); j++) {
+            k += j;
+            sum += data[k] * x[j];
+        }
+        return sum;
+    }
+
+    /**
+     * y += A[rowStart:rowEnd, 0:rowEnd] * x  and  y += A[rowStart:rowEnd, 0:rowStart]^T * x
+     * This covers every stored entry of the rows once. All threads scatter into the first part of y,
+     * so the parallel version gives each thread its own y.
+     */
+    private void symv_partial(double[] x, double[] y, int rowStart, int rowEnd) {
+        for (int i = rowStart; i < rowEnd; i++) {
+            int r = start(i);
+            double xi = x[i];
+            double sum = Kernels.dot(data, r, x, 0, i);
+            if (xi != 0) Kernels.axpy(xi, data, r, y, 0, i);
+            y[i] += sum + data[r + i] * xi;
+        }
+    }
+
+    /**
+     * first row of the block of the given thread, chosen so that all blocks hold about the same number of entries
+     */
+    private int split(int index, int threads) {
+        if (index >= threads) return this.getM();
+        return (int) Math.sqrt((double) index / threads * this.getM() * this.getM());
+    }
+
+    private static double[] values(Vector<?> vec) {
+        return vec instanceof DenseVector ? ((DenseVector) vec).getValues() : new DenseVector(vec).getValues();
+    }
+
+    @Override
+    public DenseVector mulInto(Vector<?> vec, DenseVector target) {
+        if (vec.getSize() != this.getN() || target.getSize() != this.getM()) throw new RuntimeException();
+        double[] y = target.getValues();
+        for (int i = 0; i < y.length; i++) {
+            y[i] = 0;
+        }
+        symv_partial(values(vec), y, 0, this.getM());
+        return target;
+    }
+
+    @Override
+    public DenseVector mulInto(Vector<?> vec, DenseVector target, Pool pool) {
+        if (vec.getSize() != this.getN() || target.getSize() != this.getM()) throw new RuntimeException();
+        int threads = pool.getActiveThreads();
+        double[] x = values(vec);
+        double[] y = target.getValues();
+        double[][] buffers = buffers(threads, this.getM());
+        PoolFunction function = (index, core) -> {
+            int rowStart = split(index, threads);
+            int rowEnd = split(index + 1, threads);
+            //the block of rows only touches y[0:rowEnd]
+            Arrays.fill(buffers[index], 0, rowEnd, 0);
+            symv_partial(x, buffers[index], rowStart, rowEnd);
+        };
+        pool.executeTotal(function, threads, false);
+        PoolFunction reduce = (index, core) -> {
+            int start = (int) (index * this.getM() / (double) threads);
+            int end = (int) ((index + 1) * this.getM() / (double) threads);
+            for (int i = start; i < end; i++) {
+                y[i] = 0;
+            }
+            for (int b = 0; b < threads; b++) {
+                //buffer b only holds values below split(b + 1)
+                double[] buffer = buffers[b];
+                for (int i = start; i < Math.min(end, split(b + 1, threads)); i++) {
+                    y[i] += buffer[i];
+                }
+            }
+        };
+        pool.executeTotal(reduce, threads, false);
+        return target;
+    }
+
+    @Override
+    public void mul_partial_row(DenseVector target, Vector<?> vec, int row) {
+        if (vec instanceof DenseVector) {
+            target.setValue(row, rowDot(row, ((DenseVector) vec).getValues()));
+            return;
+        }
+        double sum = 0;
+        for (int j = 0; j < this.getN(); j++) {
+            sum += data[index(row, j)] * vec.getValue(j);
+        }
+        target.setValue(row, sum);
+    }
+
+    @Override
+    public void mul_partial_row(DenseMatrix target, Matrix<?> matrix, int row) {
+        double[] t = target.getData();
+        int to = target.index(row, 0);
+        for (int j = 0; j < matrix.getN(); j++) {
+            t[to + j] = 0;
+        }
+        for (int k = 0; k < this.getN(); k++) {
+            double a = data[index(row, k)];
+            if (a == 0) continue;
+            if (matrix instanceof DenseMatrix) {
+                DenseMatrix b = (DenseMatrix) matrix;
+                Kernels.axpy(a, b.getData(), b.index(k, 0), t, to, b.getN());
+            } else {
+                for (int j = 0; j < matrix.getN(); j++) {
+                    t[to + j] += a * matrix.getValue(k, j);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void gemv_partial_row(double alpha, Vector<?> x, double beta, DenseVector y, int row) {
+        if (!(x instanceof DenseVector)) {
+            super.gemv_partial_row(alpha, x, beta, y, row);
+            return;
+        }
+        double sum = rowDot(row, ((DenseVector) x).getValues());
+        double[] yd = y.getValues();
+        yd[row] = beta == 0 ? alpha * sum : alpha * sum + beta * yd[row];
+    }
+
+    /**
+     * the rows of the packed triangle form the stored entries, row i holds i+1 of them
+     */
+    @Override
+    public void scale_partial_row(SymmetricMatrix target, double scalar, int row) {
+        Kernels.scale(data, start(row), scalar, target.data, start(row), row + 1);
+    }
+
+    @Override
+    public void add_partial_row(SymmetricMatrix target, SymmetricMatrix matrix, int row) {
+        Kernels.add(data, start(row), matrix.data, start(row), target.data, start(row), row + 1);
+    }
+
+    @Override
+    public void sub_partial_row(SymmetricMatrix target, SymmetricMatrix matrix, int row) {
+        Kernels.sub(data, start(row), matrix.data, start(row), target.data, start(row), row + 1);
+    }
+
+    @Override
+    public SymmetricMatrix transpose() {
+        return copy();
+    }
+
+    @Override
+    public SymmetricMatrix self_transpose() {
+        return this;
+    }
+
+    @Override
+    public SymmetricMatrix self_identity() {
+        for (int i = 0; i < this.getM(); i++) {
+            data[start(i) + i] = 1;
+        }
+        return this;
+    }
+
+    /**
+     * row sums and column sums are equal, so both norms share this implementation
+     */
+    @Override
+    public double norm_1() {
+        double[] sums = new double[this.getN()];
+        for (int i = 0; i < this.getM(); i++) {
+            int r = start(i);
+            for (int j = 0; j < i; j++) {
+                double v = Math.abs(data[r + j]);
+                sums[i] += v;
+                sums[j] += v;
+            }
+            sums[i] += Math.abs(data[r + i]);
+        }
+        double max = 0;
+        for (double sum : sums) {
+            if (sum > max) max = sum;
+        }
+        return max;
+    }
+
+    @Override
+    public double norm_infinity() {
+        return norm_1();
+    }
+
+    @Override
+    public boolean isSymmetric() {
+        return true;
+    }
+
+    @Override
+    public double determinant() {
+        return copyToDense().determinant();
+    }
+
+    /**
+     * swapping only rows or only columns destroys the symmetry
+     */
+    @Override
+    public void swapRow(int r1, int row2) {
+        throw new NotSupportedOperation();
+    }
+
+    @Override
+    public void swapColumn(int c1, int c2) {
+        throw new NotSupportedOperation();
+    }
+
+    @Override
+    public void scale_column(int column, double scalar) {
+        throw new NotSupportedOperation();
+    }
+
+    @Override
+    public void scale_row(int column, double scalar) {
+        throw new NotSupportedOperation();
+    }
+
+    /**
+     * sets both (m,n) and (n,m)
+     */
+    @Override
+    public void setValue(int m, int n, double value) {
+        data[index(m, n)] = value;
+    }
+
+    @Override
+    public double getValue(int m, int n) {
+        return data[index(m, n)];
+    }
+
+    @Override
+    public boolean hasValue(double v) {
+        for (double d : data) {
+            if (d == v) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void replaceValue(double v, double r) {
+        for (int i = 0; i < data.length; i++) {
+            if (data[i] == v) data[i] = r;
+        }
+    }
+
+    @Override
+    public SymmetricMatrix newInstance() {
+        return new SymmetricMatrix(this.getN());
+    }
+
+    @Override
+    public SymmetricMatrix copy() {
+        SymmetricMatrix mat = new SymmetricMatrix(this.getN());
+        System.arraycopy(data, 0, mat.data, 0, data.length);
+        return mat;
+    }
+
+    @Override
+    public DenseMatrix copyToDense() {
+        DenseMatrix mat = new DenseMatrix(this.getM(), this.getN());
+        for (int i = 0; i < this.getM(); i++) {
+            int r = start(i);
+            for (int j = 0; j <= i; j++) {
+                mat.setValue(i, j, data[r + j]);
+                mat.setValue(j, i, data[r + j]);
+            }
+        }
+        return mat;
+    }
+
+    @Override
+    public int storageSize() {
+        return data.length;
+    }
+
+    public double[] getData() {
+        return data;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < this.getM(); i++) {
+            for (int n = 0; n < this.getN(); n++) {
+                builder.append(String.format("%-8.3f ", getValue(i, n)));
+            }
+            builder.append("\n");
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,351 @@
+package core.matrix.band;
+
+import core.exceptions.NotSupportedOperation;
+import core.matrix.Matrix;
+import core.matrix.dense.DenseMatrix;
+import core.simd.Kernels;
+import core.vector.DenseVector;
+import core.vector.Vector;
+
+/**
+ * matrix whose non-zero entries lie within kl diagonals below and ku diagonals above the main diagonal.
+ *
+ * The band is stored row by row: row i holds the columns i-kl ... i+ku, so the element (i,j) is located at
+ * data[i * (kl + ku + 1) + j - i + kl]. Positions of the band which lie outside of the matrix are stored as 0.
+ * Storage and row operations are O(n * (kl + ku)).
+ */
+public class BandMatrix extends Matrix<BandMatrix> {
+
+    private double[] data;
+    private int kl;
+    private int ku;
+    private int width;
+
+    public BandMatrix(int m, int n, int kl, int ku) {
+        super(m, n);
+        if (kl < 0 || ku < 0) throw new RuntimeException("bandwidths must not be negative");
+        this.kl = kl;
+        this.ku = ku;
+        this.width = kl + ku + 1;
+        this.data = new double[m * width];
+    }
+
+    public BandMatrix(int n, int kl, int ku) {
+        this(n, n, kl, ku);
+    }
+
+    /**
+     * copies the band of the given matrix. Entries outside of the band are ignored.
+     */
+    public BandMatrix(Matrix<?> matrix, int kl, int ku) {
+        this(matrix.getM(), matrix.getN(), kl, ku);
+        for (int i = 0; i < this.getM(); i++) {
+            for (int j = first(i); j < last(i); j++) {
+                data[index(i, j)] = matrix.getValue(i, j);
+            }
+        }
+    }
+
+    /**
+     * first column of the band in the given row
+     */
+    public int first(int row) {
+        return Math.max(0, row - kl);
+    }
+
+    /**
+     * column after the last column of the band in the given row
+     */
+    public int last(int row) {
+        return Math.min(this.getN(), row + ku + 1);
+    }
+
+    public boolean inBand(int m, int n) {
+        return n >= m - kl && n <= m + ku;
+    }
+
+    public int index(int m, int n) {
+        return m * width + n - m + kl;
+    }
+
+    @Override
+    public void mul_partial_row(DenseVector target, Vector<?> vec, int row) {
+        int first = first(row);
+        int n = last(row) - first;
+        double sum = 0;
+        if (n > 0 && vec instanceof DenseVector) {
+            sum = Kernels.dot(data, index(row, first), ((DenseVector) vec).getValues(), first, n);
+        } else {
+            for (int j = first; j < first + n; j++) {
+                sum += data[index(row, j)] * vec.getValue(j);
+            }
+        }
+        target.setValue(row, sum);
+    }
+
+    @Override
+    public void mul_partial_row(DenseMatrix target, Matrix<?> matrix, int row) {
+        double[] t = target.getData();
+        int to = target.index(row, 0);
+        for (int j = 0; j < matrix.getN(); j++) {
+            t[to + j] = 0;
+        }
+        for (int k = first(row); k < last(row); k++) {
+            double a = data[index(row, k)];
+            if (a == 0) continue;
+            if (matrix instanceof DenseMatrix) {
+                DenseMatrix b = (DenseMatrix) matrix;
+                Kernels.axpy(a, b.getData(), b.index(k, 0), t, to, b.getN());
+            } else {
+                for (int j = 0; j < matrix.getN(); j++) {
+                    t[to + j] += a * matrix.getValue(k, j);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void gemv_partial_row(double alpha, Vector<?> x, double beta, DenseVector y, int row) {
+        double sum = 0;
+        for (int j = first(row); j < last(row); j++) {
+            sum += data[index(row, j)] * x.getValue(j);
+        }
+        double[] yd = y.getValues();
+        yd[row] = beta == 0 ? alpha * sum : alpha * sum + beta * yd[row];
+    }
+
+    @Override
+    public void gemv_transposed_partial(double alpha, Vector<?> x, double[] y, int rowStart, int rowEnd) {
+        for (int i = rowStart; i < rowEnd; i++) {
+            double v = alpha * x.getValue(i);
+            if (v == 0 || last(i) <= first(i)) continue;
+            Kernels.axpy(v, data, index(i, first(i)), y, first(i), last(i) - first(i));
+        }
+    }
+
+    private void checkBand(BandMatrix matrix) {
+        if (matrix.kl != kl || matrix.ku != ku) throw new RuntimeException("bandwidths do not match");
+    }
+
+    @Override
+    public void scale_partial_row(BandMatrix target, double scalar, int row) {
+        checkBand(target);
+        Kernels.scale(data, row * width, scalar, target.data, row * width, width);
+    }
+
+    @Override
+    public void add_partial_row(BandMatrix target, BandMatrix matrix, int row) {
+        checkBand(target);
+        checkBand(matrix);
+        Kernels.add(data, row * width, matrix.data, row * width, target.data, row * width, width);
+    }
+
+    @Override
+    public void sub_partial_row(BandMatrix target, BandMatrix matrix, int row) {
+        checkBand(target);
+        checkBand(matrix);
+        Kernels.sub(data, row * width, matrix.data, row * width, target.data, row * width, width);
+    }
+
+    /**
+     * the transpose has the bandwidths swapped
+     */
+    @Override
+    public BandMatrix transpose() {
+        BandMatrix target = new BandMatrix(this.getN(), this.getM(), ku, kl);
+        for (int i = 0; i < this.getM(); i++) {
+            for (int j = first(i); j < last(i); j++) {
+                target.data[target.index(j, i)] = data[index(i, j)];
+            }
+        }
+        return target;
+    }
+
+    /**
+     * only square matrices with kl = ku can be transposed in place
+     */
+    @Override
+    public BandMatrix self_transpose() {
+        if (kl != ku || this.getM() != this.getN()) throw new NotSupportedOperation();
+        for (int i = 0; i < this.getM(); i++) {
+            for (int j = first(i); j < i; j++) {
+                double v = data[index(i, j)];
+                data[index(i, j)] = data[index(j, i)];
+                data[index(j, i)] = v;
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public BandMatrix self_identity() {
+        for (int i = 0; i < Math.min(this.getM(), this.getN()); i++) {
+            data[index(i, i)] = 1;
+        }
+        return this;
+    }
+
+    @Override
+    public double norm_1() {
+        double max = 0;
+        for (int i = 0; i < this.getM(); i++) {
+            double sum = 0;
+            for (int j = first(i); j < last(i); j++) {
+                sum += Math.abs(data[index(i, j)]);
+            }
+            if (sum > max) max = sum;
+        }
+        return max;
+    }
+
+    @Override
+    public double norm_infinity() {
+        double[] sums = new double[this.getN()];
+        for (int i = 0; i < this.getM(); i++) {
+            for (int j = first(i); j < last(i); j++) {
+                sums[j] += Math.abs(data[index(i, j)]);
+            }
+        }
+        double max = 0;
+        for (double sum : sums) {
+            if (sum > max) max = sum;
+        }
+        return max;
+    }
+
+    @Override
+    public boolean isSymmetric() {
+        if (this.getM() != this.getN()) return false;
+        for (int i = 0; i < this.getM(); i++) {
+            for (int j = first(i); j < last(i); j++) {
+                if (data[index(i, j)] != getValue(j, i)) return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public double determinant() {
+        return copyToDense().determinant();
+    }
+
+    /**
+     * swapping rows or columns moves entries out of the band
+     */
+    @Override
+    public void swapRow(int r1, int row2) {
+        throw new NotSupportedOperation();
+    }
+
+    @Override
+    public void swapColumn(int c1, int c2) {
+        throw new NotSupportedOperation();
+    }
+
+    @Override
+    public void scale_column(int column, double scalar) {
+        for (int i = Math.max(0, column - ku); i < Math.min(this.getM(), column + kl + 1); i++) {
+            data[index(i, column)] *= scalar;
+        }
+    }
+
+    @Override
+    public void scale_row(int row, double scalar) {
+        scale_partial_row(this, scalar, row);
+    }
+
+    /**
+     * entries outside of the band can only be set to 0
+     */
+    @Override
+    public void setValue(int m, int n, double value) {
+        if (!inBand(m, n)) {
+            if (value != 0) throw new NotSupportedOperation();
+            return;
+        }
+        data[index(m, n)] = value;
+    }
+
+    @Override
+    public double getValue(int m, int n) {
+        return inBand(m, n) ? data[index(m, n)] : 0;
+    }
+
+    @Override
+    public boolean hasValue(double v) {
+        for (int i = 0; i < this.getM(); i++) {
+            for (int j = first(i); j < last(i); j++) {
+                if (data[index(i, j)] == v) return true;
+            }
+        }
+        return v == 0 && (long) this.getM() * this.getN() > storageSize();
+    }
+
+    @Override
+    public void replaceValue(double v, double r) {
+        for (int i = 0; i < this.getM(); i++) {
+            for (int j = first(i); j < last(i); j++) {
+                if (data[index(i, j)] == v) data[index(i, j)] = r;
+            }
+        }
+    }
+
+    @Override
+    public BandMatrix newInstance() {
+        return new BandMatrix(this.getM(), this.getN(), kl, ku);
+    }
+
+    @Override
+    public BandMatrix copy() {
+        BandMatrix mat = newInstance();
+        System.arraycopy(data, 0, mat.data, 0, data.length);
+        return mat;
+    }
+
+    @Override
+    public DenseMatrix copyToDense() {
+        DenseMatrix mat = new DenseMatrix(this.getM(), this.getN());
+        for (int i = 0; i < this.getM(); i++) {
+            for (int j = first(i); j < last(i); j++) {
+                mat.setValue(i, j, data[index(i, j)]);
+            }
+        }
+        return mat;
+    }
+
+    /**
+     * number of entries within the band
+     */
+    @Override
+    public int storageSize() {
+        int size = 0;
+        for (int i = 0; i < this.getM(); i++) {
+            size += Math.max(0, last(i) - first(i));
+        }
+        return size;
+    }
+
+    public double[] getData() {
+        return data;
+    }
+
+    public int getLowerBandwidth() {
+        return kl;
+    }
+
+    public int getUpperBandwidth() {
+        return ku;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < this.getM(); i++) {
+            for (int n = 0; n < this.getN(); n++) {
+                builder.append(String.format("%-8.3f ", getValue(i, n)));
+            }
+            builder.append("\n");
+        }
+        return builder.toString();
+    }
+}
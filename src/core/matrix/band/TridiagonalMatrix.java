@@ -0,0 +1,288 @@
+package core.matrix.band;
+
+import core.exceptions.NotSupportedOperation;
+import core.matrix.Matrix;
+import core.matrix.dense.DenseMatrix;
+import core.vector.DenseVector;
+import core.vector.Vector;
+
+/**
+ * square matrix with non-zero entries on the main diagonal and the two diagonals next to it.
+ * The diagonals are stored in three arrays of length n:
+ * lower[i] = (i, i-1), diagonal[i] = (i, i) and upper[i] = (i, i+1). lower[0] and upper[n-1] are not used.
+ */
+public class TridiagonalMatrix extends Matrix<TridiagonalMatrix> {
+
+    private double[] lower;
+    private double[] diagonal;
+    private double[] upper;
+
+    public TridiagonalMatrix(int n) {
+        super(n, n);
+        lower = new double[n];
+        diagonal = new double[n];
+        upper = new double[n];
+    }
+
+    public TridiagonalMatrix(int m, int n) {
+        this(n);
+        if (m != n) throw new RuntimeException("tridiagonal matrices must be square");
+    }
+
+    /**
+     * wraps the given diagonals without copying them
+     */
+    public TridiagonalMatrix(double[] lower, double[] diagonal, double[] upper) {
+        super(diagonal.length, diagonal.length);
+        if (lower.length != diagonal.length || upper.length != diagonal.length)
+            throw new RuntimeException("diagonals must have the same length");
+        this.lower = lower;
+        this.diagonal = diagonal;
+        this.upper = upper;
+    }
+
+    @Override
+    public void mul_partial_row(DenseVector target, Vector<?> vec, int row) {
+        target.setValue(row, rowDot(row, vec));
+    }
+
+    private double rowDot(int row, Vector<?> vec) {
+        double sum = diagonal[row] * vec.getValue(row);
+        if (row > 0) sum += lower[row] * vec.getValue(row - 1);
+        if (row < this.getN() - 1) sum += upper[row] * vec.getValue(row + 1);
+        return sum;
+    }
+
+    @Override
+    public void mul_partial_row(DenseMatrix target, Matrix<?> matrix, int row) {
+        for (int j = 0; j < matrix.getN(); j++) {
+            double sum = diagonal[row] * matrix.getValue(row, j);
+            if (row > 0) sum += lower[row] * matrix.getValue(row - 1, j);
+            if (row < this.getN() - 1) sum += upper[row] * matrix.getValue(row + 1, j);
+            target.setValue(row, j, sum);
+        }
+    }
+
+    @Override
+    public void gemv_partial_row(double alpha, Vector<?> x, double beta, DenseVector y, int row) {
+        double sum = rowDot(row, x);
+        double[] yd = y.getValues();
+        yd[row] = beta == 0 ? alpha * sum : alpha * sum + beta * yd[row];
+    }
+
+    @Override
+    public void gemv_transposed_partial(double alpha, Vector<?> x, double[] y, int rowStart, int rowEnd) {
+        for (int i = rowStart; i < rowEnd; i++) {
+            double v = alpha * x.getValue(i);
+            if (v == 0) continue;
+            y[i] += v * diagonal[i];
+            if (i > 0) y[i - 1] += v * lower[i];
+            if (i < this.getN() - 1) y[i + 1] += v * upper[i];
+        }
+    }
+
+    @Override
+    public void scale_partial_row(TridiagonalMatrix target, double scalar, int row) {
+        target.lower[row] = lower[row] * scalar;
+        target.diagonal[row] = diagonal[row] * scalar;
+        target.upper[row] = upper[row] * scalar;
+    }
+
+    @Override
+    public void add_partial_row(TridiagonalMatrix target, TridiagonalMatrix matrix, int row) {
+        target.lower[row] = lower[row] + matrix.lower[row];
+        target.diagonal[row] = diagonal[row] + matrix.diagonal[row];
+        target.upper[row] = upper[row] + matrix.upper[row];
+    }
+
+    @Override
+    public void sub_partial_row(TridiagonalMatrix target, TridiagonalMatrix matrix, int row) {
+        target.lower[row] = lower[row] - matrix.lower[row];
+        target.diagonal[row] = diagonal[row] - matrix.diagonal[row];
+        target.upper[row] = upper[row] - matrix.upper[row];
+    }
+
+    @Override
+    public TridiagonalMatrix transpose() {
+        return copy().self_transpose();
+    }
+
+    @Override
+    public TridiagonalMatrix self_transpose() {
+        int n = this.getN();
+        double[] l = new double[n];
+        double[] u = new double[n];
+        for (int i = 1; i < n; i++) {
+            l[i] = upper[i - 1];
+            u[i - 1] = lower[i];
+        }
+        lower = l;
+        upper = u;
+        return this;
+    }
+
+    @Override
+    public TridiagonalMatrix self_identity() {
+        for (int i = 0; i < this.getN(); i++) {
+            diagonal[i] = 1;
+        }
+        return this;
+    }
+
+    @Override
+    public double norm_1() {
+        double max = 0;
+        for (int i = 0; i < this.getN(); i++) {
+            double sum = Math.abs(diagonal[i]);
+            if (i > 0) sum += Math.abs(lower[i]);
+            if (i < this.getN() - 1) sum += Math.abs(upper[i]);
+            if (sum > max) max = sum;
+        }
+        return max;
+    }
+
+    @Override
+    public double norm_infinity() {
+        double max = 0;
+        for (int j = 0; j < this.getN(); j++) {
+            double sum = Math.abs(diagonal[j]);
+            if (j > 0) sum += Math.abs(upper[j - 1]);
+            if (j < this.getN() - 1) sum += Math.abs(lower[j + 1]);
+            if (sum > max) max = sum;
+        }
+        return max;
+    }
+
+    @Override
+    public boolean isSymmetric() {
+        for (int i = 1; i < this.getN(); i++) {
+            if (lower[i] != upper[i - 1]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * three term recurrence of the leading principal minors
+     */
+    @Override
+    public double determinant() {
+        double previous = 1;
+        double det = this.getN() > 0 ? diagonal[0] : 1;
+        for (int i = 1; i < this.getN(); i++) {
+            double next = diagonal[i] * det - lower[i] * upper[i - 1] * previous;
+            previous = det;
+            det = next;
+        }
+        return det;
+    }
+
+    @Override
+    public void swapRow(int r1, int row2) {
+        throw new NotSupportedOperation();
+    }
+
+    @Override
+    public void swapColumn(int c1, int c2) {
+        throw new NotSupportedOperation();
+    }
+
+    @Override
+    public void scale_column(int column, double scalar) {
+        diagonal[column] *= scalar;
+        if (column > 0) upper[column - 1] *= scalar;
+        if (column < this.getN() - 1) lower[column + 1] *= scalar;
+    }
+
+    @Override
+    public void scale_row(int row, double scalar) {
+        scale_partial_row(this, scalar, row);
+    }
+
+    /**
+     * entries outside of the three diagonals can only be set to 0
+     */
+    @Override
+    public void setValue(int m, int n, double value) {
+        if (m == n) diagonal[m] = value;
+        else if (m == n + 1) lower[m] = value;
+        else if (m + 1 == n) upper[m] = value;
+        else if (value != 0) throw new NotSupportedOperation();
+    }
+
+    @Override
+    public double getValue(int m, int n) {
+        if (m == n) return diagonal[m];
+        if (m == n + 1) return lower[m];
+        if (m + 1 == n) return upper[m];
+        return 0;
+    }
+
+    @Override
+    public boolean hasValue(double v) {
+        for (int i = 0; i < this.getN(); i++) {
+            if (diagonal[i] == v) return true;
+            if (i > 0 && lower[i] == v) return true;
+            if (i < this.getN() - 1 && upper[i] == v) return true;
+        }
+        return v == 0 && this.getN() > 2;
+    }
+
+    @Override
+    public void replaceValue(double v, double r) {
+        for (int i = 0; i < this.getN(); i++) {
+            if (diagonal[i] == v) diagonal[i] = r;
+            if (i > 0 && lower[i] == v) lower[i] = r;
+            if (i < this.getN() - 1 && upper[i] == v) upper[i] = r;
+        }
+    }
+
+    @Override
+    public TridiagonalMatrix newInstance() {
+        return new TridiagonalMatrix(this.getN());
+    }
+
+    @Override
+    public TridiagonalMatrix copy() {
+        return new TridiagonalMatrix(lower.clone(), diagonal.clone(), upper.clone());
+    }
+
+    @Override
+    public DenseMatrix copyToDense() {
+        DenseMatrix mat = new DenseMatrix(this.getN(), this.getN());
+        for (int i = 0; i < this.getN(); i++) {
+            mat.setValue(i, i, diagonal[i]);
+            if (i > 0) mat.setValue(i, i - 1, lower[i]);
+            if (i < this.getN() - 1) mat.setValue(i, i + 1, upper[i]);
+        }
+        return mat;
+    }
+
+    @Override
+    public int storageSize() {
+        return Math.max(0, 3 * this.getN() - 2);
+    }
+
+    public double[] getLower() {
+        return lower;
+    }
+
+    public double[] getDiagonal() {
+        return diagonal;
+    }
+
+    public double[] getUpper() {
+        return upper;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < this.getM(); i++) {
+            for (int n = 0; n < this.getN(); n++) {
+                builder.append(String.format("%-8.3f ", getValue(i, n)));
+            }
+            builder.append("\n");
+        }
+        return builder.toString();
+    }
+}
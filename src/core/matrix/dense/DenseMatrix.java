@@ -4,6 +4,7 @@ import core.exceptions.NotSupportedOperation;
 import core.matrix.Matrix;
 import core.matrix.sparse_matrix.HashMatrix;
 import core.matrix.sparse_matrix.SparseMatrix;
+import core.simd.Kernels;
 import core.solver.Utilities;
 import core.solver.decomposition.QRDecomposition;
 import core.solver.direct.Solver;
@@ -17,103 +18,210 @@ import java.util.function.Function;
 
 public class DenseMatrix extends Matrix<DenseMatrix> {
 
-    private double[][] values;
+    /**
+     * row-major storage. the element (m,n) is located at data[offset + m * ld + n].
+     * ld (leading dimension) is the distance between two rows and is at least N.
+     */
+    private double[] data;
+    private int offset;
+    private int ld;
 
     public DenseMatrix(int m, int n) {
         super(m, n);
-        values = new double[m][n];
+        data = new double[m * n];
+        offset = 0;
+        ld = n;
     }
 
     public DenseMatrix(double[][] values) {
         super(values);
-        this.values = new double[this.getM()][this.getN()];
+        this.data = new double[this.getM() * this.getN()];
+        this.offset = 0;
+        this.ld = this.getN();
         for (int i = 0; i < this.getM(); i++) {
-            for (int n = 0; n < this.getN(); n++) {
-                this.values[i][n] = values[i][n];
-            }
+            System.arraycopy(values[i], 0, this.data, i * ld, this.getN());
         }
     }
 
+    /**
+     * wraps the given array without copying it.
+     * @param data      backing array
+     * @param m         rows
+     * @param n         columns
+     * @param offset    index of the element (0,0)
+     * @param ld        leading dimension (distance between two rows)
+     */
+    public DenseMatrix(double[] data, int m, int n, int offset, int ld) {
+        super(m, n);
+        if (ld < n || offset < 0 || (m > 0 && offset + (m - 1) * ld + n > data.length))
+            throw new RuntimeException("storage does not fit dimensions");
+        this.data = data;
+        this.offset = offset;
+        this.ld = ld;
+    }
+
+    public DenseMatrix(double[] data, int m, int n) {
+        this(data, m, n, 0, n);
+    }
+
+
+    @Override
+    public DenseMatrix view(int rowStart, int colStart, int m, int n) {
+        if (rowStart < 0 || colStart < 0 || m < 0 || n < 0 || rowStart + m > this.getM() || colStart + n > this.getN())
+            throw new IndexOutOfBoundsException();
+        return new DenseMatrix(data, m, n, m == 0 || n == 0 ? offset : index(rowStart, colStart), ld);
+    }
+
+    /**
+     * true if the rows follow each other without gaps, so the whole matrix is one unit stride block of the array
+     */
+    public boolean isContiguous() {
+        return ld == this.getN() || this.getM() <= 1;
+    }
 
     public DenseMatrix randomise(double lower, double upper) {
         for (int i = 0; i < this.getM(); i++) {
+            int row = offset + i * ld;
             for (int n = 0; n < this.getN(); n++) {
-                this.values[i][n] = Math.random() * (upper - lower) + lower;
+                this.data[row + n] = Math.random() * (upper - lower) + lower;
             }
         }
         return this;
     }
 
+    @Override
+    public DenseMatrix mulInto(Matrix<?> mat, DenseMatrix target) {
+        if (mat instanceof DenseMatrix) {
+            return Gemm.multiply(this, (DenseMatrix) mat, target);
+        }
+        return super.mulInto(mat, target);
+    }
+
+    @Override
+    public DenseMatrix mulInto(Matrix<?> mat, DenseMatrix target, Pool pool) {
+        if (mat instanceof DenseMatrix) {
+            return Gemm.multiply(this, (DenseMatrix) mat, target, pool);
+        }
+        return super.mulInto(mat, target, pool);
+    }
+
     @Override
     public void mul_partial_row(DenseVector target, Vector<?> vec, int row) {
+        int r = offset + row * ld;
         double v = 0;
-        for (int i = 0; i < this.getN(); i++) {
-            v += getValue(row, i) * vec.getValue(i);
+        if (vec instanceof DenseVector) {
+            v = Kernels.dot(data, r, ((DenseVector) vec).getValues(), 0, this.getN());
+        } else {
+            for (int i = 0; i < this.getN(); i++) {
+                v += data[r + i] * vec.getValue(i);
+            }
         }
         target.setValue(row, v);
     }
 
     @Override
     public void mul_partial_row(DenseMatrix target, Matrix<?> matrix, int row) {
-        for (int j = 0; j < matrix.getN(); j++) {
-            double sum = 0;
+        int r = offset + row * ld;
+        int t = target.offset + row * target.ld;
+        if (matrix instanceof DenseMatrix) {
+            DenseMatrix b = (DenseMatrix) matrix;
+            //i-k-j order: both b and target are traversed along their rows
+            for (int j = 0; j < b.getN(); j++) {
+                target.data[t + j] = 0;
+            }
             for (int k = 0; k < this.getN(); k++) {
-                sum += getValue(row, k) * matrix.getValue(k, j);
+                double a = data[r + k];
+                if (a == 0) continue;
+                Kernels.axpy(a, b.data, b.offset + k * b.ld, target.data, t, b.getN());
+            }
+        } else {
+            for (int j = 0; j < matrix.getN(); j++) {
+                double sum = 0;
+                for (int k = 0; k < this.getN(); k++) {
+                    sum += data[r + k] * matrix.getValue(k, j);
+                }
+                target.data[t + j] = sum;
             }
-            target.setValue(row, j, sum);
         }
     }
 
     @Override
-    public void add_partial_row(DenseMatrix target, DenseMatrix matrix, int row) {
-        for (int i = 0; i < this.getN(); i++) {
-            target.setValue(row, i, target.getValue(row, i) + matrix.getValue(row, i));
+    public void gemv_partial_row(double alpha, Vector<?> x, double beta, DenseVector y, int row) {
+        if (!(x instanceof DenseVector)) {
+            super.gemv_partial_row(alpha, x, beta, y, row);
+            return;
         }
+        double sum = Kernels.dot(data, offset + row * ld, ((DenseVector) x).getValues(), 0, this.getN());
+        double[] yd = y.getValues();
+        yd[row] = beta == 0 ? alpha * sum : alpha * sum + beta * yd[row];
     }
 
     @Override
-    public void sub_partial_row(DenseMatrix target, DenseMatrix matrix, int row) {
-        for (int i = 0; i < this.getN(); i++) {
-            target.setValue(row, i, target.getValue(row, i) - matrix.getValue(row, i));
+    public void gemv_transposed_partial(double alpha, Vector<?> x, double[] y, int rowStart, int rowEnd) {
+        for (int i = rowStart; i < rowEnd; i++) {
+            double v = alpha * x.getValue(i);
+            if (v == 0) continue;
+            Kernels.axpy(v, data, offset + i * ld, y, 0, this.getN());
         }
     }
 
+    @Override
+    public void add_partial_row(DenseMatrix target, DenseMatrix matrix, int row) {
+        int r = offset + row * ld;
+        int o = matrix.offset + row * matrix.ld;
+        int t = target.offset + row * target.ld;
+        Kernels.add(data, r, matrix.data, o, target.data, t, this.getN());
+    }
+
+    @Override
+    public void sub_partial_row(DenseMatrix target, DenseMatrix matrix, int row) {
+        int r = offset + row * ld;
+        int o = matrix.offset + row * matrix.ld;
+        int t = target.offset + row * target.ld;
+        Kernels.sub(data, r, matrix.data, o, target.data, t, this.getN());
+    }
+
     @Override
     public void scale_partial_row(DenseMatrix target, double scalar, int row) {
-        for (int i = 0; i < this.getN(); i++) {
-            target.setValue(row, i, this.getValue(row, i) * scalar);
-        }
+        int r = offset + row * ld;
+        int t = target.offset + row * target.ld;
+        Kernels.scale(data, r, scalar, target.data, t, this.getN());
     }
 
     @Override
     public DenseMatrix transpose() {
-        DenseMatrix mat = new DenseMatrix(this.getN(), this.getM());
-        for (int i = 0; i < this.getM(); i++) {
-            for (int j = 0; j < this.getN(); j++) {
-                mat.setValue(j, i, this.getValue(i, j));
-            }
-        }
-        return mat;
+        return Transpose.transpose(this, new DenseMatrix(this.getN(), this.getM()));
+    }
+
+    public DenseMatrix transpose(Pool pool) {
+        return Transpose.transpose(this, new DenseMatrix(this.getN(), this.getM()), pool);
     }
 
     @Override
     public DenseMatrix self_identity() {
         for (int i = 0; i < Math.min(this.getM(), this.getN()); i++) {
-            values[i][i] = 1;
+            data[index(i, i)] = 1;
         }
         return this;
     }
 
+    /**
+     * transposes this matrix without allocating a second matrix.
+     * Non-square matrices are rearranged by following the cycles of the transpose permutation,
+     * which requires the rows to be stored contiguously (leading dimension = N).
+     */
     @Override
     public DenseMatrix self_transpose() {
-        if (this.getM() != this.getN()) throw new RuntimeException();
-        for (int i = 0; i < this.getM(); i++) {
-            for (int j = 0; j < i; j++) {
-                double v = this.getValue(i, j);
-                this.setValue(i, j, this.getValue(j, i));
-                this.setValue(j, i, v);
-            }
+        if (this.getM() == this.getN()) {
+            Transpose.square(data, offset, ld, this.getN());
+            return this;
         }
+        if (ld != this.getN() && this.getM() > 1) throw new NotSupportedOperation();
+        Transpose.cycles(data, offset, this.getM(), this.getN());
+        int m = this.M;
+        this.M = this.N;
+        this.N = m;
+        this.ld = this.N;
         return this;
     }
 
@@ -122,9 +230,10 @@ public class DenseMatrix extends Matrix<DenseMatrix> {
         double max = 0;
         double sum;
         for (int i = 0; i < this.getM(); i++) {
+            int r = offset + i * ld;
             sum = 0;
             for (int n = 0; n < this.getN(); n++) {
-                sum += Math.abs(getValue(i, n));
+                sum += Math.abs(data[r + n]);
             }
             if (sum > max) max = sum;
         }
@@ -133,13 +242,16 @@ public class DenseMatrix extends Matrix<DenseMatrix> {
 
     @Override
     public double norm_infinity() {
-        double max = 0;
-        double sum;
-        for (int i = 0; i < this.getN(); i++) {
-            sum = 0;
-            for (int n = 0; n < this.getM(); n++) {
-                sum += Math.abs(getValue(n, i));
+        //accumulate all column sums at once so the storage is traversed row by row
+        double[] sums = new double[this.getN()];
+        for (int i = 0; i < this.getM(); i++) {
+            int r = offset + i * ld;
+            for (int n = 0; n < this.getN(); n++) {
+                sums[n] += Math.abs(data[r + n]);
             }
+        }
+        double max = 0;
+        for (double sum : sums) {
             if (sum > max) max = sum;
         }
         return max;
@@ -147,9 +259,10 @@ public class DenseMatrix extends Matrix<DenseMatrix> {
 
     @Override
     public boolean isSymmetric() {
+        if (this.getM() != this.getN()) return false;
         for (int i = 0; i < this.getN(); i++) {
             for (int n = 0; n < i; n++) {
-                if (values[i][n] != values[n][i]) {
+                if (data[offset + i * ld + n] != data[offset + n * ld + i]) {
                     return false;
                 }
             }
@@ -160,25 +273,29 @@ public class DenseMatrix extends Matrix<DenseMatrix> {
 
     @Override
     public void swapRow(int r1, int row2) {
-        for(int i = 0; i < this.getM(); i++){
-            double a = getValue(r1,i);
-            setValue(r1,i,getValue(row2,i));
-            setValue(row2,i,a);
+        int a = offset + r1 * ld;
+        int b = offset + row2 * ld;
+        for (int i = 0; i < this.getN(); i++) {
+            double v = data[a + i];
+            data[a + i] = data[b + i];
+            data[b + i] = v;
         }
     }
 
     @Override
     public void swapColumn(int c1, int c2) {
-        for(int i = 0; i < this.getN(); i++){
-            double a = getValue(i,c1);
-            setValue(i,c1,getValue(i,c2));
-            setValue(i,c2,a);
-        }    }
+        for (int i = 0; i < this.getM(); i++) {
+            int r = offset + i * ld;
+            double v = data[r + c1];
+            data[r + c1] = data[r + c2];
+            data[r + c2] = v;
+        }
+    }
 
     @Override
     public void scale_column(int column, double scalar) {
-        for (int i = 0; i < this.getN(); i++) {
-            this.setValue(i, column, this.getValue(i, column) * scalar);
+        for (int i = 0; i < this.getM(); i++) {
+            data[offset + i * ld + column] *= scalar;
         }
     }
 
@@ -189,19 +306,26 @@ public class DenseMatrix extends Matrix<DenseMatrix> {
 
     @Override
     public void setValue(int m, int n, double value) {
-        values[m][n] = value;
+        data[offset + m * ld + n] = value;
     }
 
     @Override
     public double getValue(int m, int n) {
-        return values[m][n];
+        return data[offset + m * ld + n];
     }
 
     @Override
     public boolean hasValue(double v) {
+        if (isContiguous()) {
+            for (int i = offset; i < offset + storageSize(); i++) {
+                if (data[i] == v) return true;
+            }
+            return false;
+        }
         for (int i = 0; i < this.getM(); i++) {
+            int r = offset + i * ld;
             for (int n = 0; n < this.getN(); n++) {
-                if (values[i][n] == v) {
+                if (data[r + n] == v) {
                     return true;
                 }
             }
@@ -211,10 +335,17 @@ public class DenseMatrix extends Matrix<DenseMatrix> {
 
     @Override
     public void replaceValue(double v, double r) {
+        if (isContiguous()) {
+            for (int i = offset; i < offset + storageSize(); i++) {
+                if (data[i] == v) data[i] = r;
+            }
+            return;
+        }
         for (int i = 0; i < this.getM(); i++) {
+            int row = offset + i * ld;
             for (int n = 0; n < this.getN(); n++) {
-                if (values[i][n] == v) {
-                    values[i][n] = r;
+                if (data[row + n] == v) {
+                    data[row + n] = r;
                 }
             }
         }
@@ -222,12 +353,20 @@ public class DenseMatrix extends Matrix<DenseMatrix> {
 
     @Override
     public DenseMatrix copy() {
-        return new DenseMatrix(this.values);
+        DenseMatrix mat = new DenseMatrix(this.getM(), this.getN());
+        if (isContiguous()) {
+            System.arraycopy(data, offset, mat.data, 0, storageSize());
+            return mat;
+        }
+        for (int i = 0; i < this.getM(); i++) {
+            System.arraycopy(data, offset + i * ld, mat.data, i * mat.ld, this.getN());
+        }
+        return mat;
     }
 
     @Override
     public DenseMatrix copyToDense() {
-        return new DenseMatrix(this.values);
+        return copy();
     }
 
     @Override
@@ -286,10 +425,34 @@ public class DenseMatrix extends Matrix<DenseMatrix> {
         }
     }
 
+    /**
+     * returns a copy of the entries as a two dimensional array.
+     * changes to the returned array are not reflected in this matrix.
+     */
     public double[][] getValues() {
+        double[][] values = new double[this.getM()][this.getN()];
+        for (int i = 0; i < this.getM(); i++) {
+            System.arraycopy(data, offset + i * ld, values[i], 0, this.getN());
+        }
         return values;
     }
 
+    public double[] getData() {
+        return data;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getLeadingDimension() {
+        return ld;
+    }
+
+    public int index(int m, int n) {
+        return offset + m * ld + n;
+    }
+
 
     public static void main(String[] args) {
 //        SparseMatrix mat1 = new SparseMatrix(Utilities.generateSymmetricPositiveDefiniteMatrix(HashMatrix.class, 20));
@@ -0,0 +1,371 @@
+package core.matrix.dense;
+
+import core.exceptions.NotSupportedOperation;
+import core.matrix.Matrix;
+import core.simd.Kernels;
+import core.solver.decomposition.QRDecomposition;
+import core.threads.Pool;
+import core.threads.PoolFunction;
+import core.vector.DenseVector;
+import core.vector.FloatDenseVector;
+import core.vector.Vector;
+
+/**
+ * dense row-major matrix in single precision. The entries are stored in one float array,
+ * the element (m,n) is located at data[m * N + n].
+ *
+ * Products with a {@link DenseVector} or {@link DenseMatrix} accumulate in double precision,
+ * {@link #mulInto(FloatDenseVector, FloatDenseVector)} stays in single precision entirely.
+ */
+public class FloatDenseMatrix extends Matrix<FloatDenseMatrix> {
+
+    private float[] data;
+
+    public FloatDenseMatrix(int m, int n) {
+        super(m, n);
+        data = new float[m * n];
+    }
+
+    public FloatDenseMatrix(float[] data, int m, int n) {
+        super(m, n);
+        if (data.length < m * n) throw new RuntimeException("storage does not fit dimensions");
+        this.data = data;
+    }
+
+    /**
+     * rounds the entries of the other matrix to single precision
+     */
+    public FloatDenseMatrix(Matrix<?> matrix) {
+        this(matrix.getM(), matrix.getN());
+        if (matrix instanceof DenseMatrix) {
+            DenseMatrix d = (DenseMatrix) matrix;
+            double[] values = d.getData();
+            for (int i = 0; i < this.getM(); i++) {
+                int r = d.index(i, 0);
+                for (int n = 0; n < this.getN(); n++) {
+                    data[i * N + n] = (float) values[r + n];
+                }
+            }
+            return;
+        }
+        for (int i = 0; i < this.getM(); i++) {
+            for (int n = 0; n < this.getN(); n++) {
+                data[i * N + n] = (float) matrix.getValue(i, n);
+            }
+        }
+    }
+
+    public FloatDenseMatrix randomise(double lower, double upper) {
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (float) (Math.random() * (upper - lower) + lower);
+        }
+        return this;
+    }
+
+    /**
+     * single precision matrix vector product y = A * x
+     */
+    public FloatDenseVector mulInto(FloatDenseVector x, FloatDenseVector y) {
+        if (x.getSize() != this.getN() || y.getSize() != this.getM()) throw new RuntimeException();
+        for (int i = 0; i < this.getM(); i++) {
+            mul_partial_row(y, x, i);
+        }
+        return y;
+    }
+
+    public FloatDenseVector mulInto(FloatDenseVector x, FloatDenseVector y, Pool pool) {
+        if (x.getSize() != this.getN() || y.getSize() != this.getM()) throw new RuntimeException();
+        PoolFunction function = (index, core) -> mul_partial_row(y, x, index);
+        pool.executeTotal(function, this.getM(), false);
+        return y;
+    }
+
+    public FloatDenseVector mul(FloatDenseVector x) {
+        return mulInto(x, new FloatDenseVector(this.getM()));
+    }
+
+    public FloatDenseVector mul(FloatDenseVector x, Pool pool) {
+        return mulInto(x, new FloatDenseVector(this.getM()), pool);
+    }
+
+    public void mul_partial_row(FloatDenseVector target, FloatDenseVector vec, int row) {
+        target.getValues()[row] = Kernels.dot(data, row * N, vec.getValues(), 0, N);
+    }
+
+    @Override
+    public void mul_partial_row(DenseVector target, Vector<?> vec, int row) {
+        int r = row * N;
+        double v = 0;
+        if (vec instanceof DenseVector) {
+            double[] x = ((DenseVector) vec).getValues();
+            for (int i = 0; i < N; i++) {
+                v += data[r + i] * x[i];
+            }
+        } else {
+            for (int i = 0; i < N; i++) {
+                v += data[r + i] * vec.getValue(i);
+            }
+        }
+        target.setValue(row, v);
+    }
+
+    @Override
+    public void mul_partial_row(DenseMatrix target, Matrix<?> matrix, int row) {
+        int r = row * N;
+        double[] t = target.getData();
+        int to = target.index(row, 0);
+        for (int j = 0; j < matrix.getN(); j++) {
+            t[to + j] = 0;
+        }
+        for (int k = 0; k < N; k++) {
+            double a = data[r + k];
+            if (a == 0) continue;
+            if (matrix instanceof DenseMatrix) {
+                DenseMatrix b = (DenseMatrix) matrix;
+                Kernels.axpy(a, b.getData(), b.index(k, 0), t, to, b.getN());
+            } else {
+                for (int j = 0; j < matrix.getN(); j++) {
+                    t[to + j] += a * matrix.getValue(k, j);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void gemv_partial_row(double alpha, Vector<?> x, double beta, DenseVector y, int row) {
+        if (!(x instanceof DenseVector)) {
+            super.gemv_partial_row(alpha, x, beta, y, row);
+            return;
+        }
+        double[] xd = ((DenseVector) x).getValues();
+        int r = row * N;
+        double sum = 0;
+        for (int i = 0; i < N; i++) {
+            sum += data[r + i] * xd[i];
+        }
+        double[] yd = y.getValues();
+        yd[row] = beta == 0 ? alpha * sum : alpha * sum + beta * yd[row];
+    }
+
+    @Override
+    public void gemv_transposed_partial(double alpha, Vector<?> x, double[] y, int rowStart, int rowEnd) {
+        for (int i = rowStart; i < rowEnd; i++) {
+            double v = alpha * x.getValue(i);
+            if (v == 0) continue;
+            int r = i * N;
+            for (int n = 0; n < N; n++) {
+                y[n] += v * data[r + n];
+            }
+        }
+    }
+
+    @Override
+    public void scale_partial_row(FloatDenseMatrix target, double scalar, int row) {
+        Kernels.scale(data, row * N, (float) scalar, target.data, row * N, N);
+    }
+
+    @Override
+    public void add_partial_row(FloatDenseMatrix target, FloatDenseMatrix matrix, int row) {
+        Kernels.add(data, row * N, matrix.data, row * N, target.data, row * N, N);
+    }
+
+    @Override
+    public void sub_partial_row(FloatDenseMatrix target, FloatDenseMatrix matrix, int row) {
+        Kernels.sub(data, row * N, matrix.data, row * N, target.data, row * N, N);
+    }
+
+    @Override
+    public FloatDenseMatrix transpose() {
+        FloatDenseMatrix target = new FloatDenseMatrix(N, M);
+        int b = (int) Math.sqrt(Transpose.BLOCK);
+        for (int bi = 0; bi < M; bi += b) {
+            for (int bj = 0; bj < N; bj += b) {
+                for (int i = bi; i < Math.min(bi + b, M); i++) {
+                    for (int j = bj; j < Math.min(bj + b, N); j++) {
+                        target.data[j * M + i] = data[i * N + j];
+                    }
+                }
+            }
+        }
+        return target;
+    }
+
+    /**
+     * only square matrices can be transposed in place
+     */
+    @Override
+    public FloatDenseMatrix self_transpose() {
+        if (M != N) throw new NotSupportedOperation();
+        for (int i = 0; i < N; i++) {
+            for (int n = 0; n < i; n++) {
+                float v = data[i * N + n];
+                data[i * N + n] = data[n * N + i];
+                data[n * N + i] = v;
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public FloatDenseMatrix self_identity() {
+        for (int i = 0; i < Math.min(M, N); i++) {
+            data[i * N + i] = 1;
+        }
+        return this;
+    }
+
+    @Override
+    public double norm_1() {
+        double max = 0;
+        for (int i = 0; i < M; i++) {
+            double sum = 0;
+            for (int n = 0; n < N; n++) {
+                sum += Math.abs(data[i * N + n]);
+            }
+            if (sum > max) max = sum;
+        }
+        return max;
+    }
+
+    @Override
+    public double norm_infinity() {
+        double[] sums = new double[N];
+        for (int i = 0; i < M; i++) {
+            for (int n = 0; n < N; n++) {
+                sums[n] += Math.abs(data[i * N + n]);
+            }
+        }
+        double max = 0;
+        for (double sum : sums) {
+            if (sum > max) max = sum;
+        }
+        return max;
+    }
+
+    @Override
+    public boolean isSymmetric() {
+        if (M != N) return false;
+        for (int i = 0; i < N; i++) {
+            for (int n = 0; n < i; n++) {
+                if (data[i * N + n] != data[n * N + i]) return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public double determinant() {
+        if (N != M) return 0;
+        QRDecomposition<DenseMatrix> qr = QRDecomposition.givens(copyToDense());
+        double det = 1;
+        for (int i = 0; i < qr.getR().getN(); i++) {
+            det *= qr.getR().getValue(i, i);
+        }
+        return det;
+    }
+
+    @Override
+    public void swapRow(int r1, int row2) {
+        for (int n = 0; n < N; n++) {
+            float v = data[r1 * N + n];
+            data[r1 * N + n] = data[row2 * N + n];
+            data[row2 * N + n] = v;
+        }
+    }
+
+    @Override
+    public void swapColumn(int c1, int c2) {
+        for (int i = 0; i < M; i++) {
+            float v = data[i * N + c1];
+            data[i * N + c1] = data[i * N + c2];
+            data[i * N + c2] = v;
+        }
+    }
+
+    @Override
+    public void scale_column(int column, double scalar) {
+        for (int i = 0; i < M; i++) {
+            data[i * N + column] *= scalar;
+        }
+    }
+
+    @Override
+    public void scale_row(int row, double scalar) {
+        scale_partial_row(this, scalar, row);
+    }
+
+    @Override
+    public void setValue(int m, int n, double value) {
+        data[m * N + n] = (float) value;
+    }
+
+    @Override
+    public double getValue(int m, int n) {
+        return data[m * N + n];
+    }
+
+    @Override
+    public boolean hasValue(double v) {
+        for (int i = 0; i < M * N; i++) {
+            if (data[i] == v) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void replaceValue(double v, double r) {
+        for (int i = 0; i < M * N; i++) {
+            if (data[i] == v) data[i] = (float) r;
+        }
+    }
+
+    @Override
+    public FloatDenseMatrix newInstance() {
+        return new FloatDenseMatrix(M, N);
+    }
+
+    @Override
+    public FloatDenseMatrix copy() {
+        FloatDenseMatrix mat = new FloatDenseMatrix(M, N);
+        System.arraycopy(data, 0, mat.data, 0, M * N);
+        return mat;
+    }
+
+    /**
+     * widens the entries to double precision
+     */
+    @Override
+    public DenseMatrix copyToDense() {
+        DenseMatrix mat = new DenseMatrix(M, N);
+        double[] values = mat.getData();
+        for (int i = 0; i < M * N; i++) {
+            values[i] = data[i];
+        }
+        return mat;
+    }
+
+    @Override
+    public int storageSize() {
+        return M * N;
+    }
+
+    public float[] getData() {
+        return data;
+    }
+
+    public int index(int m, int n) {
+        return m * N + n;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < M; i++) {
+            for (int n = 0; n < N; n++) {
+                builder.append(String.format("%-8.3f ", getValue(i, n)));
+            }
+            builder.append("\n");
+        }
+        return builder.toString();
+    }
+}
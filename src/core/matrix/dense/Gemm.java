@@ -0,0 +1,398 @@
+package core.matrix.dense;
+
+import core.simd.Kernels;
+import core.threads.Pool;
+import core.threads.PoolFunction;
+
+/**
+ * blocked matrix-matrix product for dense operands.
+ *
+ * C is computed in blocks of MC x NC. For each block, a KC x NC panel of B and a MC x KC panel of A are
+ * copied into contiguous buffers ("packing") so that the micro kernel reads both operands with unit stride.
+ * The micro kernel keeps a MR x NR tile of C in local variables while it runs over the KC dimension.
+ *
+ * packed A: panels of MR rows, stored column by column:   packA[panel * MR * kc + p * MR + ii]
+ * packed B: panels of NR columns, stored row by row:      packB[panel * NR * kc + p * NR + jj]
+ *
+ * Transposed operands are handled while packing, so the micro kernel is the same for all four cases.
+ */
+public class Gemm {
+
+    public static int MC = 96;
+    public static int KC = 256;
+    public static int NC = 2048;
+
+    public static final int MR = 4;
+    public static final int NR = 4;
+
+    /**
+     * products with less multiply-adds than this are computed without packing
+     */
+    public static int SMALL_PRODUCT = 32 * 32 * 32;
+
+    /**
+     * column width of the tiles used by the parallel product. A KC x TILE_N panel of B should fit into L2.
+     */
+    public static int TILE_N = 512;
+    public static int TILES_PER_THREAD = 4;
+
+    private static volatile double lastGFlops;
+
+    /**
+     * computes C = A * B
+     */
+    public static DenseMatrix multiply(DenseMatrix a, DenseMatrix b) {
+        return multiply(a, b, new DenseMatrix(a.getM(), b.getN()));
+    }
+
+    /**
+     * computes C = A * B into the given matrix. C must not share storage with A or B.
+     */
+    public static DenseMatrix multiply(DenseMatrix a, DenseMatrix b, DenseMatrix c) {
+        return gemm(1, a, false, b, false, 0, c);
+    }
+
+    public static DenseMatrix multiply(DenseMatrix a, DenseMatrix b, Pool pool) {
+        return multiply(a, b, new DenseMatrix(a.getM(), b.getN()), pool);
+    }
+
+    public static DenseMatrix multiply(DenseMatrix a, DenseMatrix b, DenseMatrix c, Pool pool) {
+        return gemm(1, a, false, b, false, 0, c, pool);
+    }
+
+    /**
+     * computes C = alpha * op(A) * op(B) + beta * C where op(X) is X or X^T.
+     * If beta is 0, C does not need to be initialised. C must not share storage with A or B.
+     */
+    public static DenseMatrix gemm(double alpha, DenseMatrix a, boolean transA, DenseMatrix b, boolean transB,
+                                   double beta, DenseMatrix c) {
+        checkDimensions(a, transA, b, transB, c);
+        gemm(alpha, a, transA, b, transB, beta, c, 0, c.getM(), 0, c.getN());
+        return c;
+    }
+
+    /**
+     * computes C = alpha * op(A) * op(B) + beta * C using all active threads of the pool.
+     * C is split into 2D tiles which are claimed dynamically by the threads (see {@link Pool#executeSequential}),
+     * so that products with few rows or few columns still keep every thread busy.
+     * Every thread packs into its own buffers which are reused for all tiles it claims.
+     */
+    public static DenseMatrix gemm(double alpha, DenseMatrix a, boolean transA, DenseMatrix b, boolean transB,
+                                   double beta, DenseMatrix c, Pool pool) {
+        checkDimensions(a, transA, b, transB, c);
+
+        int threads = Math.min(pool.getActiveThreads(), pool.getAvailableThreads());
+        int m = c.getM();
+        int n = c.getN();
+        int k = transA ? a.getM() : a.getN();
+
+        long time = System.nanoTime();
+        if (threads <= 1 || (long) m * n * k < SMALL_PRODUCT) {
+            gemm(alpha, a, transA, b, transB, beta, c, 0, m, 0, n);
+        } else {
+            //start with tiles of MC x TILE_N and shrink them until there are enough tiles to balance the load
+            int tileM = MC;
+            int tileN = TILE_N;
+            while (tiles(m, tileM) * tiles(n, tileN) < TILES_PER_THREAD * threads) {
+                if (tileN > 8 * NR && tileN >= tileM) {
+                    tileN = roundUp(tileN / 2, NR);
+                } else if (tileM > 4 * MR) {
+                    tileM = roundUp(tileM / 2, MR);
+                } else {
+                    break;
+                }
+            }
+
+            final int tm = tileM;
+            final int tn = tileN;
+            final int tilesN = tiles(n, tn);
+            int kcMax = Math.min(KC, k);
+            double[][] packA = new double[threads][roundUp(Math.min(MC, Math.min(tm, m)), MR) * kcMax];
+            double[][] packB = new double[threads][roundUp(Math.min(NC, Math.min(tn, n)), NR) * kcMax];
+            double[][] tile = new double[threads][MR * NR];
+
+            PoolFunction function = (index, core) -> {
+                int row = (index / tilesN) * tm;
+                int col = (index % tilesN) * tn;
+                gemm(alpha, a, transA, b, transB, beta, c, row, Math.min(row + tm, m), col, Math.min(col + tn, n),
+                        packA[core], packB[core], tile[core]);
+            };
+            pool.executeSequential(function, tiles(m, tm) * tilesN, false);
+        }
+        lastGFlops = gflops(m, n, k, System.nanoTime() - time);
+        return c;
+    }
+
+    /**
+     * computes the rows [rowStart, rowEnd) and columns [colStart, colEnd) of C = A * B.
+     * the rest of C is not touched.
+     */
+    public static void multiply(DenseMatrix a, DenseMatrix b, DenseMatrix c,
+                                int rowStart, int rowEnd, int colStart, int colEnd) {
+        gemm(1, a, false, b, false, 0, c, rowStart, rowEnd, colStart, colEnd);
+    }
+
+    private static void gemm(double alpha, DenseMatrix a, boolean transA, DenseMatrix b, boolean transB,
+                             double beta, DenseMatrix c, int rowStart, int rowEnd, int colStart, int colEnd) {
+        int kcMax = Math.min(KC, transA ? a.getM() : a.getN());
+        int m = Math.max(0, rowEnd - rowStart);
+        int n = Math.max(0, colEnd - colStart);
+        gemm(alpha, a, transA, b, transB, beta, c, rowStart, rowEnd, colStart, colEnd,
+                new double[roundUp(Math.min(MC, m), MR) * kcMax],
+                new double[roundUp(Math.min(NC, n), NR) * kcMax], new double[MR * NR]);
+    }
+
+    private static void gemm(double alpha, DenseMatrix a, boolean transA, DenseMatrix b, boolean transB,
+                             double beta, DenseMatrix c, int rowStart, int rowEnd, int colStart, int colEnd,
+                             double[] packA, double[] packB, double[] tile) {
+        int m = rowEnd - rowStart;
+        int n = colEnd - colStart;
+        int k = transA ? a.getM() : a.getN();
+        if (m <= 0 || n <= 0) return;
+
+        if (k == 0 || alpha == 0) {
+            scale(c, rowStart, rowEnd, colStart, colEnd, beta);
+            return;
+        }
+        if ((long) m * n * k < SMALL_PRODUCT) {
+            gemm_small(alpha, a, transA, b, transB, beta, c, rowStart, rowEnd, colStart, colEnd);
+            return;
+        }
+
+        for (int jc = colStart; jc < colEnd; jc += NC) {
+            int nc = Math.min(NC, colEnd - jc);
+            for (int pc = 0; pc < k; pc += KC) {
+                int kc = Math.min(KC, k - pc);
+                packB(b, transB, pc, jc, kc, nc, packB);
+                for (int ic = rowStart; ic < rowEnd; ic += MC) {
+                    int mc = Math.min(MC, rowEnd - ic);
+                    packA(a, transA, ic, pc, mc, kc, packA);
+                    //beta is only applied by the first pass over k, later passes accumulate
+                    macroKernel(packA, packB, tile, c, ic, jc, mc, nc, kc, alpha, pc == 0 ? beta : 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * GFLOP/s of the last product computed with one of the pool versions
+     */
+    public static double getLastGFlops() {
+        return lastGFlops;
+    }
+
+    /**
+     * a product of a (m x k) and a (k x n) matrix takes 2 * m * n * k floating point operations
+     */
+    public static double gflops(int m, int n, int k, long nanos) {
+        return 2d * m * n * k / Math.max(nanos, 1);
+    }
+
+    private static void checkDimensions(DenseMatrix a, boolean transA, DenseMatrix b, boolean transB, DenseMatrix c) {
+        int m = transA ? a.getN() : a.getM();
+        int k = transA ? a.getM() : a.getN();
+        int kb = transB ? b.getN() : b.getM();
+        int n = transB ? b.getM() : b.getN();
+        if (k != kb || c.getM() != m || c.getN() != n) throw new RuntimeException();
+    }
+
+    private static int tiles(int size, int tile) {
+        return (size + tile - 1) / tile;
+    }
+
+    private static void gemm_small(double alpha, DenseMatrix a, boolean transA, DenseMatrix b, boolean transB,
+                                   double beta, DenseMatrix c, int rowStart, int rowEnd, int colStart, int colEnd) {
+        double[] ad = a.getData();
+        double[] bd = b.getData();
+        double[] cd = c.getData();
+        int k = transA ? a.getM() : a.getN();
+        scale(c, rowStart, rowEnd, colStart, colEnd, beta);
+        if (!transB) {
+            //C[i,:] += alpha * op(A)[i,p] * B[p,:] runs along the rows of B and C
+            for (int i = rowStart; i < rowEnd; i++) {
+                int cr = c.index(i, colStart);
+                for (int p = 0; p < k; p++) {
+                    double v = transA ? ad[a.index(p, i)] : ad[a.index(i, p)];
+                    if (v == 0) continue;
+                    Kernels.axpy(alpha * v, bd, b.index(p, colStart), cd, cr, colEnd - colStart);
+                }
+            }
+        } else {
+            for (int i = rowStart; i < rowEnd; i++) {
+                int cr = c.index(i, 0);
+                for (int j = colStart; j < colEnd; j++) {
+                    int br = b.index(j, 0);
+                    double sum = 0;
+                    for (int p = 0; p < k; p++) {
+                        sum += (transA ? ad[a.index(p, i)] : ad[a.index(i, p)]) * bd[br + p];
+                    }
+                    cd[cr + j] += alpha * sum;
+                }
+            }
+        }
+    }
+
+    private static void scale(DenseMatrix c, int rowStart, int rowEnd, int colStart, int colEnd, double beta) {
+        if (beta == 1) return;
+        double[] cd = c.getData();
+        for (int i = rowStart; i < rowEnd; i++) {
+            int cr = c.index(i, 0);
+            for (int j = colStart; j < colEnd; j++) {
+                //beta = 0 overwrites C, even if it contains NaN
+                cd[cr + j] = beta == 0 ? 0 : beta * cd[cr + j];
+            }
+        }
+    }
+
+    /**
+     * packs the block op(A)[row:row+mc, col:col+kc]
+     */
+    private static void packA(DenseMatrix a, boolean trans, int row, int col, int mc, int kc, double[] packA) {
+        double[] ad = a.getData();
+        int ld = a.getLeadingDimension();
+        //distance between op(A)[i,p] and op(A)[i+1,p] and between op(A)[i,p] and op(A)[i,p+1]
+        int rowStride = trans ? 1 : ld;
+        int colStride = trans ? ld : 1;
+        int idx = 0;
+        for (int ir = 0; ir < mc; ir += MR) {
+            int mr = Math.min(MR, mc - ir);
+            int base = trans ? a.index(col, row + ir) : a.index(row + ir, col);
+            for (int p = 0; p < kc; p++) {
+                int src = base + p * colStride;
+                for (int ii = 0; ii < mr; ii++) {
+                    packA[idx++] = ad[src + ii * rowStride];
+                }
+                for (int ii = mr; ii < MR; ii++) {
+                    packA[idx++] = 0;
+                }
+            }
+        }
+    }
+
+    /**
+     * packs the block op(B)[row:row+kc, col:col+nc]
+     */
+    private static void packB(DenseMatrix b, boolean trans, int row, int col, int kc, int nc, double[] packB) {
+        double[] bd = b.getData();
+        int ld = b.getLeadingDimension();
+        int rowStride = trans ? 1 : ld;
+        int colStride = trans ? ld : 1;
+        int idx = 0;
+        for (int jr = 0; jr < nc; jr += NR) {
+            int nr = Math.min(NR, nc - jr);
+            int base = trans ? b.index(col + jr, row) : b.index(row, col + jr);
+            for (int p = 0; p < kc; p++) {
+                int src = base + p * rowStride;
+                for (int jj = 0; jj < nr; jj++) {
+                    packB[idx++] = bd[src + jj * colStride];
+                }
+                for (int jj = nr; jj < NR; jj++) {
+                    packB[idx++] = 0;
+                }
+            }
+        }
+    }
+
+    private static void macroKernel(double[] packA, double[] packB, double[] tile, DenseMatrix c,
+                                    int row, int col, int mc, int nc, int kc, double alpha, double beta) {
+        for (int jr = 0; jr < nc; jr += NR) {
+            int nr = Math.min(NR, nc - jr);
+            int b = (jr / NR) * NR * kc;
+            for (int ir = 0; ir < mc; ir += MR) {
+                int mr = Math.min(MR, mc - ir);
+                int a = (ir / MR) * MR * kc;
+                microKernel(kc, packA, a, packB, b, tile, c, row + ir, col + jr, mr, nr, alpha, beta);
+            }
+        }
+    }
+
+    /**
+     * computes C = alpha * A * B + beta * C for a MR x NR tile of C. The 16 partial sums stay in
+     * local variables (registers) for the entire loop over kc. Edge tiles and scaled tiles are stored
+     * through the MR x NR scratch array tile, which every thread allocates once next to its pack buffers.
+     */
+    private static void microKernel(int kc, double[] a, int ai, double[] b, int bi, double[] tile, DenseMatrix c,
+                                    int row, int col, int mr, int nr, double alpha, double beta) {
+        double c00 = 0, c01 = 0, c02 = 0, c03 = 0;
+        double c10 = 0, c11 = 0, c12 = 0, c13 = 0;
+        double c20 = 0, c21 = 0, c22 = 0, c23 = 0;
+        double c30 = 0, c31 = 0, c32 = 0, c33 = 0;
+
+        for (int p = 0; p < kc; p++) {
+            double a0 = a[ai];
+            double a1 = a[ai + 1];
+            double a2 = a[ai + 2];
+            double a3 = a[ai + 3];
+            double b0 = b[bi];
+            double b1 = b[bi + 1];
+            double b2 = b[bi + 2];
+            double b3 = b[bi + 3];
+
+            c00 += a0 * b0; c01 += a0 * b1; c02 += a0 * b2; c03 += a0 * b3;
+            c10 += a1 * b0; c11 += a1 * b1; c12 += a1 * b2; c13 += a1 * b3;
+            c20 += a2 * b0; c21 += a2 * b1; c22 += a2 * b2; c23 += a2 * b3;
+            c30 += a3 * b0; c31 += a3 * b1; c32 += a3 * b2; c33 += a3 * b3;
+
+            ai += MR;
+            bi += NR;
+        }
+
+        double[] cd = c.getData();
+        int ld = c.getLeadingDimension();
+        int ci = c.index(row, col);
+        if (mr == MR && nr == NR && alpha == 1) {
+            if (beta == 0) {
+                cd[ci] = c00; cd[ci + 1] = c01; cd[ci + 2] = c02; cd[ci + 3] = c03; ci += ld;
+                cd[ci] = c10; cd[ci + 1] = c11; cd[ci + 2] = c12; cd[ci + 3] = c13; ci += ld;
+                cd[ci] = c20; cd[ci + 1] = c21; cd[ci + 2] = c22; cd[ci + 3] = c23; ci += ld;
+                cd[ci] = c30; cd[ci + 1] = c31; cd[ci + 2] = c32; cd[ci + 3] = c33;
+                return;
+            }
+            if (beta == 1) {
+                cd[ci] += c00; cd[ci + 1] += c01; cd[ci + 2] += c02; cd[ci + 3] += c03; ci += ld;
+                cd[ci] += c10; cd[ci + 1] += c11; cd[ci + 2] += c12; cd[ci + 3] += c13; ci += ld;
+                cd[ci] += c20; cd[ci + 1] += c21; cd[ci + 2] += c22; cd[ci + 3] += c23; ci += ld;
+                cd[ci] += c30; cd[ci + 1] += c31; cd[ci + 2] += c32; cd[ci + 3] += c33;
+                return;
+            }
+        }
+
+        //general case: edge tiles or scaling
+        tile[0] = c00; tile[1] = c01; tile[2] = c02; tile[3] = c03;
+        tile[4] = c10; tile[5] = c11; tile[6] = c12; tile[7] = c13;
+        tile[8] = c20; tile[9] = c21; tile[10] = c22; tile[11] = c23;
+        tile[12] = c30; tile[13] = c31; tile[14] = c32; tile[15] = c33;
+        for (int ii = 0; ii < mr; ii++) {
+            int r = ci + ii * ld;
+            for (int jj = 0; jj < nr; jj++) {
+                double v = alpha * tile[ii * NR + jj];
+                cd[r + jj] = beta == 0 ? v : v + beta * cd[r + jj];
+            }
+        }
+    }
+
+    private static int roundUp(int v, int multiple) {
+        return (v + multiple - 1) / multiple * multiple;
+    }
+
+    public static void main(String[] args) {
+        int size = 1500;
+        DenseMatrix a = new DenseMatrix(size, size).randomise(-1, 1);
+        DenseMatrix b = new DenseMatrix(size, size).randomise(-1, 1);
+
+        int cores = Pool.getAvailableProcessors();
+        Pool pool = new Pool(cores);
+        double single = 0;
+        for (int threads = 1; threads <= cores; threads++) {
+            pool.setActiveThreads(threads);
+            double best = 0;
+            for (int i = 0; i < 5; i++) {
+                multiply(a, b, pool);
+                best = Math.max(best, getLastGFlops());
+            }
+            if (threads == 1) single = best;
+            System.out.format("threads: %-3d  %8.3f GFLOP/s   speedup: %5.2f%n", threads, best, best / single);
+        }
+        pool.stop();
+    }
+}
@@ -0,0 +1,411 @@
+package core.matrix.dense;
+
+import core.exceptions.NotSupportedOperation;
+import core.matrix.Matrix;
+import core.memory.DoubleStorage;
+import core.memory.MatrixFile;
+import core.memory.MemoryArena;
+import core.solver.decomposition.QRDecomposition;
+import core.vector.DenseVector;
+import core.vector.Vector;
+
+import java.io.IOException;
+import java.nio.DoubleBuffer;
+import java.nio.file.Path;
+
+/**
+ * dense row-major matrix whose entries are stored outside of the java heap.
+ *
+ * The entries are not limited by the maximum array length and are not moved by the garbage collector.
+ * The storage belongs to the arena and is released when the arena is closed; every matrix created by
+ * newInstance(), copy() or transpose() is allocated in the same arena.
+ *
+ * Matrices larger than the main memory can be backed by a memory mapped {@link MatrixFile},
+ * in which case the page cache loads and evicts the rows while the kernels stream through them.
+ */
+public class OffHeapDenseMatrix extends Matrix<OffHeapDenseMatrix> {
+
+    private MemoryArena arena;
+    private DoubleStorage storage;
+
+    public OffHeapDenseMatrix(MemoryArena arena, int m, int n) {
+        super(m, n);
+        this.arena = arena;
+        this.storage = arena.allocate(m, n);
+    }
+
+    public OffHeapDenseMatrix(MemoryArena arena, Matrix<?> matrix) {
+        this(arena, matrix.getM(), matrix.getN());
+        for (int i = 0; i < this.getM(); i++) {
+            DoubleBuffer r = storage.chunk(i);
+            int o = storage.index(i, 0);
+            for (int n = 0; n < this.getN(); n++) {
+                r.put(o + n, matrix.getValue(i, n));
+            }
+        }
+    }
+
+    /**
+     * wraps an existing storage, e.g. a memory mapped file. The storage must have m rows of length n.
+     */
+    public OffHeapDenseMatrix(MemoryArena arena, DoubleStorage storage, int m, int n) {
+        super(m, n);
+        if (storage.getRows() != m || storage.getRowLength() != n)
+            throw new RuntimeException("storage does not fit dimensions");
+        this.arena = arena;
+        this.storage = storage;
+    }
+
+    /**
+     * creates a new matrix file of the given size and maps it
+     */
+    public static OffHeapDenseMatrix create(MemoryArena arena, Path path, int m, int n) throws IOException {
+        return map(arena, MatrixFile.create(path, m, n), true);
+    }
+
+    /**
+     * maps an existing matrix file. Only the header is read, the entries are loaded on demand.
+     */
+    public static OffHeapDenseMatrix open(MemoryArena arena, Path path, boolean writable) throws IOException {
+        return map(arena, MatrixFile.open(path), writable);
+    }
+
+    private static OffHeapDenseMatrix map(MemoryArena arena, MatrixFile file, boolean writable) throws IOException {
+        return new OffHeapDenseMatrix(arena, file.map(arena, writable), file.getM(), file.getN());
+    }
+
+    /**
+     * writes the changes of a file backed matrix to the disk
+     */
+    public void flush() {
+        storage.force();
+    }
+
+    public OffHeapDenseMatrix randomise(double lower, double upper) {
+        for (int i = 0; i < this.getM(); i++) {
+            DoubleBuffer r = storage.chunk(i);
+            int o = storage.index(i, 0);
+            for (int n = 0; n < this.getN(); n++) {
+                r.put(o + n, Math.random() * (upper - lower) + lower);
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public void mul_partial_row(DenseVector target, Vector<?> vec, int row) {
+        DoubleBuffer r = storage.chunk(row);
+        int o = storage.index(row, 0);
+        double v = 0;
+        if (vec instanceof DenseVector) {
+            double[] x = ((DenseVector) vec).getValues();
+            for (int i = 0; i < this.getN(); i++) {
+                v += r.get(o + i) * x[i];
+            }
+        } else {
+            for (int i = 0; i < this.getN(); i++) {
+                v += r.get(o + i) * vec.getValue(i);
+            }
+        }
+        target.setValue(row, v);
+    }
+
+    @Override
+    public void mul_partial_row(DenseMatrix target, Matrix<?> matrix, int row) {
+        DoubleBuffer r = storage.chunk(row);
+        int o = storage.index(row, 0);
+        double[] t = target.getData();
+        int to = target.index(row, 0);
+        for (int j = 0; j < matrix.getN(); j++) {
+            t[to + j] = 0;
+        }
+        if (matrix instanceof DenseMatrix) {
+            DenseMatrix b = (DenseMatrix) matrix;
+            double[] bd = b.getData();
+            //i-k-j order: both b and target are traversed along their rows
+            for (int k = 0; k < this.getN(); k++) {
+                double a = r.get(o + k);
+                if (a == 0) continue;
+                int bo = b.index(k, 0);
+                for (int j = 0; j < b.getN(); j++) {
+                    t[to + j] += a * bd[bo + j];
+                }
+            }
+        } else {
+            for (int k = 0; k < this.getN(); k++) {
+                double a = r.get(o + k);
+                if (a == 0) continue;
+                for (int j = 0; j < matrix.getN(); j++) {
+                    t[to + j] += a * matrix.getValue(k, j);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void gemv_transposed_partial(double alpha, Vector<?> x, double[] y, int rowStart, int rowEnd) {
+        for (int i = rowStart; i < rowEnd; i++) {
+            double v = alpha * x.getValue(i);
+            if (v == 0) continue;
+            DoubleBuffer r = storage.chunk(i);
+            int o = storage.index(i, 0);
+            for (int n = 0; n < this.getN(); n++) {
+                y[n] += v * r.get(o + n);
+            }
+        }
+    }
+
+    @Override
+    public void scale_partial_row(OffHeapDenseMatrix target, double scalar, int row) {
+        DoubleBuffer r = storage.chunk(row);
+        DoubleBuffer t = target.storage.chunk(row);
+        int o = storage.index(row, 0);
+        for (int n = o; n < o + this.getN(); n++) {
+            t.put(n, r.get(n) * scalar);
+        }
+    }
+
+    @Override
+    public void add_partial_row(OffHeapDenseMatrix target, OffHeapDenseMatrix matrix, int row) {
+        DoubleBuffer r = storage.chunk(row);
+        DoubleBuffer b = matrix.storage.chunk(row);
+        DoubleBuffer t = target.storage.chunk(row);
+        int o = storage.index(row, 0);
+        for (int n = o; n < o + this.getN(); n++) {
+            t.put(n, r.get(n) + b.get(n));
+        }
+    }
+
+    @Override
+    public void sub_partial_row(OffHeapDenseMatrix target, OffHeapDenseMatrix matrix, int row) {
+        DoubleBuffer r = storage.chunk(row);
+        DoubleBuffer b = matrix.storage.chunk(row);
+        DoubleBuffer t = target.storage.chunk(row);
+        int o = storage.index(row, 0);
+        for (int n = o; n < o + this.getN(); n++) {
+            t.put(n, r.get(n) - b.get(n));
+        }
+    }
+
+    /**
+     * blocked transpose into a new matrix of the same arena
+     */
+    @Override
+    public OffHeapDenseMatrix transpose() {
+        OffHeapDenseMatrix target = new OffHeapDenseMatrix(arena, this.getN(), this.getM());
+        int b = (int) Math.sqrt(Transpose.BLOCK);
+        for (int bi = 0; bi < this.getM(); bi += b) {
+            for (int bj = 0; bj < this.getN(); bj += b) {
+                for (int i = bi; i < Math.min(bi + b, this.getM()); i++) {
+                    DoubleBuffer r = storage.chunk(i);
+                    int o = storage.index(i, 0);
+                    for (int j = bj; j < Math.min(bj + b, this.getN()); j++) {
+                        target.storage.set(j, i, r.get(o + j));
+                    }
+                }
+            }
+        }
+        return target;
+    }
+
+    /**
+     * only square matrices can be transposed in place
+     */
+    @Override
+    public OffHeapDenseMatrix self_transpose() {
+        if (this.getM() != this.getN()) throw new NotSupportedOperation();
+        for (int i = 0; i < this.getM(); i++) {
+            for (int n = 0; n < i; n++) {
+                double v = storage.get(i, n);
+                storage.set(i, n, storage.get(n, i));
+                storage.set(n, i, v);
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public OffHeapDenseMatrix self_identity() {
+        for (int i = 0; i < Math.min(this.getM(), this.getN()); i++) {
+            storage.set(i, i, 1);
+        }
+        return this;
+    }
+
+    @Override
+    public double norm_1() {
+        double max = 0;
+        for (int i = 0; i < this.getM(); i++) {
+            DoubleBuffer r = storage.chunk(i);
+            int o = storage.index(i, 0);
+            double sum = 0;
+            for (int n = 0; n < this.getN(); n++) {
+                sum += Math.abs(r.get(o + n));
+            }
+            if (sum > max) max = sum;
+        }
+        return max;
+    }
+
+    @Override
+    public double norm_infinity() {
+        double[] sums = new double[this.getN()];
+        for (int i = 0; i < this.getM(); i++) {
+            DoubleBuffer r = storage.chunk(i);
+            int o = storage.index(i, 0);
+            for (int n = 0; n < this.getN(); n++) {
+                sums[n] += Math.abs(r.get(o + n));
+            }
+        }
+        double max = 0;
+        for (double sum : sums) {
+            if (sum > max) max = sum;
+        }
+        return max;
+    }
+
+    @Override
+    public boolean isSymmetric() {
+        if (this.getM() != this.getN()) return false;
+        for (int i = 0; i < this.getN(); i++) {
+            for (int n = 0; n < i; n++) {
+                if (storage.get(i, n) != storage.get(n, i)) return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public double determinant() {
+        if (this.getN() != this.getM()) return 0;
+        QRDecomposition<DenseMatrix> qr = QRDecomposition.givens(copyToDense());
+        double det = 1;
+        for (int i = 0; i < qr.getR().getN(); i++) {
+            det *= qr.getR().getValue(i, i);
+        }
+        return det;
+    }
+
+    @Override
+    public void swapRow(int r1, int row2) {
+        DoubleBuffer a = storage.chunk(r1);
+        DoubleBuffer b = storage.chunk(row2);
+        int oa = storage.index(r1, 0);
+        int ob = storage.index(row2, 0);
+        for (int n = 0; n < this.getN(); n++) {
+            double v = a.get(oa + n);
+            a.put(oa + n, b.get(ob + n));
+            b.put(ob + n, v);
+        }
+    }
+
+    @Override
+    public void swapColumn(int c1, int c2) {
+        for (int i = 0; i < this.getM(); i++) {
+            double v = storage.get(i, c1);
+            storage.set(i, c1, storage.get(i, c2));
+            storage.set(i, c2, v);
+        }
+    }
+
+    @Override
+    public void scale_column(int column, double scalar) {
+        for (int i = 0; i < this.getM(); i++) {
+            storage.set(i, column, storage.get(i, column) * scalar);
+        }
+    }
+
+    @Override
+    public void scale_row(int row, double scalar) {
+        scale_partial_row(this, scalar, row);
+    }
+
+    @Override
+    public void setValue(int m, int n, double value) {
+        storage.set(m, n, value);
+    }
+
+    @Override
+    public double getValue(int m, int n) {
+        return storage.get(m, n);
+    }
+
+    @Override
+    public boolean hasValue(double v) {
+        for (int i = 0; i < this.getM(); i++) {
+            DoubleBuffer r = storage.chunk(i);
+            int o = storage.index(i, 0);
+            for (int n = 0; n < this.getN(); n++) {
+                if (r.get(o + n) == v) return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void replaceValue(double v, double r) {
+        for (int i = 0; i < this.getM(); i++) {
+            DoubleBuffer row = storage.chunk(i);
+            int o = storage.index(i, 0);
+            for (int n = 0; n < this.getN(); n++) {
+                if (row.get(o + n) == v) row.put(o + n, r);
+            }
+        }
+    }
+
+    @Override
+    public OffHeapDenseMatrix newInstance() {
+        return new OffHeapDenseMatrix(arena, this.getM(), this.getN());
+    }
+
+    @Override
+    public OffHeapDenseMatrix copy() {
+        OffHeapDenseMatrix mat = newInstance();
+        for (int i = 0; i < this.getM(); i++) {
+            scale_partial_row(mat, 1, i);
+        }
+        return mat;
+    }
+
+    /**
+     * copies the entries onto the heap. Fails if the matrix does not fit into a single array.
+     */
+    @Override
+    public DenseMatrix copyToDense() {
+        if ((long) this.getM() * this.getN() > Integer.MAX_VALUE - 8) throw new NotSupportedOperation();
+        DenseMatrix mat = new DenseMatrix(this.getM(), this.getN());
+        double[] data = mat.getData();
+        for (int i = 0; i < this.getM(); i++) {
+            storage.chunk(i).get(storage.index(i, 0), data, mat.index(i, 0), this.getN());
+        }
+        return mat;
+    }
+
+    /**
+     * number of stored entries, capped at Integer.MAX_VALUE
+     */
+    @Override
+    public int storageSize() {
+        return (int) Math.min((long) this.getM() * this.getN(), Integer.MAX_VALUE);
+    }
+
+    public MemoryArena getArena() {
+        return arena;
+    }
+
+    public DoubleStorage getStorage() {
+        return storage;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < this.getM(); i++) {
+            for (int n = 0; n < this.getN(); n++) {
+                builder.append(String.format("%-8.3f ", getValue(i, n)));
+            }
+            builder.append("\n");
+        }
+        return builder.toString();
+    }
+}
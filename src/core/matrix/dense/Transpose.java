@@ -0,0 +1,132 @@
+package core.matrix.dense;
+
+import core.threads.Pool;
+import core.threads.PoolFunction;
+
+import java.util.BitSet;
+
+/**
+ * transpose kernels for dense matrices.
+ *
+ * The out-of-place transpose recursively halves the larger dimension until a block fits into the cache
+ * (cache-oblivious), so that neither the reads nor the column-strided writes miss on every element.
+ * The in-place transpose of a rectangular matrix follows the cycles of the permutation k -> k * M mod (M * N - 1)
+ * and only needs one bit per element to remember which elements have been moved.
+ */
+public class Transpose {
+
+    /**
+     * blocks with at most this many elements are transposed directly
+     */
+    public static int BLOCK = 32 * 32;
+
+    /**
+     * edge length of the tiles handed to the threads by the parallel transpose
+     */
+    public static int TILE = 256;
+
+    /**
+     * writes the transpose of src into dst. dst must be a N x M matrix for a M x N source.
+     */
+    public static DenseMatrix transpose(DenseMatrix src, DenseMatrix dst) {
+        checkDimensions(src, dst);
+        transpose(src, dst, 0, src.getM(), 0, src.getN());
+        return dst;
+    }
+
+    /**
+     * writes the transpose of src into dst using the active threads of the pool.
+     * the source is split into TILE x TILE tiles which are claimed dynamically.
+     */
+    public static DenseMatrix transpose(DenseMatrix src, DenseMatrix dst, Pool pool) {
+        checkDimensions(src, dst);
+        int tilesM = (src.getM() + TILE - 1) / TILE;
+        int tilesN = (src.getN() + TILE - 1) / TILE;
+        PoolFunction function = (index, core) -> {
+            int row = (index / tilesN) * TILE;
+            int col = (index % tilesN) * TILE;
+            transpose(src, dst, row, Math.min(row + TILE, src.getM()), col, Math.min(col + TILE, src.getN()));
+        };
+        pool.executeSequential(function, tilesM * tilesN, false);
+        return dst;
+    }
+
+    /**
+     * transposes the block src[rowStart:rowEnd, colStart:colEnd] into dst[colStart:colEnd, rowStart:rowEnd]
+     */
+    private static void transpose(DenseMatrix src, DenseMatrix dst, int rowStart, int rowEnd, int colStart, int colEnd) {
+        int m = rowEnd - rowStart;
+        int n = colEnd - colStart;
+        if ((long) m * n <= BLOCK) {
+            double[] s = src.getData();
+            double[] d = dst.getData();
+            int dld = dst.getLeadingDimension();
+            for (int i = rowStart; i < rowEnd; i++) {
+                int r = src.index(i, 0);
+                int c = dst.index(0, i);
+                for (int j = colStart; j < colEnd; j++) {
+                    d[c + j * dld] = s[r + j];
+                }
+            }
+        } else if (m >= n) {
+            int mid = rowStart + m / 2;
+            transpose(src, dst, rowStart, mid, colStart, colEnd);
+            transpose(src, dst, mid, rowEnd, colStart, colEnd);
+        } else {
+            int mid = colStart + n / 2;
+            transpose(src, dst, rowStart, rowEnd, colStart, mid);
+            transpose(src, dst, rowStart, rowEnd, mid, colEnd);
+        }
+    }
+
+    /**
+     * transposes a square n x n block of the array in place. Tiles above and below the diagonal are swapped
+     * block by block so both tiles stay in the cache.
+     */
+    static void square(double[] data, int offset, int ld, int n) {
+        int b = (int) Math.sqrt(BLOCK);
+        for (int bi = 0; bi < n; bi += b) {
+            int iEnd = Math.min(bi + b, n);
+            for (int bj = 0; bj <= bi; bj += b) {
+                int jEnd = Math.min(bj + b, n);
+                for (int i = bi; i < iEnd; i++) {
+                    for (int j = bj; j < Math.min(jEnd, i); j++) {
+                        int x = offset + i * ld + j;
+                        int y = offset + j * ld + i;
+                        double v = data[x];
+                        data[x] = data[y];
+                        data[y] = v;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * transposes the contiguous m x n row-major array data[offset : offset + m * n] in place.
+     * Afterwards it contains the n x m transpose in row-major order.
+     */
+    static void cycles(double[] data, int offset, int m, int n) {
+        int length = m * n;
+        if (m <= 1 || n <= 1) return;
+        //the element at position k moves to position k * m mod (length - 1). The first and last element stay.
+        BitSet moved = new BitSet(length);
+        for (int start = 1; start < length - 1; start++) {
+            if (moved.get(start)) continue;
+            int k = start;
+            double carry = data[offset + k];
+            do {
+                int next = (int) ((long) k * m % (length - 1));
+                double v = data[offset + next];
+                data[offset + next] = carry;
+                carry = v;
+                moved.set(k);
+                k = next;
+            } while (k != start);
+        }
+    }
+
+    private static void checkDimensions(DenseMatrix src, DenseMatrix dst) {
+        if (src.getM() != dst.getN() || src.getN() != dst.getM()) throw new RuntimeException();
+    }
+}
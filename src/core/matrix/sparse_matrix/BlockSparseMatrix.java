@@ -0,0 +1,784 @@
+package core.matrix.sparse_matrix;
+
+import core.exceptions.NotSupportedOperation;
+import core.matrix.Matrix;
+import core.matrix.dense.DenseMatrix;
+import core.threads.Pool;
+import core.threads.PoolFunction;
+import core.vector.DenseVector;
+import core.vector.Vector;
+
+import java.util.Arrays;
+
+/**
+ * using BSR format (block compressed rows)
+ *
+ * The matrix is split into b x b blocks. Only blocks with at least one entry are stored, each with one column
+ * index and b * b row-major values. The blocks of block row i are located at block_ptr[i] ... block_ptr[i+1]),
+ * sorted by their block column. Compared to csr this stores one index per block instead of one per entry
+ * and the product multiplies whole blocks held in registers (unrolled for b = 3 and b = 6).
+ *
+ * Both dimensions must be multiples of the block size.
+ */
+public class BlockSparseMatrix extends Matrix<BlockSparseMatrix> {
+
+    private final int b;
+    private int[] block_ptr;
+    private int[] block_col;
+    private double[] val;
+
+    private int[] partition;
+
+    public BlockSparseMatrix(int m, int n, int b) {
+        super(m, n);
+        if (b < 1 || m % b != 0 || n % b != 0) throw new RuntimeException("dimensions must be multiples of the block size");
+        this.b = b;
+        block_ptr = new int[m / b + 1];
+        block_col = new int[0];
+        val = new double[0];
+    }
+
+    /**
+     * wraps the given arrays without copying them. val holds b * b values per block.
+     */
+    public BlockSparseMatrix(int m, int n, int b, int[] block_ptr, int[] block_col, double[] val) {
+        this(m, n, b);
+        if (block_ptr.length != m / b + 1 || block_col.length < block_ptr[m / b]
+                || val.length < (long) block_ptr[m / b] * b * b)
+            throw new RuntimeException("storage does not fit dimensions");
+        this.block_ptr = block_ptr;
+        this.block_col = block_col;
+        this.val = val;
+    }
+
+    /**
+     * converts a csr matrix in O(nnz + number of blocks * b * b). Blocks are stored if any of their entries is stored.
+     */
+    public BlockSparseMatrix(SparseMatrix matrix, int b) {
+        this(matrix.getM(), matrix.getN(), b);
+        int rows = this.getM() / b;
+        int[] index = matrix.getCol_index();
+        double[] values = matrix.getVal();
+        int[] marker = new int[this.getN() / b];
+        Arrays.fill(marker, -1);
+        int[] cols = new int[this.getN() / b];
+        for (int br = 0; br < rows; br++) {
+            int count = 0;
+            for (int i = br * b; i < (br + 1) * b; i++) {
+                for (int k = matrix.start(i); k < matrix.end(i); k++) {
+                    int bc = index[k] / b;
+                    if (marker[bc] != br) {
+                        marker[bc] = br;
+                        cols[count++] = bc;
+                    }
+                }
+            }
+            block_ptr[br + 1] = block_ptr[br] + count;
+        }
+        block_col = new int[block_ptr[rows]];
+        val = new double[Math.multiplyExact(block_ptr[rows], b * b)];
+        //the position of block column bc in the current block row
+        int[] slot = new int[this.getN() / b];
+        Arrays.fill(marker, -1);
+        for (int br = 0; br < rows; br++) {
+            int count = 0;
+            for (int i = br * b; i < (br + 1) * b; i++) {
+                for (int k = matrix.start(i); k < matrix.end(i); k++) {
+                    int bc = index[k] / b;
+                    if (marker[bc] != br) {
+                        marker[bc] = br;
+                        block_col[block_ptr[br] + count++] = bc;
+                    }
+                }
+            }
+            Arrays.sort(block_col, block_ptr[br], block_ptr[br + 1]);
+            for (int k = block_ptr[br]; k < block_ptr[br + 1]; k++) {
+                slot[block_col[k]] = k;
+            }
+            for (int i = br * b; i < (br + 1) * b; i++) {
+                for (int k = matrix.start(i); k < matrix.end(i); k++) {
+                    int col = index[k];
+                    val[slot[col / b] * b * b + (i - br * b) * b + col % b] = values[k];
+                }
+            }
+        }
+    }
+
+    public int getBlockSize() {
+        return b;
+    }
+
+    /**
+     * number of stored blocks
+     */
+    public int blocks() {
+        return block_ptr[block_ptr.length - 1];
+    }
+
+    /**
+     * the same matrix in csr format. All entries of the stored blocks are kept, including zeros.
+     */
+    public SparseMatrix toSparse() {
+        int m = this.getM();
+        int[] row_ptr = new int[m + 1];
+        for (int i = 0; i < m; i++) {
+            int br = i / b;
+            row_ptr[i + 1] = row_ptr[i] + (block_ptr[br + 1] - block_ptr[br]) * b;
+        }
+        int[] index = new int[row_ptr[m]];
+        double[] values = new double[row_ptr[m]];
+        for (int i = 0; i < m; i++) {
+            int br = i / b;
+            int p = row_ptr[i];
+            for (int k = block_ptr[br]; k < block_ptr[br + 1]; k++) {
+                for (int j = 0; j < b; j++) {
+                    index[p] = block_col[k] * b + j;
+                    values[p++] = val[k * b * b + (i - br * b) * b + j];
+                }
+            }
+        }
+        return new SparseMatrix(m, this.getN(), row_ptr, index, values);
+    }
+
+    /**
+     * index of the block (br, bc) or -(insertion point) - 1 like Arrays.binarySearch
+     */
+    private int find(int br, int bc) {
+        return Arrays.binarySearch(block_col, block_ptr[br], block_ptr[br + 1], bc);
+    }
+
+    /**
+     * y[br * b ... (br+1) * b) = A[block row br] * x
+     */
+    private void mul_block_row(double[] x, double[] y, int br) {
+        int start = block_ptr[br];
+        int end = block_ptr[br + 1];
+        if (b == 3) {
+            double y0 = 0, y1 = 0, y2 = 0;
+            for (int k = start; k < end; k++) {
+                int o = k * 9;
+                int xo = block_col[k] * 3;
+                double x0 = x[xo], x1 = x[xo + 1], x2 = x[xo + 2];
+                y0 += val[o] * x0 + val[o + 1] * x1 + val[o + 2] * x2;
+                y1 += val[o + 3] * x0 + val[o + 4] * x1 + val[o + 5] * x2;
+                y2 += val[o + 6] * x0 + val[o + 7] * x1 + val[o + 8] * x2;
+            }
+            y[br * 3] = y0;
+            y[br * 3 + 1] = y1;
+            y[br * 3 + 2] = y2;
+        } else if (b == 6) {
+            double y0 = 0, y1 = 0, y2 = 0, y3 = 0, y4 = 0, y5 = 0;
+            for (int k = start; k < end; k++) {
+                int o = k * 36;
+                int xo = block_col[k] * 6;
+                double x0 = x[xo], x1 = x[xo + 1], x2 = x[xo + 2], x3 = x[xo + 3], x4 = x[xo + 4], x5 = x[xo + 5];
+                y0 += val[o] * x0 + val[o + 1] * x1 + val[o + 2] * x2 + val[o + 3] * x3 + val[o + 4] * x4 + val[o + 5] * x5;
+                y1 += val[o + 6] * x0 + val[o + 7] * x1 + val[o + 8] * x2 + val[o + 9] * x3 + val[o + 10] * x4 + val[o + 11] * x5;
+                y2 += val[o + 12] * x0 + val[o + 13] * x1 + val[o + 14] * x2 + val[o + 15] * x3 + val[o + 16] * x4 + val[o + 17] * x5;
+                y3 += val[o + 18] * x0 + val[o + 19] * x1 + val[o + 20] * x2 + val[o + 21] * x3 + val[o + 22] * x4 + val[o + 23] * x5;
+                y4 += val[o + 24] * x0 + val[o + 25] * x1 + val[o + 26] * x2 + val[o + 27] * x3 + val[o + 28] * x4 + val[o + 29] * x5;
+                y5 += val[o + 30] * x0 + val[o + 31] * x1 + val[o + 32] * x2 + val[o + 33] * x3 + val[o + 34] * x4 + val[o + 35] * x5;
+            }
+            int yo = br * 6;
+            y[yo] = y0;
+            y[yo + 1] = y1;
+            y[yo + 2] = y2;
+            y[yo + 3] = y3;
+            y[yo + 4] = y4;
+            y[yo + 5] = y5;
+        } else {
+            int yo = br * b;
+            for (int r = 0; r < b; r++) {
+                y[yo + r] = 0;
+            }
+            for (int k = start; k < end; k++) {
+                int o = k * b * b;
+                int xo = block_col[k] * b;
+                for (int r = 0; r < b; r++) {
+                    double sum = 0;
+                    for (int j = 0; j < b; j++) {
+                        sum += val[o + r * b + j] * x[xo + j];
+                    }
+                    y[yo + r] += sum;
+                }
+            }
+        }
+    }
+
+    private static double[] values(Vector<?> vec) {
+        return vec instanceof DenseVector ? ((DenseVector) vec).getValues() : new DenseVector(vec).getValues();
+    }
+
+    @Override
+    public DenseVector mulInto(Vector<?> vec, DenseVector target) {
+        if (vec.getSize() != this.getN() || target.getSize() != this.getM()) throw new RuntimeException();
+        double[] x = values(vec);
+        double[] y = target.getValues();
+        for (int br = 0; br < this.getM() / b; br++) {
+            mul_block_row(x, y, br);
+        }
+        return target;
+    }
+
+    /**
+     * every thread gets a block of consecutive block rows with about the same number of blocks
+     */
+    @Override
+    public DenseVector mulInto(Vector<?> vec, DenseVector target, Pool pool) {
+        if (vec.getSize() != this.getN() || target.getSize() != this.getM()) throw new RuntimeException();
+        int threads = pool.getActiveThreads();
+        int[] blocks = getBlockRowPartition(threads);
+        double[] x = values(vec);
+        double[] y = target.getValues();
+        PoolFunction function = (index, core) -> {
+            for (int br = blocks[index]; br < blocks[index + 1]; br++) {
+                mul_block_row(x, y, br);
+            }
+        };
+        pool.executeTotal(function, threads, false);
+        return target;
+    }
+
+    /**
+     * splits the block rows into parts with about the same work. The work of a block row is its number of
+     * blocks plus one (see {@link SparseMatrix#getRowPartition(int)}).
+     * @return  parts + 1 block row indices, part i covers the block rows [result[i], result[i+1])
+     */
+    public int[] getBlockRowPartition(int parts) {
+        int[] cached = partition;
+        if (cached != null && cached.length == parts + 1) return cached;
+        int rows = this.getM() / b;
+        int[] result = new int[parts + 1];
+        long total = (long) rows + blocks();
+        for (int p = 1; p < parts; p++) {
+            long diagonal = total * p / parts;
+            int low = result[p - 1];
+            int high = rows;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (mid + 1 + (long) block_ptr[mid + 1] <= diagonal) low = mid + 1;
+                else high = mid;
+            }
+            result[p] = low;
+        }
+        result[parts] = rows;
+        partition = result;
+        return result;
+    }
+
+    /**
+     * the diagonal blocks, zero if a block is not stored. Requires a square matrix.
+     */
+    public DenseMatrix[] getDiagonalBlocks() {
+        if (this.getM() != this.getN()) throw new RuntimeException();
+        DenseMatrix[] blocks = new DenseMatrix[this.getM() / b];
+        for (int br = 0; br < blocks.length; br++) {
+            blocks[br] = new DenseMatrix(b, b);
+            int k = find(br, br);
+            if (k < 0) continue;
+            for (int r = 0; r < b; r++) {
+                for (int j = 0; j < b; j++) {
+                    blocks[br].setValue(r, j, val[k * b * b + r * b + j]);
+                }
+            }
+        }
+        return blocks;
+    }
+
+    /**
+     * block jacobi preconditioner: the block diagonal matrix of the inverted diagonal blocks.
+     * The blocks are inverted with gauss-jordan elimination and partial pivoting.
+     */
+    public BlockSparseMatrix blockJacobi() {
+        if (this.getM() != this.getN()) throw new RuntimeException();
+        int rows = this.getM() / b;
+        int[] ptr = new int[rows + 1];
+        int[] cols = new int[rows];
+        double[] inv = new double[rows * b * b];
+        double[] a = new double[b * b];
+        for (int br = 0; br < rows; br++) {
+            ptr[br + 1] = br + 1;
+            cols[br] = br;
+            int k = find(br, br);
+            if (k < 0) throw new RuntimeException("singular diagonal block " + br);
+            System.arraycopy(val, k * b * b, a, 0, b * b);
+            invert(a, inv, br * b * b);
+        }
+        return new BlockSparseMatrix(this.getM(), this.getN(), b, ptr, cols, inv);
+    }
+
+    /**
+     * writes the inverse of the b x b matrix a to inv[offset ...]. a is overwritten.
+     */
+    private void invert(double[] a, double[] inv, int offset) {
+        for (int r = 0; r < b; r++) {
+            for (int j = 0; j < b; j++) {
+                inv[offset + r * b + j] = r == j ? 1 : 0;
+            }
+        }
+        for (int c = 0; c < b; c++) {
+            int pivot = c;
+            for (int r = c + 1; r < b; r++) {
+                if (Math.abs(a[r * b + c]) > Math.abs(a[pivot * b + c])) pivot = r;
+            }
+            if (a[pivot * b + c] == 0) throw new RuntimeException("singular diagonal block");
+            if (pivot != c) {
+                for (int j = 0; j < b; j++) {
+                    double t = a[c * b + j];
+                    a[c * b + j] = a[pivot * b + j];
+                    a[pivot * b + j] = t;
+                    t = inv[offset + c * b + j];
+                    inv[offset + c * b + j] = inv[offset + pivot * b + j];
+                    inv[offset + pivot * b + j] = t;
+                }
+            }
+            double d = 1 / a[c * b + c];
+            for (int j = 0; j < b; j++) {
+                a[c * b + j] *= d;
+                inv[offset + c * b + j] *= d;
+            }
+            for (int r = 0; r < b; r++) {
+                if (r == c) continue;
+                double f = a[r * b + c];
+                if (f == 0) continue;
+                for (int j = 0; j < b; j++) {
+                    a[r * b + j] -= f * a[c * b + j];
+                    inv[offset + r * b + j] -= f * inv[offset + c * b + j];
+                }
+            }
+        }
+    }
+
+    @Override
+    public void mul_partial_row(DenseVector target, Vector<?> vec, int row) {
+        int br = row / b;
+        int r = row % b;
+        double sum = 0;
+        for (int k = block_ptr[br]; k < block_ptr[br + 1]; k++) {
+            int o = k * b * b + r * b;
+            for (int j = 0; j < b; j++) {
+                sum += val[o + j] * vec.getValue(block_col[k] * b + j);
+            }
+        }
+        target.setValue(row, sum);
+    }
+
+    @Override
+    public void mul_partial_row(DenseMatrix target, Matrix<?> matrix, int row) {
+        for (int c = 0; c < matrix.getN(); c++) {
+            double sum = 0;
+            int br = row / b;
+            int r = row % b;
+            for (int k = block_ptr[br]; k < block_ptr[br + 1]; k++) {
+                int o = k * b * b + r * b;
+                for (int j = 0; j < b; j++) {
+                    sum += val[o + j] * matrix.getValue(block_col[k] * b + j, c);
+                }
+            }
+            target.setValue(row, c, sum);
+        }
+    }
+
+    @Override
+    public void gemv_transposed_partial(double alpha, Vector<?> x, double[] y, int rowStart, int rowEnd) {
+        for (int i = rowStart; i < rowEnd; i++) {
+            double v = alpha * x.getValue(i);
+            if (v == 0) continue;
+            int br = i / b;
+            int r = i % b;
+            for (int k = block_ptr[br]; k < block_ptr[br + 1]; k++) {
+                int o = k * b * b + r * b;
+                int yo = block_col[k] * b;
+                for (int j = 0; j < b; j++) {
+                    y[yo + j] += v * val[o + j];
+                }
+            }
+        }
+    }
+
+    @Override
+    public void scale_partial_row(BlockSparseMatrix target, double scalar, int row) {
+        int br = row / b;
+        int r = row % b;
+        for (int k = block_ptr[br]; k < block_ptr[br + 1]; k++) {
+            for (int j = 0; j < b; j++) {
+                int col = block_col[k] * b + j;
+                double v = val[k * b * b + r * b + j] * scalar;
+                if (target == this) val[k * b * b + r * b + j] = v;
+                else target.setValue(row, col, v);
+            }
+        }
+    }
+
+    @Override
+    public void add_partial_row(BlockSparseMatrix target, BlockSparseMatrix matrix, int row) {
+        combine_partial_row(target, matrix, 1, row);
+    }
+
+    @Override
+    public void sub_partial_row(BlockSparseMatrix target, BlockSparseMatrix matrix, int row) {
+        combine_partial_row(target, matrix, -1, row);
+    }
+
+    @Override
+    public BlockSparseMatrix scaleInto(double scalar, BlockSparseMatrix target) {
+        return scale(scalar, target, null);
+    }
+
+    @Override
+    public BlockSparseMatrix scaleInto(double scalar, BlockSparseMatrix target, Pool pool) {
+        return scale(scalar, target, pool);
+    }
+
+    @Override
+    public BlockSparseMatrix addInto(BlockSparseMatrix other, BlockSparseMatrix target) {
+        return combine(1, this, 1, other, target, null);
+    }
+
+    @Override
+    public BlockSparseMatrix addInto(BlockSparseMatrix other, BlockSparseMatrix target, Pool pool) {
+        return combine(1, this, 1, other, target, pool);
+    }
+
+    @Override
+    public BlockSparseMatrix subInto(BlockSparseMatrix other, BlockSparseMatrix target) {
+        return combine(1, this, -1, other, target, null);
+    }
+
+    @Override
+    public BlockSparseMatrix subInto(BlockSparseMatrix other, BlockSparseMatrix target, Pool pool) {
+        return combine(1, this, -1, other, target, pool);
+    }
+
+    /**
+     * the target gets the block pattern of this matrix, the values are scaled block row by block row
+     */
+    private BlockSparseMatrix scale(double scalar, BlockSparseMatrix target, Pool pool) {
+        if (this.getM() != target.getM() || this.getN() != target.getN() || b != target.b) throw new RuntimeException();
+        int rows = this.getM() / b;
+        double[] source = val;
+        if (target != this) {
+            target.block_ptr = block_ptr.clone();
+            target.block_col = Arrays.copyOf(block_col, blocks());
+            target.val = new double[blocks() * b * b];
+            target.partition = null;
+        }
+        double[] values = target.val;
+        int chunks = (rows + SparseMatrix.MERGE_CHUNK - 1) / SparseMatrix.MERGE_CHUNK;
+        SparseMatrix.execute(pool, chunks, (chunk, core) -> {
+            int from = block_ptr[chunk * SparseMatrix.MERGE_CHUNK] * b * b;
+            int to = block_ptr[Math.min(rows, (chunk + 1) * SparseMatrix.MERGE_CHUNK)] * b * b;
+            for (int k = from; k < to; k++) {
+                values[k] = source[k] * scalar;
+            }
+        });
+        return target;
+    }
+
+    /**
+     * alpha * a + beta * b2 into the target, which may be a or b2. The pattern of the result is the union of the
+     * block patterns: it is counted per block row first, then every block row is merged into its own range of
+     * the new arrays, so no thread inserts into shared storage.
+     */
+    private static BlockSparseMatrix combine(double alpha, BlockSparseMatrix a, double beta, BlockSparseMatrix b2,
+                                             BlockSparseMatrix target, Pool pool) {
+        if (a.getM() != b2.getM() || a.getN() != b2.getN() || a.b != b2.b) throw new RuntimeException();
+        if (a.getM() != target.getM() || a.getN() != target.getN() || a.b != target.b) throw new RuntimeException();
+        int rows = a.getM() / a.b;
+        int chunks = (rows + SparseMatrix.MERGE_CHUNK - 1) / SparseMatrix.MERGE_CHUNK;
+
+        //symbolic pass: number of blocks of every merged block row, stored at result_ptr[row + 1]
+        int[] result_ptr = new int[rows + 1];
+        SparseMatrix.execute(pool, chunks, (chunk, core) -> {
+            for (int br = chunk * SparseMatrix.MERGE_CHUNK; br < Math.min(rows, (chunk + 1) * SparseMatrix.MERGE_CHUNK); br++) {
+                result_ptr[br + 1] = merge_block_row(alpha, a, beta, b2, br, null, null, 0);
+            }
+        });
+        for (int br = 0; br < rows; br++) {
+            result_ptr[br + 1] += result_ptr[br];
+        }
+        int[] result_col = new int[result_ptr[rows]];
+        double[] result_val = new double[result_ptr[rows] * a.b * a.b];
+        SparseMatrix.execute(pool, chunks, (chunk, core) -> {
+            for (int br = chunk * SparseMatrix.MERGE_CHUNK; br < Math.min(rows, (chunk + 1) * SparseMatrix.MERGE_CHUNK); br++) {
+                merge_block_row(alpha, a, beta, b2, br, result_col, result_val, result_ptr[br]);
+            }
+        });
+        target.block_ptr = result_ptr;
+        target.block_col = result_col;
+        target.val = result_val;
+        target.partition = null;
+        return target;
+    }
+
+    /**
+     * merges the block row of a and b2 with two pointers. Only counts the blocks if cols is null.
+     * @return  the position after the last written block
+     */
+    private static int merge_block_row(double alpha, BlockSparseMatrix a, double beta, BlockSparseMatrix b2, int br,
+                                       int[] cols, double[] values, int pos) {
+        int bb = a.b * a.b;
+        int i = a.block_ptr[br], iEnd = a.block_ptr[br + 1];
+        int j = b2.block_ptr[br], jEnd = b2.block_ptr[br + 1];
+        while (i < iEnd || j < jEnd) {
+            int ca = i < iEnd ? a.block_col[i] : Integer.MAX_VALUE;
+            int cb = j < jEnd ? b2.block_col[j] : Integer.MAX_VALUE;
+            if (cols != null) {
+                int o = pos * bb;
+                if (ca < cb) {
+                    cols[pos] = ca;
+                    for (int k = 0; k < bb; k++) values[o + k] = alpha * a.val[i * bb + k];
+                } else if (cb < ca) {
+                    cols[pos] = cb;
+                    for (int k = 0; k < bb; k++) values[o + k] = beta * b2.val[j * bb + k];
+                } else {
+                    cols[pos] = ca;
+                    for (int k = 0; k < bb; k++) values[o + k] = alpha * a.val[i * bb + k] + beta * b2.val[j * bb + k];
+                }
+            }
+            if (ca <= cb) i++;
+            if (cb <= ca) j++;
+            pos++;
+        }
+        return pos;
+    }
+
+    /**
+     * target[row] = this[row] + beta * matrix[row]. The row is computed before it is written,
+     * so the target may be one of the operands. addInto and subInto merge whole block rows instead.
+     */
+    private void combine_partial_row(BlockSparseMatrix target, BlockSparseMatrix matrix, double beta, int row) {
+        int br = row / b;
+        int r = row % b;
+        int i = block_ptr[br], iEnd = block_ptr[br + 1];
+        int j = matrix.block_ptr[br], jEnd = matrix.block_ptr[br + 1];
+        int[] cols = new int[iEnd - i + jEnd - j];
+        double[] sums = new double[cols.length * b];
+        int n = 0;
+        while (i < iEnd || j < jEnd) {
+            int ca = i < iEnd ? block_col[i] : Integer.MAX_VALUE;
+            int cb = j < jEnd ? matrix.block_col[j] : Integer.MAX_VALUE;
+            cols[n] = Math.min(ca, cb);
+            for (int c = 0; c < b; c++) {
+                if (ca <= cb) sums[n * b + c] += val[i * b * b + r * b + c];
+                if (cb <= ca) sums[n * b + c] += beta * matrix.val[j * b * b + r * b + c];
+            }
+            if (ca <= cb) i++;
+            if (cb <= ca) j++;
+            n++;
+        }
+        for (int k = 0; k < n; k++) {
+            for (int c = 0; c < b; c++) {
+                target.setValue(row, cols[k] * b + c, sums[k * b + c]);
+            }
+        }
+    }
+
+    @Override
+    public BlockSparseMatrix transpose() {
+        int rows = this.getM() / b;
+        int cols = this.getN() / b;
+        CompressedArrays t = CompressedArrays.transpose(rows, cols, block_ptr, 0, block_col, new double[blocks()]);
+        //t.index holds the block rows of the transposed blocks, the values are moved separately
+        int[] next = Arrays.copyOf(t.ptr, cols);
+        double[] tval = new double[val.length];
+        for (int br = 0; br < rows; br++) {
+            for (int k = block_ptr[br]; k < block_ptr[br + 1]; k++) {
+                int p = next[block_col[k]]++;
+                for (int r = 0; r < b; r++) {
+                    for (int j = 0; j < b; j++) {
+                        tval[p * b * b + j * b + r] = val[k * b * b + r * b + j];
+                    }
+                }
+            }
+        }
+        return new BlockSparseMatrix(this.getN(), this.getM(), b, t.ptr, t.index, tval);
+    }
+
+    @Override
+    public BlockSparseMatrix self_transpose() {
+        BlockSparseMatrix t = transpose();
+        this.M = t.M;
+        this.N = t.N;
+        this.block_ptr = t.block_ptr;
+        this.block_col = t.block_col;
+        this.val = t.val;
+        this.partition = null;
+        return this;
+    }
+
+    @Override
+    public BlockSparseMatrix self_identity() {
+        for (int i = 0; i < Math.min(this.getM(), this.getN()); i++) {
+            setValue(i, i, 1);
+        }
+        return this;
+    }
+
+    @Override
+    public double norm_1() {
+        double max = 0;
+        for (int i = 0; i < this.getM(); i++) {
+            int br = i / b;
+            int r = i % b;
+            double sum = 0;
+            for (int k = block_ptr[br]; k < block_ptr[br + 1]; k++) {
+                for (int j = 0; j < b; j++) {
+                    sum += Math.abs(val[k * b * b + r * b + j]);
+                }
+            }
+            if (sum > max) max = sum;
+        }
+        return max;
+    }
+
+    @Override
+    public double norm_infinity() {
+        double[] sums = new double[this.getN()];
+        for (int k = 0; k < blocks(); k++) {
+            for (int r = 0; r < b; r++) {
+                for (int j = 0; j < b; j++) {
+                    sums[block_col[k] * b + j] += Math.abs(val[k * b * b + r * b + j]);
+                }
+            }
+        }
+        double max = 0;
+        for (double sum : sums) {
+            if (sum > max) max = sum;
+        }
+        return max;
+    }
+
+    @Override
+    public boolean isSymmetric() {
+        if (this.getM() != this.getN()) return false;
+        for (int br = 0; br < this.getM() / b; br++) {
+            for (int k = block_ptr[br]; k < block_ptr[br + 1]; k++) {
+                for (int r = 0; r < b; r++) {
+                    for (int j = 0; j < b; j++) {
+                        if (getValue(block_col[k] * b + j, br * b + r) != val[k * b * b + r * b + j]) return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public double determinant() {
+        throw new NotSupportedOperation();
+    }
+
+    @Override
+    public void swapRow(int r1, int row2) {
+        throw new NotSupportedOperation();
+    }
+
+    @Override
+    public void swapColumn(int c1, int c2) {
+        throw new NotSupportedOperation();
+    }
+
+    @Override
+    public void scale_column(int column, double scalar) {
+        for (int k = 0; k < blocks(); k++) {
+            if (block_col[k] != column / b) continue;
+            for (int r = 0; r < b; r++) {
+                val[k * b * b + r * b + column % b] *= scalar;
+            }
+        }
+    }
+
+    @Override
+    public void scale_row(int row, double scalar) {
+        scale_partial_row(this, scalar, row);
+    }
+
+    /**
+     * overwrites the entry or inserts a new zero block for it. Zeros are not inserted.
+     */
+    @Override
+    public void setValue(int m, int n, double value) {
+        int br = m / b;
+        int k = find(br, n / b);
+        if (k < 0) {
+            if (value == 0) return;
+            k = -k - 1;
+            int blocks = blocks();
+            if (blocks == block_col.length) {
+                int capacity = Math.max(16, blocks + (blocks >> 1));
+                block_col = Arrays.copyOf(block_col, capacity);
+                val = Arrays.copyOf(val, capacity * b * b);
+            }
+            System.arraycopy(block_col, k, block_col, k + 1, blocks - k);
+            System.arraycopy(val, k * b * b, val, (k + 1) * b * b, (blocks - k) * b * b);
+            block_col[k] = n / b;
+            Arrays.fill(val, k * b * b, (k + 1) * b * b, 0);
+            for (int i = br + 1; i < block_ptr.length; i++) {
+                block_ptr[i]++;
+            }
+            partition = null;
+        }
+        val[k * b * b + (m % b) * b + n % b] = value;
+    }
+
+    @Override
+    public double getValue(int m, int n) {
+        int k = find(m / b, n / b);
+        return k >= 0 ? val[k * b * b + (m % b) * b + n % b] : 0;
+    }
+
+    @Override
+    public boolean hasValue(double v) {
+        for (int k = 0; k < blocks() * b * b; k++) {
+            if (val[k] == v) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void replaceValue(double v, double r) {
+        for (int k = 0; k < blocks() * b * b; k++) {
+            if (val[k] == v) val[k] = r;
+        }
+    }
+
+    @Override
+    public BlockSparseMatrix newInstance() {
+        return new BlockSparseMatrix(this.getM(), this.getN(), b);
+    }
+
+    @Override
+    public BlockSparseMatrix copy() {
+        return new BlockSparseMatrix(this.getM(), this.getN(), b, block_ptr.clone(),
+                Arrays.copyOf(block_col, blocks()), Arrays.copyOf(val, blocks() * b * b));
+    }
+
+    @Override
+    public DenseMatrix copyToDense() {
+        DenseMatrix matrix = new DenseMatrix(this.getM(), this.getN());
+        for (int br = 0; br < this.getM() / b; br++) {
+            for (int k = block_ptr[br]; k < block_ptr[br + 1]; k++) {
+                for (int r = 0; r < b; r++) {
+                    for (int j = 0; j < b; j++) {
+                        matrix.setValue(br * b + r, block_col[k] * b + j, val[k * b * b + r * b + j]);
+                    }
+                }
+            }
+        }
+        return matrix;
+    }
+
+    /**
+     * number of stored values, b * b per block
+     */
+    @Override
+    public int storageSize() {
+        return blocks() * b * b;
+    }
+
+    @Override
+    public String toString() {
+        return copyToDense().toString();
+    }
+}
@@ -0,0 +1,48 @@
+package core.matrix.sparse_matrix;
+
+/**
+ * the three arrays of a compressed sparse row or column matrix
+ */
+final class CompressedArrays {
+
+    final int[] ptr;
+    final int[] index;
+    final double[] val;
+
+    CompressedArrays(int[] ptr, int[] index, double[] val) {
+        this.ptr = ptr;
+        this.index = index;
+        this.val = val;
+    }
+
+    /**
+     * converts compressed rows into compressed columns (or the other way round) with a counting sort in O(nnz + n).
+     * The lines [offset, offset + lines) of the input are converted, the result has the line indices 0 ... lines-1.
+     * The input lines are visited in order, so the indices within every output line are sorted.
+     * @param lines     number of rows (or columns) of the input
+     * @param others    number of columns (or rows) of the input, the number of lines of the output
+     */
+    static CompressedArrays transpose(int lines, int others, int[] ptr, int offset, int[] index, double[] val) {
+        int base = ptr[offset];
+        int nnz = ptr[offset + lines] - base;
+        int[] tptr = new int[others + 1];
+        for (int k = base; k < base + nnz; k++) {
+            tptr[index[k] + 1]++;
+        }
+        for (int i = 0; i < others; i++) {
+            tptr[i + 1] += tptr[i];
+        }
+        int[] next = new int[others];
+        System.arraycopy(tptr, 0, next, 0, others);
+        int[] tindex = new int[nnz];
+        double[] tval = new double[nnz];
+        for (int r = 0; r < lines; r++) {
+            for (int k = ptr[offset + r]; k < ptr[offset + r + 1]; k++) {
+                int pos = next[index[k]]++;
+                tindex[pos] = r;
+                tval[pos] = val[k];
+            }
+        }
+        return new CompressedArrays(tptr, tindex, tval);
+    }
+}
@@ -0,0 +1,670 @@
+package core.matrix.sparse_matrix;
+
+import core.exceptions.NotSupportedOperation;
+import core.matrix.Matrix;
+import core.matrix.dense.DenseMatrix;
+import core.simd.Kernels;
+import core.threads.Pool;
+import core.threads.PoolFunction;
+import core.vector.DenseVector;
+import core.vector.Vector;
+
+import java.util.Arrays;
+
+/**
+ * using CSC format
+ *
+ * The entries of column j are located at val[col_ptr[j] ... col_ptr[j+1]) with their rows in row_index, sorted
+ * by row. The arrays of a CscMatrix are the arrays of the {@link SparseMatrix} of its transpose, so both formats
+ * are converted into each other with an O(nnz) counting sort.
+ *
+ * Column access is cheap: A^T * x gathers along the columns and A * x scatters the columns.
+ * The row based methods of {@link Matrix} use a row view with the positions of the entries of every row, which is
+ * built on the first row access and dropped when the pattern changes.
+ */
+public class CscMatrix extends Matrix<CscMatrix> {
+
+    private double[] val;
+    private int[] row_index;
+    private int[] col_ptr;
+
+    private Rows rows;
+
+    /**
+     * the entries of row i are val[pos[ptr[i]]], val[pos[ptr[i] + 1]], ... in the sorted columns
+     * col[ptr[i] ... ptr[i+1])
+     */
+    private static final class Rows {
+        final int[] ptr;
+        final int[] col;
+        final int[] pos;
+
+        Rows(int[] ptr, int[] col, int[] pos) {
+            this.ptr = ptr;
+            this.col = col;
+            this.pos = pos;
+        }
+    }
+
+    public CscMatrix(int m, int n) {
+        super(m, n);
+        col_ptr = new int[n + 1];
+        row_index = new int[0];
+        val = new double[0];
+    }
+
+    /**
+     * wraps the given csc arrays without copying them. The rows of every column must be sorted.
+     */
+    public CscMatrix(int m, int n, int[] col_ptr, int[] row_index, double[] val) {
+        super(m, n);
+        if (col_ptr.length != n + 1 || row_index.length < col_ptr[n] || val.length < col_ptr[n])
+            throw new RuntimeException("storage does not fit dimensions");
+        this.col_ptr = col_ptr;
+        this.row_index = row_index;
+        this.val = val;
+    }
+
+    public CscMatrix(SparseMatrix matrix) {
+        this(matrix.getM(), matrix.getN());
+        CscMatrix csc = matrix.toCsc();
+        this.col_ptr = csc.col_ptr;
+        this.row_index = csc.row_index;
+        this.val = csc.val;
+    }
+
+    /**
+     * the same matrix in compressed sparse row format
+     */
+    public SparseMatrix toCsr() {
+        CompressedArrays t = CompressedArrays.transpose(this.getN(), this.getM(), col_ptr, 0, row_index, val);
+        return new SparseMatrix(this.getM(), this.getN(), t.ptr, t.index, t.val);
+    }
+
+    public int[] getCol_ptr() {
+        return col_ptr;
+    }
+
+    public int[] getRow_index() {
+        return row_index;
+    }
+
+    public double[] getVal() {
+        return val;
+    }
+
+    private static double[] values(Vector<?> vec) {
+        return vec instanceof DenseVector ? ((DenseVector) vec).getValues() : new DenseVector(vec).getValues();
+    }
+
+    /**
+     * y[start:end] = A[:, start:end]^T * x
+     */
+    private void gather(double[] x, double[] y, int start, int end) {
+        for (int j = start; j < end; j++) {
+            double sum = 0;
+            for (int k = col_ptr[j]; k < col_ptr[j + 1]; k++) {
+                sum += val[k] * x[row_index[k]];
+            }
+            y[j] = sum;
+        }
+    }
+
+    /**
+     * y += A[:, start:end] * x[start:end]
+     */
+    private void scatter(double[] x, double[] y, int start, int end) {
+        for (int j = start; j < end; j++) {
+            double v = x[j];
+            if (v == 0) continue;
+            for (int k = col_ptr[j]; k < col_ptr[j + 1]; k++) {
+                y[row_index[k]] += val[k] * v;
+            }
+        }
+    }
+
+    @Override
+    public DenseVector mulInto(Vector<?> vec, DenseVector target) {
+        if (vec.getSize() != this.getN() || target.getSize() != this.getM()) throw new RuntimeException();
+        double[] y = target.getValues();
+        Arrays.fill(y, 0);
+        scatter(values(vec), y, 0, this.getN());
+        return target;
+    }
+
+    /**
+     * every thread scatters a block of columns into its own cached buffer, the buffers are summed up afterwards
+     */
+    @Override
+    public DenseVector mulInto(Vector<?> vec, DenseVector target, Pool pool) {
+        if (vec.getSize() != this.getN() || target.getSize() != this.getM()) throw new RuntimeException();
+        int threads = pool.getActiveThreads();
+        double[] x = values(vec);
+        double[] y = target.getValues();
+        double[][] buffers = buffers(threads, this.getM());
+        PoolFunction function = (index, core) -> {
+            double[] buffer = index == 0 ? y : buffers[index];
+            Arrays.fill(buffer, 0, this.getM(), 0);
+            scatter(x, buffer, (int) ((long) index * this.getN() / threads),
+                    (int) ((long) (index + 1) * this.getN() / threads));
+        };
+        pool.executeTotal(function, threads, false);
+        PoolFunction reduce = (index, core) -> {
+            int start = (int) ((long) index * this.getM() / threads);
+            int end = (int) ((long) (index + 1) * this.getM() / threads);
+            for (int b = 1; b < threads; b++) {
+                for (int i = start; i < end; i++) {
+                    y[i] += buffers[b][i];
+                }
+            }
+        };
+        pool.executeTotal(reduce, threads, false);
+        return target;
+    }
+
+    @Override
+    public DenseVector mulTransposedInto(Vector<?> vec, DenseVector target) {
+        if (vec.getSize() != this.getM() || target.getSize() != this.getN()) throw new RuntimeException();
+        gather(values(vec), target.getValues(), 0, this.getN());
+        return target;
+    }
+
+    @Override
+    public DenseVector mulTransposedInto(Vector<?> vec, DenseVector target, Pool pool) {
+        if (vec.getSize() != this.getM() || target.getSize() != this.getN()) throw new RuntimeException();
+        double[] x = values(vec);
+        double[] y = target.getValues();
+        int threads = pool.getActiveThreads();
+        PoolFunction function = (index, core) -> gather(x, y, (int) ((long) index * this.getN() / threads),
+                (int) ((long) (index + 1) * this.getN() / threads));
+        pool.executeTotal(function, threads, false);
+        return target;
+    }
+
+    @Override
+    public void gemv_transposed_partial(double alpha, Vector<?> x, double[] y, int rowStart, int rowEnd) {
+        Rows r = rows();
+        for (int i = rowStart; i < rowEnd; i++) {
+            double v = alpha * x.getValue(i);
+            if (v == 0) continue;
+            for (int p = r.ptr[i]; p < r.ptr[i + 1]; p++) {
+                y[r.col[p]] += v * val[r.pos[p]];
+            }
+        }
+    }
+
+    @Override
+    public void gemv_partial_row(double alpha, Vector<?> x, double beta, DenseVector y, int row) {
+        Rows r = rows();
+        double sum = 0;
+        for (int p = r.ptr[row]; p < r.ptr[row + 1]; p++) {
+            sum += val[r.pos[p]] * x.getValue(r.col[p]);
+        }
+        y.setValue(row, beta == 0 ? alpha * sum : alpha * sum + beta * y.getValue(row));
+    }
+
+    @Override
+    public void gemm_partial_row(double alpha, Matrix<?> b, boolean transB, double beta, DenseMatrix c, int row) {
+        Rows r = rows();
+        double[] cd = c.getData();
+        int cr = c.index(row, 0);
+        for (int j = 0; j < c.getN(); j++) {
+            cd[cr + j] = beta == 0 ? 0 : beta * cd[cr + j];
+        }
+        for (int p = r.ptr[row]; p < r.ptr[row + 1]; p++) {
+            double v = alpha * val[r.pos[p]];
+            int k = r.col[p];
+            if (b instanceof DenseMatrix && !transB) {
+                DenseMatrix dense = (DenseMatrix) b;
+                Kernels.axpy(v, dense.getData(), dense.index(k, 0), cd, cr, c.getN());
+            } else {
+                for (int j = 0; j < c.getN(); j++) {
+                    cd[cr + j] += v * (transB ? b.getValue(j, k) : b.getValue(k, j));
+                }
+            }
+        }
+    }
+
+    /**
+     * the row view, built once with a counting sort in O(nnz + M). The fields of Rows are final, so a view
+     * built by one thread is safely visible to the others.
+     */
+    private Rows rows() {
+        Rows r = rows;
+        if (r != null) return r;
+        synchronized (this) {
+            if (rows == null) rows = buildRows();
+            return rows;
+        }
+    }
+
+    private Rows buildRows() {
+        int m = this.getM();
+        int nnz = col_ptr[this.getN()];
+        int[] ptr = new int[m + 1];
+        for (int k = 0; k < nnz; k++) {
+            ptr[row_index[k] + 1]++;
+        }
+        for (int i = 0; i < m; i++) {
+            ptr[i + 1] += ptr[i];
+        }
+        int[] next = Arrays.copyOf(ptr, m);
+        int[] col = new int[nnz];
+        int[] pos = new int[nnz];
+        for (int j = 0; j < this.getN(); j++) {
+            for (int k = col_ptr[j]; k < col_ptr[j + 1]; k++) {
+                int p = next[row_index[k]]++;
+                col[p] = j;
+                pos[p] = k;
+            }
+        }
+        return new Rows(ptr, col, pos);
+    }
+
+    /**
+     * position of the entry (row, column) or -(insertion point) - 1 like Arrays.binarySearch
+     */
+    private int find(int row, int column) {
+        return Arrays.binarySearch(row_index, col_ptr[column], col_ptr[column + 1], row);
+    }
+
+    /**
+     * row k of A^T * op(B) gathers column k of this matrix, so no row view is needed
+     */
+    @Override
+    public void gemm_transposed_partial(double alpha, Matrix<?> b, boolean transB, DenseMatrix c, int colStart, int colEnd) {
+        double[] cd = c.getData();
+        int width = colEnd - colStart;
+        for (int k = 0; k < this.getN(); k++) {
+            int cr = c.index(k, colStart);
+            for (int p = col_ptr[k]; p < col_ptr[k + 1]; p++) {
+                double v = alpha * val[p];
+                int i = row_index[p];
+                if (b instanceof DenseMatrix && !transB) {
+                    DenseMatrix dense = (DenseMatrix) b;
+                    Kernels.axpy(v, dense.getData(), dense.index(i, colStart), cd, cr, width);
+                } else {
+                    for (int j = 0; j < width; j++) {
+                        cd[cr + j] += v * (transB ? b.getValue(colStart + j, i) : b.getValue(i, colStart + j));
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void mul_partial_row(DenseVector target, Vector<?> vec, int row) {
+        gemv_partial_row(1, vec, 0, target, row);
+    }
+
+    @Override
+    public void mul_partial_row(DenseMatrix target, Matrix<?> matrix, int row) {
+        gemm_partial_row(1, matrix, false, 0, target, row);
+    }
+
+    /**
+     * target = this * matrix by scattering the columns of this matrix into the rows of the target
+     */
+    @Override
+    public DenseMatrix mulInto(Matrix<?> matrix, DenseMatrix target) {
+        if (matrix.getM() != this.getN()) throw new RuntimeException();
+        if (target.getM() != this.getM() || target.getN() != matrix.getN()) throw new RuntimeException();
+        double[] cd = target.getData();
+        int width = target.getN();
+        for (int i = 0; i < target.getM(); i++) {
+            Arrays.fill(cd, target.index(i, 0), target.index(i, 0) + width, 0);
+        }
+        DenseMatrix dense = matrix instanceof DenseMatrix ? (DenseMatrix) matrix : null;
+        for (int j = 0; j < this.getN(); j++) {
+            for (int k = col_ptr[j]; k < col_ptr[j + 1]; k++) {
+                int cr = target.index(row_index[k], 0);
+                if (dense != null) {
+                    Kernels.axpy(val[k], dense.getData(), dense.index(j, 0), cd, cr, width);
+                } else {
+                    for (int c = 0; c < width; c++) {
+                        cd[cr + c] += val[k] * matrix.getValue(j, c);
+                    }
+                }
+            }
+        }
+        return target;
+    }
+
+    @Override
+    public void scale_partial_row(CscMatrix target, double scalar, int row) {
+        Rows r = rows();
+        for (int p = r.ptr[row]; p < r.ptr[row + 1]; p++) {
+            if (target == this) val[r.pos[p]] *= scalar;
+            else target.setValue(row, r.col[p], val[r.pos[p]] * scalar);
+        }
+    }
+
+    @Override
+    public void add_partial_row(CscMatrix target, CscMatrix matrix, int row) {
+        combine_partial_row(target, matrix, 1, row);
+    }
+
+    @Override
+    public void sub_partial_row(CscMatrix target, CscMatrix matrix, int row) {
+        combine_partial_row(target, matrix, -1, row);
+    }
+
+    /**
+     * target[row] = this[row] + beta * matrix[row], merged along the row views. The row is computed before
+     * it is written, so the target may be one of the operands. addInto and subInto merge whole columns instead.
+     */
+    private void combine_partial_row(CscMatrix target, CscMatrix matrix, double beta, int row) {
+        Rows ra = rows();
+        Rows rb = matrix.rows();
+        int i = ra.ptr[row], iEnd = ra.ptr[row + 1];
+        int j = rb.ptr[row], jEnd = rb.ptr[row + 1];
+        int[] cols = new int[iEnd - i + jEnd - j];
+        double[] sums = new double[cols.length];
+        int n = 0;
+        while (i < iEnd || j < jEnd) {
+            int ca = i < iEnd ? ra.col[i] : Integer.MAX_VALUE;
+            int cb = j < jEnd ? rb.col[j] : Integer.MAX_VALUE;
+            cols[n] = Math.min(ca, cb);
+            if (ca <= cb) sums[n] += val[ra.pos[i++]];
+            if (cb <= ca) sums[n] += beta * matrix.val[rb.pos[j++]];
+            n++;
+        }
+        for (int k = 0; k < n; k++) {
+            target.setValue(row, cols[k], sums[k]);
+        }
+    }
+
+    /**
+     * scales the values column by column instead of searching every row
+     */
+    @Override
+    public CscMatrix scaleInto(double scalar, CscMatrix target) {
+        if (this.getM() != target.getM() || this.getN() != target.getN()) throw new RuntimeException();
+        return scale(scalar, target, null);
+    }
+
+    @Override
+    public CscMatrix scaleInto(double scalar, CscMatrix target, Pool pool) {
+        return scale(scalar, target, pool);
+    }
+
+    @Override
+    public CscMatrix addInto(CscMatrix other, CscMatrix target) {
+        return combine(1, this, 1, other, target, null);
+    }
+
+    @Override
+    public CscMatrix addInto(CscMatrix other, CscMatrix target, Pool pool) {
+        return combine(1, this, 1, other, target, pool);
+    }
+
+    @Override
+    public CscMatrix subInto(CscMatrix other, CscMatrix target) {
+        return combine(1, this, -1, other, target, null);
+    }
+
+    @Override
+    public CscMatrix subInto(CscMatrix other, CscMatrix target, Pool pool) {
+        return combine(1, this, -1, other, target, pool);
+    }
+
+    private CscMatrix scale(double scalar, CscMatrix target, Pool pool) {
+        if (this.getM() != target.getM() || this.getN() != target.getN()) throw new RuntimeException();
+        int n = this.getN();
+        double[] source = val;
+        if (target != this) {
+            target.col_ptr = col_ptr.clone();
+            target.row_index = Arrays.copyOf(row_index, col_ptr[n]);
+            target.val = new double[col_ptr[n]];
+            target.rows = null;
+        }
+        double[] values = target.val;
+        int chunks = (n + SparseMatrix.MERGE_CHUNK - 1) / SparseMatrix.MERGE_CHUNK;
+        SparseMatrix.execute(pool, chunks, (chunk, core) -> {
+            int from = col_ptr[chunk * SparseMatrix.MERGE_CHUNK];
+            int to = col_ptr[Math.min(n, (chunk + 1) * SparseMatrix.MERGE_CHUNK)];
+            for (int k = from; k < to; k++) {
+                values[k] = source[k] * scalar;
+            }
+        });
+        return target;
+    }
+
+    /**
+     * alpha * a + beta * b into the target, which may be a or b. The length of every merged column is counted
+     * first, then every column is merged into its own range of the new arrays (see
+     * {@link SparseMatrix#linear_combinationInto(double, SparseMatrix, double, SparseMatrix, SparseMatrix)}).
+     */
+    private static CscMatrix combine(double alpha, CscMatrix a, double beta, CscMatrix b, CscMatrix target, Pool pool) {
+        if (a.getM() != b.getM() || a.getN() != b.getN()) throw new RuntimeException();
+        if (a.getM() != target.getM() || a.getN() != target.getN()) throw new RuntimeException();
+        int n = a.getN();
+        int chunks = (n + SparseMatrix.MERGE_CHUNK - 1) / SparseMatrix.MERGE_CHUNK;
+        int[] result_ptr = new int[n + 1];
+        SparseMatrix.execute(pool, chunks, (chunk, core) -> {
+            for (int j = chunk * SparseMatrix.MERGE_CHUNK; j < Math.min(n, (chunk + 1) * SparseMatrix.MERGE_CHUNK); j++) {
+                result_ptr[j + 1] = merge_column(alpha, a, beta, b, j, null, null, 0);
+            }
+        });
+        for (int j = 0; j < n; j++) {
+            result_ptr[j + 1] += result_ptr[j];
+        }
+        int[] result_index = new int[result_ptr[n]];
+        double[] result_val = new double[result_ptr[n]];
+        SparseMatrix.execute(pool, chunks, (chunk, core) -> {
+            for (int j = chunk * SparseMatrix.MERGE_CHUNK; j < Math.min(n, (chunk + 1) * SparseMatrix.MERGE_CHUNK); j++) {
+                merge_column(alpha, a, beta, b, j, result_index, result_val, result_ptr[j]);
+            }
+        });
+        target.col_ptr = result_ptr;
+        target.row_index = result_index;
+        target.val = result_val;
+        target.rows = null;
+        return target;
+    }
+
+    /**
+     * merges the column of a and b with two pointers. Only counts the entries if index is null.
+     * @return  the position after the last written entry
+     */
+    private static int merge_column(double alpha, CscMatrix a, double beta, CscMatrix b, int column,
+                                    int[] index, double[] values, int pos) {
+        int i = a.col_ptr[column], iEnd = a.col_ptr[column + 1];
+        int j = b.col_ptr[column], jEnd = b.col_ptr[column + 1];
+        while (i < iEnd || j < jEnd) {
+            int ra = i < iEnd ? a.row_index[i] : Integer.MAX_VALUE;
+            int rb = j < jEnd ? b.row_index[j] : Integer.MAX_VALUE;
+            if (index != null) {
+                if (ra < rb) {
+                    index[pos] = ra;
+                    values[pos] = alpha * a.val[i];
+                } else if (rb < ra) {
+                    index[pos] = rb;
+                    values[pos] = beta * b.val[j];
+                } else {
+                    index[pos] = ra;
+                    values[pos] = alpha * a.val[i] + beta * b.val[j];
+                }
+            }
+            if (ra <= rb) i++;
+            if (rb <= ra) j++;
+            pos++;
+        }
+        return pos;
+    }
+
+    /**
+     * the columns of A^T are the rows of A, so the csc arrays of the transpose are the csr arrays of this matrix
+     */
+    @Override
+    public CscMatrix transpose() {
+        CompressedArrays t = CompressedArrays.transpose(this.getN(), this.getM(), col_ptr, 0, row_index, val);
+        return new CscMatrix(this.getN(), this.getM(), t.ptr, t.index, t.val);
+    }
+
+    @Override
+    public CscMatrix self_transpose() {
+        CompressedArrays t = CompressedArrays.transpose(this.getN(), this.getM(), col_ptr, 0, row_index, val);
+        col_ptr = t.ptr;
+        row_index = t.index;
+        val = t.val;
+        rows = null;
+        int m = this.M;
+        this.M = this.N;
+        this.N = m;
+        return this;
+    }
+
+    @Override
+    public CscMatrix self_identity() {
+        for (int i = 0; i < Math.min(this.getM(), this.getN()); i++) {
+            setValue(i, i, 1);
+        }
+        return this;
+    }
+
+    @Override
+    public double norm_1() {
+        double[] sums = new double[this.getM()];
+        for (int k = 0; k < col_ptr[this.getN()]; k++) {
+            sums[row_index[k]] += Math.abs(val[k]);
+        }
+        double max = 0;
+        for (double sum : sums) {
+            if (sum > max) max = sum;
+        }
+        return max;
+    }
+
+    @Override
+    public double norm_infinity() {
+        double max = 0;
+        for (int j = 0; j < this.getN(); j++) {
+            double sum = 0;
+            for (int k = col_ptr[j]; k < col_ptr[j + 1]; k++) {
+                sum += Math.abs(val[k]);
+            }
+            if (sum > max) max = sum;
+        }
+        return max;
+    }
+
+    @Override
+    public boolean isSymmetric() {
+        if (this.getM() != this.getN()) return false;
+        for (int j = 0; j < this.getN(); j++) {
+            for (int k = col_ptr[j]; k < col_ptr[j + 1]; k++) {
+                if (getValue(j, row_index[k]) != val[k]) return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public double determinant() {
+        throw new NotSupportedOperation();
+    }
+
+    @Override
+    public void swapRow(int r1, int row2) {
+        throw new NotSupportedOperation();
+    }
+
+    @Override
+    public void swapColumn(int c1, int c2) {
+        throw new NotSupportedOperation();
+    }
+
+    @Override
+    public void scale_column(int column, double scalar) {
+        for (int k = col_ptr[column]; k < col_ptr[column + 1]; k++) {
+            val[k] *= scalar;
+        }
+    }
+
+    @Override
+    public void scale_row(int row, double scalar) {
+        scale_partial_row(this, scalar, row);
+    }
+
+    /**
+     * overwrites an existing entry or inserts a new one. Zeros are not inserted.
+     */
+    @Override
+    public void setValue(int m, int n, double value) {
+        int k = find(m, n);
+        if (k >= 0) {
+            val[k] = value;
+            return;
+        }
+        if (value == 0) return;
+        k = -k - 1;
+        int nnz = col_ptr[this.getN()];
+        if (nnz == val.length) {
+            int capacity = Math.max(16, nnz + (nnz >> 1));
+            val = Arrays.copyOf(val, capacity);
+            row_index = Arrays.copyOf(row_index, capacity);
+        }
+        System.arraycopy(val, k, val, k + 1, nnz - k);
+        System.arraycopy(row_index, k, row_index, k + 1, nnz - k);
+        val[k] = value;
+        row_index[k] = m;
+        for (int j = n + 1; j <= this.getN(); j++) {
+            col_ptr[j]++;
+        }
+        rows = null;
+    }
+
+    @Override
+    public double getValue(int m, int n) {
+        int k = find(m, n);
+        return k >= 0 ? val[k] : 0;
+    }
+
+    @Override
+    public boolean hasValue(double v) {
+        for (int k = 0; k < col_ptr[this.getN()]; k++) {
+            if (val[k] == v) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void replaceValue(double v, double r) {
+        for (int k = 0; k < col_ptr[this.getN()]; k++) {
+            if (val[k] == v) val[k] = r;
+        }
+    }
+
+    @Override
+    public CscMatrix newInstance() {
+        return new CscMatrix(this.getM(), this.getN());
+    }
+
+    @Override
+    public CscMatrix copy() {
+        int nnz = col_ptr[this.getN()];
+        return new CscMatrix(this.getM(), this.getN(), col_ptr.clone(), Arrays.copyOf(row_index, nnz), Arrays.copyOf(val, nnz));
+    }
+
+    @Override
+    public DenseMatrix copyToDense() {
+        DenseMatrix matrix = new DenseMatrix(this.getM(), this.getN());
+        for (int j = 0; j < this.getN(); j++) {
+            for (int k = col_ptr[j]; k < col_ptr[j + 1]; k++) {
+                matrix.setValue(row_index[k], j, val[k]);
+            }
+        }
+        return matrix;
+    }
+
+    @Override
+    public int storageSize() {
+        return col_ptr[this.getN()];
+    }
+
+    @Override
+    public String toString() {
+        return toCsr().copyToDense().toString();
+    }
+}
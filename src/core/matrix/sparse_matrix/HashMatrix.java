@@ -3,29 +3,33 @@ package core.matrix.sparse_matrix;
 import core.exceptions.NotSupportedOperation;
 import core.matrix.Matrix;
 import core.matrix.dense.DenseMatrix;
+import core.simd.Kernels;
+import core.threads.Pool;
+import core.threads.PoolFunction;
 import core.vector.DenseVector;
 import core.vector.Vector;
 
-import java.util.HashMap;
-import java.util.Objects;
-
+/**
+ * stores every row in an open addressing map from the column to the value (see {@link IntDoubleMap}),
+ * so entries can be set in any order in O(1). Setting an entry to zero removes it.
+ */
 public class HashMatrix extends Matrix<HashMatrix> {
 
-    private HashMap<Integer, Double>[] rows;
+    private IntDoubleMap[] rows;
 
     public HashMatrix(int m, int n) {
         super(m, n);
-        rows = new HashMap[m];
+        rows = new IntDoubleMap[m];
         for(int i = 0; i < m; i++){
-            rows[i] = new HashMap<>();
+            rows[i] = new IntDoubleMap();
         }
     }
 
     public HashMatrix(double[][] ar) {
         super(ar);
-        rows = new HashMap[this.getM()];
+        rows = new IntDoubleMap[this.getM()];
         for(int i = 0; i < this.getM(); i++){
-            rows[i] = new HashMap<>();
+            rows[i] = new IntDoubleMap();
         }
         for(int i = 0; i < this.getM(); i++){
             for(int n = 0; n < this.getN(); n++){
@@ -34,48 +38,155 @@ public class HashMatrix extends Matrix<HashMatrix> {
         }
     }
 
-    HashMap<Integer, Double>[] getRows(){
+    IntDoubleMap[] getRows(){
         return rows;
     }
 
+    /**
+     * row . x with x given as an array
+     */
+    private double dot_partial_row(double[] x, int row) {
+        IntDoubleMap map = rows[row];
+        double sum = 0;
+        for (int i = 0; i < map.capacity(); i++) {
+            int k = map.keyAt(i);
+            if (k != IntDoubleMap.EMPTY) sum += map.valueAt(i) * x[k];
+        }
+        return sum;
+    }
+
+    private double dot_partial_row(Vector<?> x, int row) {
+        if (x instanceof DenseVector) return dot_partial_row(((DenseVector) x).getValues(), row);
+        IntDoubleMap map = rows[row];
+        double sum = 0;
+        for (int i = 0; i < map.capacity(); i++) {
+            int k = map.keyAt(i);
+            if (k != IntDoubleMap.EMPTY) sum += map.valueAt(i) * x.getValue(k);
+        }
+        return sum;
+    }
+
     @Override
     public void mul_partial_row(DenseVector target, Vector<?> vec, int row) {
-        double v = 0;
-        for (int i = 0; i < this.getN(); i++) {
-            v += getValue(row, i) * vec.getValue(i);
-        }
-        vec.setValue(row, v);
+        target.setValue(row, dot_partial_row(vec, row));
     }
 
     @Override
     public void mul_partial_row(DenseMatrix target, Matrix<?> matrix, int row) {
-        for (int j = 0; j < matrix.getN(); j++) {
-            double sum = 0;
-            for (int k = 0; k < this.getN(); k++) {
-                sum += getValue(row, k) * matrix.getValue(k, j);
+        gemm_partial_row(1, matrix, false, 0, target, row);
+    }
+
+    @Override
+    public void gemv_partial_row(double alpha, Vector<?> x, double beta, DenseVector y, int row) {
+        double sum = dot_partial_row(x, row);
+        y.setValue(row, beta == 0 ? alpha * sum : alpha * sum + beta * y.getValue(row));
+    }
+
+    @Override
+    public void gemv_transposed_partial(double alpha, Vector<?> x, double[] y, int rowStart, int rowEnd) {
+        for (int r = rowStart; r < rowEnd; r++) {
+            double v = alpha * x.getValue(r);
+            if (v == 0) continue;
+            IntDoubleMap map = rows[r];
+            for (int i = 0; i < map.capacity(); i++) {
+                int k = map.keyAt(i);
+                if (k != IntDoubleMap.EMPTY) y[k] += v * map.valueAt(i);
             }
-            target.setValue(row, j, sum);
         }
     }
 
     @Override
-    public void add_partial_row(HashMatrix target, HashMatrix matrix, int row) {
-        for (int i = 0; i < this.getN(); i++) {
-            target.setValue(row, i, target.getValue(row, i) + matrix.getValue(row, i));
+    public void gemm_partial_row(double alpha, Matrix<?> b, boolean transB, double beta, DenseMatrix c, int row) {
+        double[] cd = c.getData();
+        int cr = c.index(row, 0);
+        for (int j = 0; j < c.getN(); j++) {
+            cd[cr + j] = beta == 0 ? 0 : beta * cd[cr + j];
+        }
+        IntDoubleMap map = rows[row];
+        for (int i = 0; i < map.capacity(); i++) {
+            int k = map.keyAt(i);
+            if (k == IntDoubleMap.EMPTY) continue;
+            double v = alpha * map.valueAt(i);
+            if (b instanceof DenseMatrix && !transB) {
+                DenseMatrix dense = (DenseMatrix) b;
+                Kernels.axpy(v, dense.getData(), dense.index(k, 0), cd, cr, c.getN());
+            } else {
+                for (int j = 0; j < c.getN(); j++) {
+                    cd[cr + j] += v * (transB ? b.getValue(j, k) : b.getValue(k, j));
+                }
+            }
         }
     }
 
+    /**
+     * parallel SpMV. Every thread gets a block of consecutive rows with about the same number of entries.
+     */
     @Override
-    public void sub_partial_row(HashMatrix target, HashMatrix matrix, int row) {
-        for (int i = 0; i < this.getN(); i++) {
-            target.setValue(row, i, target.getValue(row, i) - matrix.getValue(row, i));
+    public DenseVector mulInto(Vector<?> vec, DenseVector target, Pool pool) {
+        if (vec.getSize() != this.getN() || target.getSize() != this.getM()) throw new RuntimeException();
+        int threads = pool.getActiveThreads();
+        int[] blocks = new int[threads + 1];
+        long total = (long) this.getM() + storageSize();
+        long work = 0;
+        int block = 1;
+        for (int i = 0; i < this.getM() && block < threads; i++) {
+            work += rows[i].size() + 1;
+            while (block < threads && work * threads >= total * block) {
+                blocks[block++] = i + 1;
+            }
+        }
+        while (block <= threads) {
+            blocks[block++] = this.getM();
+        }
+        PoolFunction function = (index, core) -> {
+            for (int i = blocks[index]; i < blocks[index + 1]; i++) {
+                mul_partial_row(target, vec, i);
+            }
+        };
+        pool.executeTotal(function, threads, false);
+        return target;
+    }
+
+    /**
+     * target[row] = this[row] + beta * matrix[row]. The row of the target is replaced, so the target may be
+     * one of the operands.
+     */
+    private void combine_partial_row(HashMatrix target, HashMatrix matrix, double beta, int row) {
+        IntDoubleMap result = target == this ? rows[row] : rows[row].copy();
+        IntDoubleMap other = matrix.rows[row];
+        if (other == result) other = other.copy();
+        for (int i = 0; i < other.capacity(); i++) {
+            int k = other.keyAt(i);
+            if (k == IntDoubleMap.EMPTY) continue;
+            double v = result.get(k) + beta * other.valueAt(i);
+            if (v == 0) result.remove(k);
+            else result.put(k, v);
         }
+        target.rows[row] = result;
+    }
+
+    @Override
+    public void add_partial_row(HashMatrix target, HashMatrix matrix, int row) {
+        combine_partial_row(target, matrix, 1, row);
+    }
+
+    @Override
+    public void sub_partial_row(HashMatrix target, HashMatrix matrix, int row) {
+        combine_partial_row(target, matrix, -1, row);
     }
 
     @Override
     public void scale_partial_row(HashMatrix target, double scalar, int row) {
-        for(Integer i:rows[row].keySet()){
-            this.rows[row].put(i, this.rows[row].get(i) * scalar);
+        if (scalar == 0) {
+            target.rows[row] = new IntDoubleMap();
+            return;
+        }
+        IntDoubleMap map = rows[row];
+        if (target != this) target.rows[row] = new IntDoubleMap();
+        for (int i = 0; i < map.capacity(); i++) {
+            if (map.keyAt(i) == IntDoubleMap.EMPTY) continue;
+            if (target == this) map.setValueAt(i, map.valueAt(i) * scalar);
+            else target.setValue(row, map.keyAt(i), map.valueAt(i) * scalar);
         }
     }
 
@@ -87,9 +198,11 @@ public class HashMatrix extends Matrix<HashMatrix> {
     @Override
     public HashMatrix transpose() {
         HashMatrix mat = new HashMatrix(this.getN(), this.getM());
-        for (int i = 0; i < this.getM(); i++) {
-            for (int j = 0; j < this.getN(); j++) {
-                mat.setValue(j, i, this.getValue(i, j));
+        for (int r = 0; r < this.getM(); r++) {
+            IntDoubleMap map = rows[r];
+            for (int i = 0; i < map.capacity(); i++) {
+                int k = map.keyAt(i);
+                if (k != IntDoubleMap.EMPTY) mat.rows[k].put(r, map.valueAt(i));
             }
         }
         return mat;
@@ -105,40 +218,43 @@ public class HashMatrix extends Matrix<HashMatrix> {
 
     @Override
     public HashMatrix self_transpose() {
-        if (this.getM() != this.getN()) throw new RuntimeException();
-        for (int i = 0; i < this.getM(); i++) {
-            for (int j = 0; j < i; j++) {
-                double v = this.getValue(i, j);
-                this.setValue(i, j, this.getValue(j, i));
-                this.setValue(j, i, v);
-            }
-        }
+        HashMatrix mat = transpose();
+        this.rows = mat.rows;
+        this.M = mat.getM();
+        this.N = mat.getN();
         return this;
     }
 
+    /**
+     * maximum sum of the absolute values of a row
+     */
     @Override
     public double norm_1() {
         double max = 0;
-        double sum;
-        for (int i = 0; i < this.getM(); i++) {
-            sum = 0;
-            for (int n = 0; n < this.getN(); n++) {
-                sum += Math.abs(getValue(i, n));
+        for (IntDoubleMap map : rows) {
+            double sum = 0;
+            for (int i = 0; i < map.capacity(); i++) {
+                if (map.keyAt(i) != IntDoubleMap.EMPTY) sum += Math.abs(map.valueAt(i));
             }
             if (sum > max) max = sum;
         }
         return max;
     }
 
+    /**
+     * maximum sum of the absolute values of a column
+     */
     @Override
     public double norm_infinity() {
-        double max = 0;
-        double sum;
-        for (int i = 0; i < this.getN(); i++) {
-            sum = 0;
-            for (int n = 0; n < this.getM(); n++) {
-                sum += Math.abs(getValue(n, i));
+        double[] sums = new double[this.getN()];
+        for (IntDoubleMap map : rows) {
+            for (int i = 0; i < map.capacity(); i++) {
+                int k = map.keyAt(i);
+                if (k != IntDoubleMap.EMPTY) sums[k] += Math.abs(map.valueAt(i));
             }
+        }
+        double max = 0;
+        for (double sum : sums) {
             if (sum > max) max = sum;
         }
         return max;
@@ -146,11 +262,12 @@ public class HashMatrix extends Matrix<HashMatrix> {
 
     @Override
     public boolean isSymmetric() {
-        for (int i = 0; i < this.getN(); i++) {
-            for (int n = 0; n < i; n++) {
-                if (getValue(i,n) != getValue(n,i)) {
-                    return false;
-                }
+        if (this.getM() != this.getN()) return false;
+        for (int r = 0; r < this.getM(); r++) {
+            IntDoubleMap map = rows[r];
+            for (int i = 0; i < map.capacity(); i++) {
+                int k = map.keyAt(i);
+                if (k != IntDoubleMap.EMPTY && rows[k].get(r) != map.valueAt(i)) return false;
             }
         }
         return true;
@@ -159,25 +276,27 @@ public class HashMatrix extends Matrix<HashMatrix> {
 
     @Override
     public void swapRow(int r1, int row2) {
-        for(int i = 0; i < this.getM(); i++){
-            double a = getValue(r1,i);
-            setValue(r1,i,getValue(row2,i));
-            setValue(row2,i,a);
-        }
+        IntDoubleMap map = rows[r1];
+        rows[r1] = rows[row2];
+        rows[row2] = map;
     }
 
     @Override
     public void swapColumn(int c1, int c2) {
-        for(int i = 0; i < this.getN(); i++){
+        for(int i = 0; i < this.getM(); i++){
             double a = getValue(i,c1);
-            setValue(i,c1,getValue(i,c2));
+            double b = getValue(i,c2);
+            if (a == 0 && b == 0) continue;
+            setValue(i,c1,b);
             setValue(i,c2,a);
-        }    }
+        }
+    }
 
     @Override
     public void scale_column(int column, double scalar) {
-        for (int i = 0; i < this.getN(); i++) {
-            this.setValue(i, column, this.getValue(i, column) * scalar);
+        for (int i = 0; i < this.getM(); i++) {
+            double v = this.getValue(i, column);
+            if (v != 0) this.setValue(i, column, v * scalar);
         }
     }
 
@@ -188,41 +307,79 @@ public class HashMatrix extends Matrix<HashMatrix> {
 
     @Override
     public void setValue(int m, int n, double value) {
-        this.rows[m].put(n, value);
+        if (value == 0) this.rows[m].remove(n);
+        else this.rows[m].put(n, value);
+    }
+
+    /**
+     * adds the value to the entry, which is useful for assembling matrices out of overlapping contributions
+     */
+    public void addValue(int m, int n, double value) {
+        this.rows[m].add(n, value);
     }
 
     @Override
     public double getValue(int m, int n) {
-        Double v = this.rows[m].get(n);
-        return v == null ? 0: (double)v;
+        return this.rows[m].get(n);
     }
 
+    /**
+     * only stored entries are compared
+     */
     @Override
     public boolean hasValue(double v) {
-        throw new NotSupportedOperation();
+        for (IntDoubleMap map : rows) {
+            for (int i = 0; i < map.capacity(); i++) {
+                if (map.keyAt(i) != IntDoubleMap.EMPTY && map.valueAt(i) == v) return true;
+            }
+        }
+        return false;
     }
 
+    /**
+     * only stored entries are replaced
+     */
     @Override
     public void replaceValue(double v, double r) {
-        throw new NotSupportedOperation();
+        for (int row = 0; row < this.getM(); row++) {
+            IntDoubleMap map = rows[row];
+            int[] keys = new int[map.size()];
+            double[] values = new double[map.size()];
+            map.sorted(keys, values, 0);
+            for (int i = 0; i < keys.length; i++) {
+                if (values[i] == v) setValue(row, keys[i], r);
+            }
+        }
     }
 
     @Override
     public HashMatrix copy() {
-        throw new NotSupportedOperation();
+        HashMatrix mat = new HashMatrix(this.getM(), this.getN());
+        for (int i = 0; i < this.getM(); i++) {
+            mat.rows[i] = rows[i].copy();
+        }
+        return mat;
     }
 
     @Override
     public DenseMatrix copyToDense() {
-        throw new NotSupportedOperation();
+        DenseMatrix mat = new DenseMatrix(this.getM(), this.getN());
+        for (int r = 0; r < this.getM(); r++) {
+            IntDoubleMap map = rows[r];
+            for (int i = 0; i < map.capacity(); i++) {
+                int k = map.keyAt(i);
+                if (k != IntDoubleMap.EMPTY) mat.setValue(r, k, map.valueAt(i));
+            }
+        }
+        return mat;
     }
 
     @Override
     public String toString() {
         StringBuilder builder = new StringBuilder();
-        for(HashMap<Integer, Double> map:this.rows){
+        for(IntDoubleMap map:this.rows){
             for(int i = 0; i < this.getN(); i++){
-                if(map.containsKey(i)){
+                if(map.contains(i)){
                     builder.append(String.format("%.3E",map.get(i))+"  ");
                 }else{
                     builder.append(String.format("%.3E",0.0)+"  ");
@@ -236,7 +393,7 @@ public class HashMatrix extends Matrix<HashMatrix> {
     @Override
     public int storageSize(){
         int s = 0;
-        for(HashMap<Integer, Double> m:rows){
+        for(IntDoubleMap m:rows){
             s += m.size();
         }
         return s;
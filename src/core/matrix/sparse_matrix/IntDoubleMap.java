@@ -0,0 +1,192 @@
+package core.matrix.sparse_matrix;
+
+import java.util.Arrays;
+
+/**
+ * open addressing map from non-negative int keys to doubles, used for the rows of a {@link HashMatrix}.
+ *
+ * Keys and values are stored in two primitive arrays whose length is a power of two. Collisions are resolved by
+ * linear probing. Removing an entry shifts the following entries of its probe sequence back instead of leaving
+ * a tombstone, so lookups never have to skip deleted slots. The arrays are only allocated on the first insertion.
+ */
+final class IntDoubleMap {
+
+    static final int EMPTY = -1;
+
+    /**
+     * the arrays are doubled once more than this fraction of the slots is used
+     */
+    static final double MAX_LOAD = 0.75;
+
+    private static final int MIN_CAPACITY = 4;
+
+    private int[] keys;
+    private double[] values;
+    private int size;
+    private int mask;
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * number of slots. Slot i holds an entry if keyAt(i) != EMPTY.
+     */
+    int capacity() {
+        return keys == null ? 0 : keys.length;
+    }
+
+    int keyAt(int slot) {
+        return keys[slot];
+    }
+
+    double valueAt(int slot) {
+        return values[slot];
+    }
+
+    void setValueAt(int slot, double value) {
+        values[slot] = value;
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * slot of the key or -1 if the key is not contained
+     */
+    private int find(int key) {
+        if (keys == null) return -1;
+        int slot = hash(key) & mask;
+        while (true) {
+            int k = keys[slot];
+            if (k == key) return slot;
+            if (k == EMPTY) return -1;
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    boolean contains(int key) {
+        return find(key) >= 0;
+    }
+
+    double get(int key) {
+        int slot = find(key);
+        return slot < 0 ? 0 : values[slot];
+    }
+
+    /**
+     * slot of the key. The key is inserted with the value 0 if it is not contained.
+     */
+    private int slot(int key) {
+        if (keys == null) allocate(MIN_CAPACITY);
+        int slot = hash(key) & mask;
+        while (true) {
+            int k = keys[slot];
+            if (k == key) return slot;
+            if (k == EMPTY) break;
+            slot = (slot + 1) & mask;
+        }
+        if (size + 1 > MAX_LOAD * keys.length) {
+            grow();
+            return slot(key);
+        }
+        keys[slot] = key;
+        values[slot] = 0;
+        size++;
+        return slot;
+    }
+
+    void put(int key, double value) {
+        //slot may replace the arrays, so it must be called before values is read
+        int slot = slot(key);
+        values[slot] = value;
+    }
+
+    void add(int key, double value) {
+        int slot = slot(key);
+        values[slot] += value;
+    }
+
+    /**
+     * removes the key and moves the following entries of the cluster into the gap if their probe sequence
+     * passes the gap
+     */
+    void remove(int key) {
+        int gap = find(key);
+        if (gap < 0) return;
+        int slot = gap;
+        while (true) {
+            slot = (slot + 1) & mask;
+            int k = keys[slot];
+            if (k == EMPTY) break;
+            int home = hash(k) & mask;
+            //the entry may move to the gap if its home slot does not lie in (gap, slot]
+            if (((slot - home) & mask) >= ((slot - gap) & mask)) {
+                keys[gap] = k;
+                values[gap] = values[slot];
+                gap = slot;
+            }
+        }
+        keys[gap] = EMPTY;
+        size--;
+    }
+
+    void clear() {
+        keys = null;
+        values = null;
+        size = 0;
+        mask = 0;
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        values = new double[capacity];
+        mask = capacity - 1;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        double[] oldValues = values;
+        allocate(oldKeys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            int k = oldKeys[i];
+            if (k == EMPTY) continue;
+            int slot = hash(k) & mask;
+            while (keys[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = k;
+            values[slot] = oldValues[i];
+        }
+    }
+
+    /**
+     * writes the entries sorted by key to index[offset ...] and val[offset ...]
+     * @return  the number of written entries
+     */
+    int sorted(int[] index, double[] val, int offset) {
+        int n = 0;
+        for (int i = 0; i < capacity(); i++) {
+            if (keys[i] != EMPTY) index[offset + n++] = keys[i];
+        }
+        Arrays.sort(index, offset, offset + n);
+        for (int i = offset; i < offset + n; i++) {
+            val[i] = get(index[i]);
+        }
+        return n;
+    }
+
+    IntDoubleMap copy() {
+        IntDoubleMap map = new IntDoubleMap();
+        if (keys != null) {
+            map.keys = keys.clone();
+            map.values = values.clone();
+            map.size = size;
+            map.mask = mask;
+        }
+        return map;
+    }
+}
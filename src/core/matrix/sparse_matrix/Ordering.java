@@ -0,0 +1,548 @@
+package core.matrix.sparse_matrix;
+
+import java.util.Arrays;
+
+/**
+ * fill and bandwidth reducing orderings of square sparse matrices.
+ *
+ * A permutation p maps the new index to the old one: row i of the reordered matrix is row p[i] of the original
+ * matrix (see {@link SparseMatrix#permute(int[], int[])}). The orderings only look at the sparsity pattern
+ * of A + A^T, so unsymmetric patterns are symmetrized first.
+ *
+ * {@link #amd(SparseMatrix)}, flip, clear and postorder are ported from cs_amd, cs_wclear and cs_tdfs of
+ * CSparse, Copyright (c) 2006-2022 Timothy A. Davis, see T. A. Davis, Direct Methods for Sparse Linear Systems,
+ * SIAM 2006. CSparse is licensed under the GNU Lesser General Public License, version 2.1 or later, and these
+ * methods are distributed under the same license.
+ */
+public class Ordering {
+
+    /**
+     * the graph of A + A^T without the diagonal: the neighbours of node i are index[ptr[i] ... ptr[i+1])
+     */
+    static CompressedArrays adjacency(SparseMatrix a) {
+        if (a.getM() != a.getN()) throw new RuntimeException("matrix must be square");
+        int n = a.getM();
+        SparseMatrix t = a.transpose();
+        int[] ptr = new int[n + 1];
+        for (int pass = 0; pass < 2; pass++) {
+            int[] index = pass == 0 ? null : new int[ptr[n]];
+            for (int i = 0; i < n; i++) {
+                int pos = ptr[i];
+                int count = 0;
+                int k = a.start(i), kEnd = a.end(i);
+                int l = t.start(i), lEnd = t.end(i);
+                while (k < kEnd || l < lEnd) {
+                    int ca = k < kEnd ? a.getCol_index()[k] : Integer.MAX_VALUE;
+                    int cb = l < lEnd ? t.getCol_index()[l] : Integer.MAX_VALUE;
+                    int c = Math.min(ca, cb);
+                    if (ca <= cb) k++;
+                    if (cb <= ca) l++;
+                    if (c == i) continue;
+                    if (index != null) index[pos + count] = c;
+                    count++;
+                }
+                if (index == null) ptr[i + 1] = ptr[i] + count;
+            }
+            if (index != null) return new CompressedArrays(ptr, index, null);
+        }
+        throw new IllegalStateException();
+    }
+
+    /**
+     * reverse cuthill-mckee ordering. Every connected component is traversed breadth first from a
+     * pseudo-peripheral node, visiting the neighbours of a node by increasing degree. The reversed order
+     * has the same bandwidth as the cuthill-mckee order but a smaller profile.
+     * @return  the permutation, new index -> old index
+     */
+    public static int[] rcm(SparseMatrix a) {
+        CompressedArrays g = adjacency(a);
+        int n = a.getM();
+        int[] ptr = g.ptr;
+        int[] adj = g.index;
+        int[] order = new int[n];
+        boolean[] visited = new boolean[n];
+        int[] level = new int[n];
+        int[] queue = new int[n];
+        long[] keys = new long[n];
+        int count = 0;
+
+        //components are started in the order of their minimum degree node
+        int[] byDegree = sortByDegree(ptr, n);
+        for (int s : byDegree) {
+            if (visited[s]) continue;
+            int root = pseudoPeripheralNode(ptr, adj, s, level, queue);
+            int head = count;
+            order[count++] = root;
+            visited[root] = true;
+            while (head < count) {
+                int v = order[head++];
+                int k = 0;
+                for (int e = ptr[v]; e < ptr[v + 1]; e++) {
+                    int w = adj[e];
+                    if (visited[w]) continue;
+                    visited[w] = true;
+                    keys[k++] = ((long) (ptr[w + 1] - ptr[w]) << 32) | w;
+                }
+                Arrays.sort(keys, 0, k);
+                for (int j = 0; j < k; j++) {
+                    order[count++] = (int) keys[j];
+                }
+            }
+        }
+        for (int i = 0; i < n / 2; i++) {
+            int t = order[i];
+            order[i] = order[n - 1 - i];
+            order[n - 1 - i] = t;
+        }
+        return order;
+    }
+
+    private static int[] sortByDegree(int[] ptr, int n) {
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = ((long) (ptr[i + 1] - ptr[i]) << 32) | i;
+        }
+        Arrays.sort(keys);
+        int[] nodes = new int[n];
+        for (int i = 0; i < n; i++) {
+            nodes[i] = (int) keys[i];
+        }
+        return nodes;
+    }
+
+    /**
+     * George and Liu: starting at the given node, repeatedly moves to a node of minimum degree in the last level
+     * of the breadth first level structure as long as the number of levels grows.
+     * @param level     work array of length n which must be zero, it is zero again afterwards
+     * @param queue     work array of length n
+     */
+    static int pseudoPeripheralNode(int[] ptr, int[] adj, int start, int[] level, int[] queue) {
+        int node = start;
+        int eccentricity = -1;
+        while (true) {
+            //breadth first search, level[v] = distance + 1 for the visited nodes
+            int size = 0;
+            queue[size++] = node;
+            level[node] = 1;
+            int head = 0;
+            while (head < size) {
+                int v = queue[head++];
+                for (int e = ptr[v]; e < ptr[v + 1]; e++) {
+                    int w = adj[e];
+                    if (level[w] == 0) {
+                        level[w] = level[v] + 1;
+                        queue[size++] = w;
+                    }
+                }
+            }
+            int depth = level[queue[size - 1]];
+            int candidate = queue[size - 1];
+            for (int i = size - 1; i >= 0 && level[queue[i]] == depth; i--) {
+                int v = queue[i];
+                if (ptr[v + 1] - ptr[v] < ptr[candidate + 1] - ptr[candidate]) candidate = v;
+            }
+            for (int i = 0; i < size; i++) {
+                level[queue[i]] = 0;
+            }
+            if (depth <= eccentricity) return node;
+            eccentricity = depth;
+            node = candidate;
+        }
+    }
+
+    /**
+     * nodes with more neighbours than max(DENSE_MIN, DENSE_FACTOR * sqrt(n)) are removed before the minimum degree
+     * ordering and placed at the end
+     */
+    public static double DENSE_FACTOR = 10;
+    public static int DENSE_MIN = 16;
+
+    /**
+     * approximate minimum degree ordering (Amestoy, Davis and Duff) on the quotient graph of A + A^T.
+     *
+     * The eliminated nodes become elements, so the graph never grows beyond its initial size: the adjacency list
+     * of a node holds the elements it belongs to first and then its remaining neighbours. Elements are absorbed
+     * into the new pivot element when they are adjacent to it (element absorption) or when all their nodes are
+     * covered by it (aggressive absorption). Indistinguishable nodes are merged into supervariables and nodes
+     * without any outside neighbour are eliminated together with the pivot (mass elimination). The degree of a
+     * node is bounded from above by the sizes of the set differences |Le \ Lk| of its elements.
+     * The resulting assembly tree is postordered.
+     * @return  the permutation, new index -> old index
+     */
+    public static int[] amd(SparseMatrix a) {
+        CompressedArrays g = adjacency(a);
+        int n = a.getM();
+        if (n == 0) return new int[0];
+        int cnz = g.ptr[n];
+        //elbow room for the new elements which are appended at the end, garbage collection frees absorbed lists
+        int[] ci = Arrays.copyOf(g.index, cnz + cnz / 5 + 2 * n);
+        int nzmax = ci.length;
+        //cp[i] is the start of the list of node/element i or flip(parent) once it has been absorbed
+        int[] cp = Arrays.copyOf(g.ptr, n + 1);
+        int[] len = new int[n + 1];
+        int[] nv = new int[n + 1];
+        int[] next = new int[n + 1];
+        int[] head = new int[n + 1];
+        int[] last = new int[n + 1];
+        int[] elen = new int[n + 1];
+        int[] degree = new int[n + 1];
+        int[] w = new int[n + 1];
+        int[] hhead = new int[n + 1];
+
+        int dense = (int) Math.max(DENSE_MIN, DENSE_FACTOR * Math.sqrt(n));
+        dense = Math.min(n - 2, dense);
+        for (int k = 0; k < n; k++) {
+            len[k] = cp[k + 1] - cp[k];
+        }
+        for (int i = 0; i <= n; i++) {
+            head[i] = -1;
+            last[i] = -1;
+            next[i] = -1;
+            hhead[i] = -1;
+            nv[i] = 1;
+            w[i] = 1;
+            degree[i] = len[i];
+        }
+        int mark = clear(0, 0, w, n);
+        int nel = 0;
+        int mindeg = 0;
+        int lemax = 0;
+        //n is the root element for the dense nodes
+        elen[n] = -2;
+        cp[n] = -1;
+        w[n] = 0;
+        for (int i = 0; i < n; i++) {
+            int d = degree[i];
+            if (d == 0) {
+                elen[i] = -2;
+                nel++;
+                cp[i] = -1;
+                w[i] = 0;
+            } else if (d > dense) {
+                nv[i] = 0;
+                elen[i] = -1;
+                nel++;
+                cp[i] = flip(n);
+                nv[n]++;
+            } else {
+                if (head[d] != -1) last[head[d]] = i;
+                next[i] = head[d];
+                head[d] = i;
+            }
+        }
+
+        while (nel < n) {
+            //select a node of minimum approximate degree
+            int k = -1;
+            while (mindeg < n && (k = head[mindeg]) == -1) mindeg++;
+            if (next[k] != -1) last[next[k]] = -1;
+            head[mindeg] = next[k];
+            int elenk = elen[k];
+            int nvk = nv[k];
+            nel += nvk;
+
+            //garbage collection, compacts the live lists to the front of ci
+            if (elenk > 0 && cnz + mindeg >= nzmax) {
+                for (int j = 0; j < n; j++) {
+                    int p = cp[j];
+                    if (p >= 0) {
+                        cp[j] = ci[p];
+                        ci[p] = flip(j);
+                    }
+                }
+                int q = 0;
+                for (int p = 0; p < cnz; ) {
+                    int j = flip(ci[p++]);
+                    if (j >= 0) {
+                        ci[q] = cp[j];
+                        cp[j] = q++;
+                        for (int l = 0; l < len[j] - 1; l++) {
+                            ci[q++] = ci[p++];
+                        }
+                    }
+                }
+                cnz = q;
+            }
+
+            //construct the new element Lk from the nodes of k and of its elements, which are absorbed
+            int dk = 0;
+            nv[k] = -nvk;
+            int p = cp[k];
+            int pk1 = elenk == 0 ? p : cnz;
+            int pk2 = pk1;
+            for (int k1 = 1; k1 <= elenk + 1; k1++) {
+                int e, pj, ln;
+                if (k1 > elenk) {
+                    e = k;
+                    pj = p;
+                    ln = len[k] - elenk;
+                } else {
+                    e = ci[p++];
+                    pj = cp[e];
+                    ln = len[e];
+                }
+                for (int k2 = 1; k2 <= ln; k2++) {
+                    int i = ci[pj++];
+                    int nvi = nv[i];
+                    if (nvi <= 0) continue;
+                    dk += nvi;
+                    nv[i] = -nvi;
+                    ci[pk2++] = i;
+                    if (next[i] != -1) last[next[i]] = last[i];
+                    if (last[i] != -1) {
+                        next[last[i]] = next[i];
+                    } else {
+                        head[degree[i]] = next[i];
+                    }
+                }
+                if (e != k) {
+                    cp[e] = flip(k);
+                    w[e] = 0;
+                }
+            }
+            if (elenk != 0) cnz = pk2;
+            degree[k] = dk;
+            cp[k] = pk1;
+            len[k] = pk2 - pk1;
+            elen[k] = -2;
+
+            //w[e] - mark = |Le \ Lk| for every element e adjacent to a node of Lk
+            mark = clear(mark, lemax, w, n);
+            for (int pk = pk1; pk < pk2; pk++) {
+                int i = ci[pk];
+                int eln = elen[i];
+                if (eln <= 0) continue;
+                int nvi = -nv[i];
+                int wnvi = mark - nvi;
+                for (p = cp[i]; p <= cp[i] + eln - 1; p++) {
+                    int e = ci[p];
+                    if (w[e] >= mark) {
+                        w[e] -= nvi;
+                    } else if (w[e] != 0) {
+                        w[e] = degree[e] + wnvi;
+                    }
+                }
+            }
+
+            //approximate degrees, pruning of the lists and hashing of the nodes of Lk
+            for (int pk = pk1; pk < pk2; pk++) {
+                int i = ci[pk];
+                int p1 = cp[i];
+                int p2 = p1 + elen[i] - 1;
+                int pn = p1;
+                long h = 0;
+                int d = 0;
+                for (p = p1; p <= p2; p++) {
+                    int e = ci[p];
+                    if (w[e] != 0) {
+                        int dext = w[e] - mark;
+                        if (dext > 0) {
+                            d += dext;
+                            ci[pn++] = e;
+                            h += e;
+                        } else {
+                            //aggressive absorption, Le is a subset of Lk
+                            cp[e] = flip(k);
+                            w[e] = 0;
+                        }
+                    }
+                }
+                elen[i] = pn - p1 + 1;
+                int p3 = pn;
+                int p4 = p1 + len[i];
+                for (p = p2 + 1; p < p4; p++) {
+                    int j = ci[p];
+                    int nvj = nv[j];
+                    if (nvj <= 0) continue;
+                    d += nvj;
+                    ci[pn++] = j;
+                    h += j;
+                }
+                if (d == 0) {
+                    //mass elimination, i is only adjacent to k
+                    cp[i] = flip(k);
+                    int nvi = -nv[i];
+                    dk -= nvi;
+                    nvk += nvi;
+                    nel += nvi;
+                    nv[i] = 0;
+                    elen[i] = -1;
+                } else {
+                    degree[i] = Math.min(degree[i], d);
+                    //k becomes the first element of i
+                    ci[pn] = ci[p3];
+                    ci[p3] = ci[p1];
+                    ci[p1] = k;
+                    len[i] = pn - p1 + 1;
+                    int bucket = (int) (h % n);
+                    next[i] = hhead[bucket];
+                    hhead[bucket] = i;
+                    last[i] = bucket;
+                }
+            }
+            degree[k] = dk;
+            lemax = Math.max(lemax, dk);
+            mark = clear(mark + lemax, lemax, w, n);
+
+            //supervariable detection, nodes with the same hash are compared list by list
+            for (int pk = pk1; pk < pk2; pk++) {
+                int i = ci[pk];
+                if (nv[i] >= 0) continue;
+                int bucket = last[i];
+                i = hhead[bucket];
+                hhead[bucket] = -1;
+                for (; i != -1 && next[i] != -1; i = next[i], mark++) {
+                    int ln = len[i];
+                    int eln = elen[i];
+                    for (p = cp[i] + 1; p <= cp[i] + ln - 1; p++) {
+                        w[ci[p]] = mark;
+                    }
+                    int jlast = i;
+                    for (int j = next[i]; j != -1; ) {
+                        boolean ok = len[j] == ln && elen[j] == eln;
+                        for (p = cp[j] + 1; ok && p <= cp[j] + ln - 1; p++) {
+                            if (w[ci[p]] != mark) ok = false;
+                        }
+                        if (ok) {
+                            cp[j] = flip(i);
+                            nv[i] += nv[j];
+                            nv[j] = 0;
+                            elen[j] = -1;
+                            j = next[j];
+                            next[jlast] = j;
+                        } else {
+                            jlast = j;
+                            j = next[j];
+                        }
+                    }
+                }
+            }
+
+            //put the remaining nodes of Lk back into the degree lists with their external degree
+            p = pk1;
+            for (int pk = pk1; pk < pk2; pk++) {
+                int i = ci[pk];
+                int nvi = -nv[i];
+                if (nvi <= 0) continue;
+                nv[i] = nvi;
+                int d = Math.min(degree[i] + dk - nvi, n - nel - nvi);
+                if (head[d] != -1) last[head[d]] = i;
+                next[i] = head[d];
+                last[i] = -1;
+                head[d] = i;
+                mindeg = Math.min(mindeg, d);
+                degree[i] = d;
+                ci[p++] = i;
+            }
+            nv[k] = nvk;
+            len[k] = p - pk1;
+            if (len[k] == 0) {
+                cp[k] = -1;
+                w[k] = 0;
+            }
+            if (elenk != 0) cnz = p;
+        }
+
+        //postorder the assembly tree, absorbed nodes follow the element they were absorbed into
+        for (int i = 0; i < n; i++) {
+            cp[i] = flip(cp[i]);
+        }
+        Arrays.fill(head, -1);
+        for (int j = n; j >= 0; j--) {
+            if (nv[j] > 0) continue;
+            next[j] = head[cp[j]];
+            head[cp[j]] = j;
+        }
+        for (int e = n; e >= 0; e--) {
+            if (nv[e] <= 0) continue;
+            if (cp[e] != -1) {
+                next[e] = head[cp[e]];
+                head[cp[e]] = e;
+            }
+        }
+        int[] order = new int[n + 1];
+        int[] stack = new int[n + 1];
+        for (int k = 0, i = 0; i <= n; i++) {
+            if (cp[i] == -1) k = postorder(i, k, head, next, order, stack);
+        }
+        //the root element n comes last
+        return Arrays.copyOf(order, n);
+    }
+
+    private static int flip(int i) {
+        return -i - 2;
+    }
+
+    /**
+     * returns a mark that is larger than every entry of w, resets the live entries of w to 1 when mark + lemax
+     * would overflow
+     */
+    private static int clear(int mark, int lemax, int[] w, int n) {
+        if (mark < 2 || mark + lemax < 0) {
+            for (int k = 0; k < n; k++) {
+                if (w[k] != 0) w[k] = 1;
+            }
+            mark = 2;
+        }
+        return mark;
+    }
+
+    /**
+     * depth first postorder of the tree below root. The children of node j are head[j], next[head[j]], ...
+     * The head lists are consumed.
+     * @return  k plus the number of nodes written to post
+     */
+    static int postorder(int root, int k, int[] head, int[] next, int[] post, int[] stack) {
+        int top = 0;
+        stack[0] = root;
+        while (top >= 0) {
+            int p = stack[top];
+            int i = head[p];
+            if (i == -1) {
+                top--;
+                post[k++] = p;
+            } else {
+                head[p] = next[i];
+                stack[++top] = i;
+            }
+        }
+        return k;
+    }
+
+    /**
+     * inverse permutation, old index -> new index
+     */
+    public static int[] inverse(int[] p) {
+        int[] inv = new int[p.length];
+        for (int i = 0; i < p.length; i++) {
+            inv[p[i]] = i;
+        }
+        return inv;
+    }
+
+    /**
+     * maximum distance |i - j| of an entry to the diagonal
+     */
+    public static int bandwidth(SparseMatrix a) {
+        int band = 0;
+        int[] index = a.getCol_index();
+        for (int i = 0; i < a.getM(); i++) {
+            if (a.end(i) == a.start(i)) continue;
+            band = Math.max(band, Math.max(i - index[a.start(i)], index[a.end(i) - 1] - i));
+        }
+        return band;
+    }
+
+    /**
+     * sum of the distances of the first entry of every row to the diagonal (the size of the lower envelope)
+     */
+    public static long profile(SparseMatrix a) {
+        long profile = 0;
+        int[] index = a.getCol_index();
+        for (int i = 0; i < a.getM(); i++) {
+            if (a.end(i) == a.start(i)) continue;
+            profile += Math.max(0, i - index[a.start(i)]);
+        }
+        return profile;
+    }
+}
@@ -0,0 +1,561 @@
+package core.matrix.sparse_matrix;
+
+import core.exceptions.NotSupportedOperation;
+import core.matrix.Matrix;
+import core.matrix.dense.DenseMatrix;
+import core.simd.Kernels;
+import core.threads.Pool;
+import core.threads.PoolFunction;
+import core.vector.DenseVector;
+import core.vector.Vector;
+
+import java.util.Arrays;
+
+/**
+ * using SELL-C-sigma format (sliced ellpack)
+ *
+ * Within windows of sigma rows the rows are sorted by their number of entries. Every C consecutive sorted rows
+ * form a slice which is padded to the length of its longest row and stored column by column, so the
+ * entries j of the C rows of a slice are contiguous and one slice is multiplied with SIMD vectors over the rows
+ * (see {@link Kernels#sell}). Sorting keeps the padding small.
+ *
+ * The sparsity pattern is fixed: setValue can only overwrite existing entries. Use {@link #toSparse()} to change it.
+ */
+public class SellMatrix extends Matrix<SellMatrix> {
+
+    /**
+     * default slice height, a multiple of the number of doubles in a simd register
+     */
+    public static int CHUNK_HEIGHT = 8;
+
+    /**
+     * default number of rows within which the rows are sorted by length
+     */
+    public static int SIGMA = 256;
+
+    /**
+     * a window is only sorted if its padding exceeds this fraction of its entries. Sorting breaks up runs of
+     * neighbouring rows, whose gathers from x hit the same cache lines, so nearly regular windows
+     * (like the rows of a stencil) are faster in their original order.
+     */
+    public static double SORT_THRESHOLD = 0.1;
+
+    private int c;
+    private int sigma;
+
+    //position p of the sorted order holds the row perm[p]. position is the inverse of perm.
+    private int[] perm;
+    private int[] position;
+    private int[] row_length;
+
+    //slice s starts at slice_ptr[s] and has width[s] columns of c entries
+    private int[] slice_ptr;
+    private int[] width;
+    private int[] col_index;
+    private double[] val;
+
+    private int[] partition;
+
+    public SellMatrix(SparseMatrix matrix) {
+        this(matrix, CHUNK_HEIGHT, SIGMA);
+    }
+
+    /**
+     * converts a csr matrix in O(nnz + padding) plus sorting the windows of sigma rows
+     */
+    public SellMatrix(SparseMatrix matrix, int c, int sigma) {
+        super(matrix.getM(), matrix.getN());
+        if (c < 1 || sigma < 1) throw new RuntimeException();
+        this.c = c;
+        this.sigma = sigma;
+        int m = this.getM();
+        row_length = new int[m];
+        for (int i = 0; i < m; i++) {
+            row_length[i] = matrix.end(i) - matrix.start(i);
+        }
+
+        //sort every window by decreasing length, rows of the same length keep their order
+        perm = new int[m];
+        position = new int[m];
+        for (int ws = 0; ws < m; ws += sigma) {
+            int we = Math.min(m, ws + sigma);
+            long entries = 0;
+            long padded = 0;
+            for (int cs = ws; cs < we; cs += c) {
+                int w = 0;
+                for (int i = cs; i < Math.min(we, cs + c); i++) {
+                    entries += row_length[i];
+                    w = Math.max(w, row_length[i]);
+                }
+                padded += (long) w * c;
+            }
+            if (padded - entries <= SORT_THRESHOLD * entries) {
+                for (int i = ws; i < we; i++) {
+                    perm[i] = i;
+                }
+                continue;
+            }
+            long[] keys = new long[we - ws];
+            for (int i = ws; i < we; i++) {
+                keys[i - ws] = ((long) (Integer.MAX_VALUE - row_length[i]) << 32) | (i - ws);
+            }
+            Arrays.sort(keys);
+            for (int k = 0; k < keys.length; k++) {
+                perm[ws + k] = ws + (int) (keys[k] & 0xFFFFFFFFL);
+            }
+        }
+        for (int p = 0; p < m; p++) {
+            position[perm[p]] = p;
+        }
+
+        int slices = (m + c - 1) / c;
+        slice_ptr = new int[slices + 1];
+        width = new int[slices];
+        for (int s = 0; s < slices; s++) {
+            int w = 0;
+            for (int p = s * c; p < Math.min(m, (s + 1) * c); p++) {
+                w = Math.max(w, row_length[perm[p]]);
+            }
+            width[s] = w;
+            slice_ptr[s + 1] = Math.addExact(slice_ptr[s], Math.multiplyExact(w, c));
+        }
+
+        //padding entries are zeros pointing to the last column of their row, so the gather stays local
+        col_index = new int[slice_ptr[slices]];
+        val = new double[slice_ptr[slices]];
+        int[] sparse_index = matrix.getCol_index();
+        double[] sparse_val = matrix.getVal();
+        for (int p = 0; p < slices * c; p++) {
+            int s = p / c;
+            int o = slice_ptr[s] + p % c;
+            int k = 0;
+            int last = 0;
+            if (p < m) {
+                int start = matrix.start(perm[p]);
+                for (; k < row_length[perm[p]]; k++) {
+                    last = sparse_index[start + k];
+                    col_index[o + k * c] = last;
+                    val[o + k * c] = sparse_val[start + k];
+                }
+            }
+            for (; k < width[s]; k++) {
+                col_index[o + k * c] = last;
+            }
+        }
+    }
+
+    private SellMatrix(int m, int n) {
+        super(m, n);
+    }
+
+    /**
+     * the same matrix in csr format
+     */
+    public SparseMatrix toSparse() {
+        int m = this.getM();
+        int[] row_ptr = new int[m + 1];
+        for (int i = 0; i < m; i++) {
+            row_ptr[i + 1] = row_ptr[i] + row_length[i];
+        }
+        int[] index = new int[row_ptr[m]];
+        double[] values = new double[row_ptr[m]];
+        for (int i = 0; i < m; i++) {
+            int o = offset(i);
+            for (int k = 0; k < row_length[i]; k++) {
+                index[row_ptr[i] + k] = col_index[o + k * c];
+                values[row_ptr[i] + k] = val[o + k * c];
+            }
+        }
+        return new SparseMatrix(m, this.getN(), row_ptr, index, values);
+    }
+
+    /**
+     * position of the first entry of the row, the following entries have a distance of c
+     */
+    private int offset(int row) {
+        int p = position[row];
+        return slice_ptr[p / c] + p % c;
+    }
+
+    /**
+     * index of the entry (row, column) in val or -1
+     */
+    private int find(int row, int column) {
+        int o = offset(row);
+        for (int k = 0; k < row_length[row]; k++) {
+            if (col_index[o + k * c] == column) return o + k * c;
+        }
+        return -1;
+    }
+
+    public int getChunkHeight() {
+        return c;
+    }
+
+    public int getSigma() {
+        return sigma;
+    }
+
+    /**
+     * number of stored values including the padding
+     */
+    public int paddedSize() {
+        return slice_ptr[slice_ptr.length - 1];
+    }
+
+    private static double[] values(Vector<?> vec) {
+        return vec instanceof DenseVector ? ((DenseVector) vec).getValues() : new DenseVector(vec).getValues();
+    }
+
+    private void mul_slices(double[] x, double[] y, double[] sums, int sliceStart, int sliceEnd) {
+        int m = this.getM();
+        for (int s = sliceStart; s < sliceEnd; s++) {
+            Kernels.sell(val, col_index, slice_ptr[s], c, width[s], x, sums);
+            int base = s * c;
+            for (int r = 0; r < Math.min(c, m - base); r++) {
+                y[perm[base + r]] = sums[r];
+            }
+        }
+    }
+
+    @Override
+    public DenseVector mulInto(Vector<?> vec, DenseVector target) {
+        if (vec.getSize() != this.getN() || target.getSize() != this.getM()) throw new RuntimeException();
+        mul_slices(values(vec), target.getValues(), buffers(1, c)[0], 0, width.length);
+        return target;
+    }
+
+    /**
+     * every thread gets a block of consecutive slices with about the same number of padded entries
+     */
+    @Override
+    public DenseVector mulInto(Vector<?> vec, DenseVector target, Pool pool) {
+        if (vec.getSize() != this.getN() || target.getSize() != this.getM()) throw new RuntimeException();
+        int threads = pool.getActiveThreads();
+        int[] blocks = getSlicePartition(threads);
+        double[] x = values(vec);
+        double[] y = target.getValues();
+        double[][] sums = buffers(threads, c);
+        PoolFunction function = (index, core) ->
+                mul_slices(x, y, sums[index], blocks[index], blocks[index + 1]);
+        pool.executeTotal(function, threads, false);
+        return target;
+    }
+
+    /**
+     * splits the slices into blocks with about the same work. The work of a slice is its padded size plus c.
+     * @return  parts + 1 slice indices, block i covers the slices [result[i], result[i+1])
+     */
+    public int[] getSlicePartition(int parts) {
+        int[] cached = partition;
+        if (cached != null && cached.length == parts + 1) return cached;
+        int slices = width.length;
+        int[] result = new int[parts + 1];
+        long total = (long) slices * c + paddedSize();
+        for (int p = 1; p < parts; p++) {
+            long diagonal = total * p / parts;
+            int low = result[p - 1];
+            int high = slices;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if ((long) (mid + 1) * c + slice_ptr[mid + 1] <= diagonal) low = mid + 1;
+                else high = mid;
+            }
+            result[p] = low;
+        }
+        result[parts] = slices;
+        partition = result;
+        return result;
+    }
+
+    @Override
+    public void mul_partial_row(DenseVector target, Vector<?> vec, int row) {
+        double sum = 0;
+        int o = offset(row);
+        for (int k = 0; k < row_length[row]; k++) {
+            sum += val[o + k * c] * vec.getValue(col_index[o + k * c]);
+        }
+        target.setValue(row, sum);
+    }
+
+    @Override
+    public void mul_partial_row(DenseMatrix target, Matrix<?> matrix, int row) {
+        gemm_partial_row(1, matrix, false, 0, target, row);
+    }
+
+    @Override
+    public void gemm_partial_row(double alpha, Matrix<?> b, boolean transB, double beta, DenseMatrix c, int row) {
+        double[] cd = c.getData();
+        int cr = c.index(row, 0);
+        for (int j = 0; j < c.getN(); j++) {
+            cd[cr + j] = beta == 0 ? 0 : beta * cd[cr + j];
+        }
+        int o = offset(row);
+        for (int k = 0; k < row_length[row]; k++) {
+            double v = alpha * val[o + k * this.c];
+            int col = col_index[o + k * this.c];
+            if (b instanceof DenseMatrix && !transB) {
+                DenseMatrix dense = (DenseMatrix) b;
+                Kernels.axpy(v, dense.getData(), dense.index(col, 0), cd, cr, c.getN());
+            } else {
+                for (int j = 0; j < c.getN(); j++) {
+                    cd[cr + j] += v * (transB ? b.getValue(j, col) : b.getValue(col, j));
+                }
+            }
+        }
+    }
+
+    @Override
+    public void gemv_partial_row(double alpha, Vector<?> x, double beta, DenseVector y, int row) {
+        double sum = 0;
+        int o = offset(row);
+        for (int k = 0; k < row_length[row]; k++) {
+            sum += val[o + k * c] * x.getValue(col_index[o + k * c]);
+        }
+        y.setValue(row, beta == 0 ? alpha * sum : alpha * sum + beta * y.getValue(row));
+    }
+
+    @Override
+    public void gemv_transposed_partial(double alpha, Vector<?> x, double[] y, int rowStart, int rowEnd) {
+        for (int i = rowStart; i < rowEnd; i++) {
+            double v = alpha * x.getValue(i);
+            if (v == 0) continue;
+            int o = offset(i);
+            for (int k = 0; k < row_length[i]; k++) {
+                y[col_index[o + k * c]] += v * val[o + k * c];
+            }
+        }
+    }
+
+    /**
+     * the target must contain all entries of the row
+     */
+    @Override
+    public void scale_partial_row(SellMatrix target, double scalar, int row) {
+        int o = offset(row);
+        for (int k = 0; k < row_length[row]; k++) {
+            target.setValue(row, col_index[o + k * c], val[o + k * c] * scalar);
+        }
+    }
+
+    /**
+     * the target must contain all entries of both rows
+     */
+    @Override
+    public void add_partial_row(SellMatrix target, SellMatrix matrix, int row) {
+        combine_partial_row(target, matrix, 1, row);
+    }
+
+    @Override
+    public void sub_partial_row(SellMatrix target, SellMatrix matrix, int row) {
+        combine_partial_row(target, matrix, -1, row);
+    }
+
+    private void combine_partial_row(SellMatrix target, SellMatrix matrix, double beta, int row) {
+        int o = offset(row);
+        for (int k = 0; k < row_length[row]; k++) {
+            int col = col_index[o + k * c];
+            target.setValue(row, col, val[o + k * c] + beta * matrix.getValue(row, col));
+        }
+        int mo = matrix.offset(row);
+        for (int k = 0; k < matrix.row_length[row]; k++) {
+            int col = matrix.col_index[mo + k * matrix.c];
+            if (find(row, col) < 0) target.setValue(row, col, beta * matrix.val[mo + k * matrix.c]);
+        }
+    }
+
+    @Override
+    public SellMatrix transpose() {
+        return new SellMatrix(toSparse().transpose(), c, sigma);
+    }
+
+    @Override
+    public SellMatrix self_transpose() {
+        SellMatrix t = transpose();
+        this.M = t.M;
+        this.N = t.N;
+        this.perm = t.perm;
+        this.position = t.position;
+        this.row_length = t.row_length;
+        this.slice_ptr = t.slice_ptr;
+        this.width = t.width;
+        this.col_index = t.col_index;
+        this.val = t.val;
+        this.partition = null;
+        return this;
+    }
+
+    @Override
+    public SellMatrix self_identity() {
+        for (int i = 0; i < Math.min(this.getM(), this.getN()); i++) {
+            setValue(i, i, 1);
+        }
+        return this;
+    }
+
+    @Override
+    public double norm_1() {
+        double max = 0;
+        for (int i = 0; i < this.getM(); i++) {
+            double sum = 0;
+            int o = offset(i);
+            for (int k = 0; k < row_length[i]; k++) {
+                sum += Math.abs(val[o + k * c]);
+            }
+            if (sum > max) max = sum;
+        }
+        return max;
+    }
+
+    @Override
+    public double norm_infinity() {
+        //padding entries are zeros, so they do not change the sums
+        double[] sums = new double[this.getN()];
+        for (int k = 0; k < paddedSize(); k++) {
+            sums[col_index[k]] += Math.abs(val[k]);
+        }
+        double max = 0;
+        for (double sum : sums) {
+            if (sum > max) max = sum;
+        }
+        return max;
+    }
+
+    @Override
+    public boolean isSymmetric() {
+        if (this.getM() != this.getN()) return false;
+        for (int i = 0; i < this.getM(); i++) {
+            int o = offset(i);
+            for (int k = 0; k < row_length[i]; k++) {
+                if (getValue(col_index[o + k * c], i) != val[o + k * c]) return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public double determinant() {
+        throw new NotSupportedOperation();
+    }
+
+    /**
+     * only exchanges the positions of both rows
+     */
+    @Override
+    public void swapRow(int r1, int row2) {
+        int p1 = position[r1];
+        int p2 = position[row2];
+        position[r1] = p2;
+        position[row2] = p1;
+        perm[p1] = row2;
+        perm[p2] = r1;
+        int l = row_length[r1];
+        row_length[r1] = row_length[row2];
+        row_length[row2] = l;
+    }
+
+    @Override
+    public void swapColumn(int c1, int c2) {
+        throw new NotSupportedOperation();
+    }
+
+    @Override
+    public void scale_column(int column, double scalar) {
+        for (int k = 0; k < paddedSize(); k++) {
+            if (col_index[k] == column) val[k] *= scalar;
+        }
+    }
+
+    @Override
+    public void scale_row(int row, double scalar) {
+        scale_partial_row(this, scalar, row);
+    }
+
+    /**
+     * overwrites an existing entry. New entries can not be inserted, setting a missing entry to zero is ignored.
+     */
+    @Override
+    public void setValue(int m, int n, double value) {
+        int k = find(m, n);
+        if (k >= 0) val[k] = value;
+        else if (value != 0) throw new NotSupportedOperation();
+    }
+
+    @Override
+    public double getValue(int m, int n) {
+        int k = find(m, n);
+        return k >= 0 ? val[k] : 0;
+    }
+
+    @Override
+    public boolean hasValue(double v) {
+        for (int i = 0; i < this.getM(); i++) {
+            int o = offset(i);
+            for (int k = 0; k < row_length[i]; k++) {
+                if (val[o + k * c] == v) return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void replaceValue(double v, double r) {
+        for (int i = 0; i < this.getM(); i++) {
+            int o = offset(i);
+            for (int k = 0; k < row_length[i]; k++) {
+                if (val[o + k * c] == v) val[o + k * c] = r;
+            }
+        }
+    }
+
+    /**
+     * a matrix with the same sparsity pattern and all values zero
+     */
+    @Override
+    public SellMatrix newInstance() {
+        SellMatrix m = copy();
+        Arrays.fill(m.val, 0);
+        return m;
+    }
+
+    @Override
+    public SellMatrix copy() {
+        SellMatrix m = new SellMatrix(this.getM(), this.getN());
+        m.c = c;
+        m.sigma = sigma;
+        m.perm = perm.clone();
+        m.position = position.clone();
+        m.row_length = row_length.clone();
+        m.slice_ptr = slice_ptr;
+        m.width = width;
+        m.col_index = col_index;
+        m.val = val.clone();
+        return m;
+    }
+
+    @Override
+    public DenseMatrix copyToDense() {
+        DenseMatrix matrix = new DenseMatrix(this.getM(), this.getN());
+        for (int i = 0; i < this.getM(); i++) {
+            int o = offset(i);
+            for (int k = 0; k < row_length[i]; k++) {
+                matrix.setValue(i, col_index[o + k * c], val[o + k * c]);
+            }
+        }
+        return matrix;
+    }
+
+    @Override
+    public int storageSize() {
+        int size = 0;
+        for (int length : row_length) {
+            size += length;
+        }
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return copyToDense().toString();
+    }
+}
@@ -3,30 +3,54 @@ package core.matrix.sparse_matrix;
 import core.exceptions.NotSupportedOperation;
 import core.matrix.Matrix;
 import core.matrix.dense.DenseMatrix;
+import core.simd.Kernels;
+import core.threads.Pool;
+import core.threads.PoolFunction;
 import core.vector.Vector;
 import core.vector.DenseVector;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Arrays;
 
 /**
  * using CSR format
+ *
+ * The entries of row i are located at val[row_ptr[i] ... row_ptr[i+1]) with their columns in col_index, sorted
+ * by column. val and col_index grow geometrically while entries are inserted, so they may be longer than the
+ * number of entries. {@link #freeze()} trims them and fixes the sparsity pattern.
  */
 public class SparseMatrix extends Matrix<SparseMatrix> {
 
 
-    private ArrayList<Double> val = new ArrayList<>();
-    private ArrayList<Integer> col_index = new ArrayList<>();
-    private ArrayList<Integer> row_ptr = new ArrayList<>();
+    private double[] val;
+    private int[] col_index;
+    private int[] row_ptr;
+
+    //row views share the arrays of their parent. row i of the view is row i + row_offset of the parent.
+    private int row_offset = 0;
+    private boolean read_only = false;
+    private boolean frozen = false;
+
+    //cached result of getRowPartition, dropped whenever an entry is inserted
+    private int[] partition;
 
 
     public SparseMatrix(int m, int n) {
         super(m, n);
-        for (int i = 0; i < this.getM() + 1; i++) {
-            row_ptr.add(0);
-        }
+        row_ptr = new int[m + 1];
+        col_index = new int[0];
+        val = new double[0];
+    }
+
+    /**
+     * wraps the given csr arrays without copying them. The columns of every row must be sorted.
+     */
+    public SparseMatrix(int m, int n, int[] row_ptr, int[] col_index, double[] val) {
+        super(m, n);
+        if (row_ptr.length != m + 1 || col_index.length < row_ptr[m] || val.length < row_ptr[m])
+            throw new RuntimeException("storage does not fit dimensions");
+        this.row_ptr = row_ptr;
+        this.col_index = col_index;
+        this.val = val;
     }
 
     public SparseMatrix(DenseMatrix matrix) {
@@ -35,60 +59,126 @@ public class SparseMatrix extends Matrix<SparseMatrix> {
 
     public SparseMatrix(HashMatrix hashMatrix) {
         super(hashMatrix);
-        row_ptr.add(0);
-        HashMap<Integer, Double>[] map = hashMatrix.getRows();
+        IntDoubleMap[] map = hashMatrix.getRows();
+        row_ptr = new int[this.getM() + 1];
         int total = 0;
         for (int i = 0; i < map.length; i++) {
             total += map[i].size();
-            row_ptr.add(total);
-            List<Integer> keys = map[i].keySet().stream().sorted().collect(Collectors.toList());
-            for (Integer n : keys) {
-                col_index.add(n);
-                val.add(map[i].get(n));
-            }
+            row_ptr[i + 1] = total;
+        }
+        col_index = new int[total];
+        val = new double[total];
+        for (int i = 0; i < map.length; i++) {
+            map[i].sorted(col_index, val, row_ptr[i]);
         }
     }
 
     public SparseMatrix(double[][] ar) {
         super(ar);
-        row_ptr.add(0);
+        row_ptr = new int[this.getM() + 1];
         int counter = 0;
+        for (int i = 0; i < this.getM(); i++) {
+            for (int n = 0; n < this.getN(); n++) {
+                if (ar[i][n] != 0) counter++;
+            }
+            row_ptr[i + 1] = counter;
+        }
+        col_index = new int[counter];
+        val = new double[counter];
+        counter = 0;
         for (int i = 0; i < this.getM(); i++) {
             for (int n = 0; n < this.getN(); n++) {
                 if (ar[i][n] != 0) {
+                    val[counter] = ar[i][n];
+                    col_index[counter] = n;
                     counter++;
-                    val.add(ar[i][n]);
-                    col_index.add(n);
                 }
             }
-            row_ptr.add(counter);
         }
     }
 
-    ArrayList<Double> getVal() {
+    double[] getVal() {
         return val;
     }
 
-    ArrayList<Integer> getCol_index() {
+    int[] getCol_index() {
         return col_index;
     }
 
-    ArrayList<Integer> getRow_ptr() {
+    int[] getRow_ptr() {
         return row_ptr;
     }
 
+    int start(int row) {
+        return row_ptr[row + row_offset];
+    }
+
+    int end(int row) {
+        return row_ptr[row + row_offset + 1];
+    }
+
+    private void checkWritable() {
+        if (read_only) throw new NotSupportedOperation();
+    }
+
+    public boolean isReadOnly() {
+        return read_only;
+    }
+
+    /**
+     * trims the arrays to the number of entries. Afterwards the values can still be changed, but inserting
+     * a new entry throws a NotSupportedOperation. Call this once the matrix has been assembled.
+     */
+    public SparseMatrix freeze() {
+        checkWritable();
+        int nnz = row_ptr[this.getM()];
+        if (val.length != nnz) {
+            val = Arrays.copyOf(val, nnz);
+            col_index = Arrays.copyOf(col_index, nnz);
+        }
+        frozen = true;
+        return this;
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    /**
+     * returns a read-only view of the rows [rowStart, rowStart + m). Only views over all columns are supported.
+     * The view shares the storage of this matrix and becomes invalid if the sparsity pattern of this matrix changes.
+     */
+    @Override
+    public SparseMatrix view(int rowStart, int colStart, int m, int n) {
+        if (colStart != 0 || n != this.getN()) throw new NotSupportedOperation();
+        if (rowStart < 0 || m < 0 || rowStart + m > this.getM()) throw new IndexOutOfBoundsException();
+        SparseMatrix view = new SparseMatrix(this, m);
+        view.row_offset = this.row_offset + rowStart;
+        return view;
+    }
+
+    private SparseMatrix(SparseMatrix parent, int m) {
+        super(m, parent.getN());
+        this.val = parent.val;
+        this.col_index = parent.col_index;
+        this.row_ptr = parent.row_ptr;
+        this.read_only = true;
+        this.frozen = true;
+    }
+
     public void printCSRFormat() {
+        int base = start(0);
         System.out.print("values    :");
-        for (int i = 0; i < val.size(); i++) {
-            System.out.format("%5s", val.get(i));
+        for (int i = base; i < end(this.getM() - 1); i++) {
+            System.out.format("%5s", val[i]);
         }
         System.out.print("\ncol_index :");
-        for (int i = 0; i < col_index.size(); i++) {
-            System.out.format("%5s", col_index.get(i));
+        for (int i = base; i < end(this.getM() - 1); i++) {
+            System.out.format("%5s", col_index[i]);
         }
         System.out.print("\nrow_ptr.  :");
-        for (int i = 0; i < row_ptr.size(); i++) {
-            System.out.format("%5s", row_ptr.get(i));
+        for (int i = 0; i <= this.getM(); i++) {
+            System.out.format("%5s", row_ptr[i + row_offset] - base);
         }
         System.out.println();
     }
@@ -96,73 +186,445 @@ public class SparseMatrix extends Matrix<SparseMatrix> {
 
     @Override
     public void scale_partial_row(SparseMatrix target, double scalar, int row) {
-        for (int n = row_ptr.get(row); n < row_ptr.get(row + 1); n++) {
-            val.set(n, val.get(n) * scalar);
+        target.checkWritable();
+        if (target == this) {
+            for (int n = start(row); n < end(row); n++) {
+                val[n] *= scalar;
+            }
+        } else {
+            for (int n = start(row); n < end(row); n++) {
+                target.setValue(row, col_index[n], val[n] * scalar);
+            }
         }
     }
 
+    @Override
+    public SparseMatrix scaleInto(double scalar, SparseMatrix target) {
+        return scale(scalar, target, null);
+    }
+
+    @Override
+    public SparseMatrix scaleInto(double scalar, SparseMatrix target, Pool pool) {
+        return scale(scalar, target, pool);
+    }
+
+    /**
+     * the target gets the pattern of this matrix, the values are scaled in chunks of rows. A frozen target keeps
+     * its pattern like in {@link #linear_combinationInto(double, SparseMatrix, double, SparseMatrix, SparseMatrix)}.
+     */
+    private SparseMatrix scale(double scalar, SparseMatrix target, Pool pool) {
+        if (this.getM() != target.getM() || this.getN() != target.getN()) throw new RuntimeException();
+        target.checkWritable();
+        int m = this.getM();
+        if (target != this && target.frozen) {
+            return combine(scalar, this, 0, new SparseMatrix(m, this.getN()), target, pool);
+        }
+        double[] source = val;
+        int base = start(0);
+        if (target != this) {
+            int[] ptr = new int[m + 1];
+            for (int i = 0; i <= m; i++) {
+                ptr[i] = row_ptr[i + row_offset] - base;
+            }
+            target.row_ptr = ptr;
+            target.col_index = Arrays.copyOfRange(col_index, base, end(m - 1));
+            target.val = new double[ptr[m]];
+            target.row_offset = 0;
+            target.partition = null;
+        }
+        double[] values = target.val;
+        //offset between the entries of this matrix and the ones of the target
+        int shift = target == this ? 0 : base;
+        int chunks = (m + MERGE_CHUNK - 1) / MERGE_CHUNK;
+        execute(pool, chunks, (chunk, core) -> {
+            int from = start(chunk * MERGE_CHUNK);
+            int to = start(Math.min(m, (chunk + 1) * MERGE_CHUNK));
+            for (int k = from; k < to; k++) {
+                values[k - shift] = source[k] * scalar;
+            }
+        });
+        return target;
+    }
+
     @Override
     public void mul_partial_row(DenseVector target, Vector<?> vec, int row) {
         double sum = 0;
-        for (int n = row_ptr.get(row); n < row_ptr.get(row + 1); n++) {
-            sum += vec.getValue(col_index.get(n)) * this.val.get(n);
+        int end = end(row);
+        if (vec instanceof DenseVector) {
+            double[] x = ((DenseVector) vec).getValues();
+            for (int n = start(row); n < end; n++) {
+                sum += x[col_index[n]] * val[n];
+            }
+        } else {
+            for (int n = start(row); n < end; n++) {
+                sum += vec.getValue(col_index[n]) * val[n];
+            }
         }
-        target.setValue(row, sum);
+        target.getValues()[row] = sum;
     }
 
     @Override
     public void mul_partial_row(DenseMatrix target, Matrix<?> matrix, int row) {
-        for (int j = 0; j < matrix.getN(); j++) {
-            double sum = 0;
-            for (int n = row_ptr.get(row); n < row_ptr.get(row + 1); n++) {
-                sum += matrix.getValue(col_index.get(n), j) * this.val.get(n);
+        gemm_partial_row(1, matrix, false, 0, target, row);
+    }
+
+    @Override
+    public void gemv_partial_row(double alpha, Vector<?> x, double beta, DenseVector y, int row) {
+        double sum = 0;
+        int end = end(row);
+        if (x instanceof DenseVector) {
+            double[] xd = ((DenseVector) x).getValues();
+            for (int n = start(row); n < end; n++) {
+                sum += xd[col_index[n]] * val[n];
+            }
+        } else {
+            for (int n = start(row); n < end; n++) {
+                sum += x.getValue(col_index[n]) * val[n];
+            }
+        }
+        y.setValue(row, beta == 0 ? alpha * sum : alpha * sum + beta * y.getValue(row));
+    }
+
+    @Override
+    public void gemv_transposed_partial(double alpha, Vector<?> x, double[] y, int rowStart, int rowEnd) {
+        double[] xd = x instanceof DenseVector ? ((DenseVector) x).getValues() : null;
+        for (int i = rowStart; i < rowEnd; i++) {
+            double v = alpha * (xd != null ? xd[i] : x.getValue(i));
+            if (v == 0) continue;
+            int end = end(i);
+            for (int n = start(i); n < end; n++) {
+                y[col_index[n]] += v * val[n];
+            }
+        }
+    }
+
+    /**
+     * A^T * x computed by scattering the rows of A, no transpose is created
+     */
+    @Override
+    public DenseVector mulTransposedInto(Vector<?> vec, DenseVector target) {
+        if (vec.getSize() != this.getM() || target.getSize() != this.getN()) throw new RuntimeException();
+        double[] y = target.getValues();
+        Arrays.fill(y, 0);
+        gemv_transposed_partial(1, vec, y, 0, this.getM());
+        return target;
+    }
+
+    /**
+     * parallel A^T * x. Every thread scatters its block of rows (see {@link #getRowPartition(int)}) into its own
+     * buffer, afterwards the buffers are summed up in parallel over the columns. The buffers are cached.
+     */
+    @Override
+    public DenseVector mulTransposedInto(Vector<?> vec, DenseVector target, Pool pool) {
+        if (vec.getSize() != this.getM() || target.getSize() != this.getN()) throw new RuntimeException();
+        int threads = pool.getActiveThreads();
+        int[] blocks = getRowPartition(threads);
+        double[] y = target.getValues();
+        double[][] buffers = buffers(threads, this.getN());
+        PoolFunction scatter = (index, core) -> {
+            double[] buffer = index == 0 ? y : buffers[index];
+            Arrays.fill(buffer, 0, this.getN(), 0);
+            gemv_transposed_partial(1, vec, buffer, blocks[index], blocks[index + 1]);
+        };
+        pool.executeTotal(scatter, threads, false);
+        PoolFunction reduce = (index, core) -> {
+            int start = (int) ((long) index * this.getN() / threads);
+            int end = (int) ((long) (index + 1) * this.getN() / threads);
+            for (int b = 1; b < threads; b++) {
+                double[] buffer = buffers[b];
+                for (int i = start; i < end; i++) {
+                    y[i] += buffer[i];
+                }
+            }
+        };
+        pool.executeTotal(reduce, threads, false);
+        return target;
+    }
+
+    @Override
+    public void gemm_partial_row(double alpha, Matrix<?> b, boolean transB, double beta, DenseMatrix c, int row) {
+        double[] cd = c.getData();
+        int cr = c.index(row, 0);
+        for (int j = 0; j < c.getN(); j++) {
+            cd[cr + j] = beta == 0 ? 0 : beta * cd[cr + j];
+        }
+        for (int n = start(row); n < end(row); n++) {
+            double v = alpha * this.val[n];
+            int k = col_index[n];
+            if (b instanceof DenseMatrix && !transB) {
+                DenseMatrix dense = (DenseMatrix) b;
+                Kernels.axpy(v, dense.getData(), dense.index(k, 0), cd, cr, c.getN());
+            } else if (b instanceof SparseMatrix && !transB) {
+                SparseMatrix sparse = (SparseMatrix) b;
+                for (int l = sparse.start(k); l < sparse.end(k); l++) {
+                    cd[cr + sparse.col_index[l]] += v * sparse.val[l];
+                }
+            } else {
+                for (int j = 0; j < c.getN(); j++) {
+                    cd[cr + j] += v * (transB ? b.getValue(j, k) : b.getValue(k, j));
+                }
+            }
+        }
+    }
+
+    @Override
+    public void gemm_transposed_partial(double alpha, Matrix<?> b, boolean transB, DenseMatrix c, int colStart, int colEnd) {
+        double[] cd = c.getData();
+        int width = colEnd - colStart;
+        for (int i = 0; i < this.getM(); i++) {
+            for (int n = start(i); n < end(i); n++) {
+                double v = alpha * this.val[n];
+                int cr = c.index(col_index[n], colStart);
+                if (b instanceof DenseMatrix && !transB) {
+                    DenseMatrix dense = (DenseMatrix) b;
+                    Kernels.axpy(v, dense.getData(), dense.index(i, colStart), cd, cr, width);
+                } else {
+                    for (int j = 0; j < width; j++) {
+                        cd[cr + j] += v * (transB ? b.getValue(colStart + j, i) : b.getValue(i, colStart + j));
+                    }
+                }
             }
-            target.setValue(row, j, sum);
         }
     }
 
     @Override
     public void add_partial_row(SparseMatrix target, SparseMatrix matrix, int row) {
-        for (int n = row_ptr.get(row); n < row_ptr.get(row + 1); n++) {
-            target.setValue(row, col_index.get(n), this.val.get(n));
+        for (int n = start(row); n < end(row); n++) {
+            target.setValue(row, col_index[n], this.val[n]);
         }
-        for (int n = matrix.row_ptr.get(row); n < matrix.row_ptr.get(row + 1); n++) {
+        for (int n = matrix.start(row); n < matrix.end(row); n++) {
             target.setValue(row,
-                    matrix.col_index.get(n),
-                    target.getValue(row, matrix.col_index.get(n)) + matrix.val.get(n));
+                    matrix.col_index[n],
+                    target.getValue(row, matrix.col_index[n]) + matrix.val[n]);
         }
     }
 
     @Override
     public void sub_partial_row(SparseMatrix target, SparseMatrix matrix, int row) {
-        for (int n = row_ptr.get(row); n < row_ptr.get(row + 1); n++) {
-            target.setValue(row, col_index.get(n), this.val.get(n));
+        for (int n = start(row); n < end(row); n++) {
+            target.setValue(row, col_index[n], this.val[n]);
         }
-        for (int n = matrix.row_ptr.get(row); n < matrix.row_ptr.get(row + 1); n++) {
+        for (int n = matrix.start(row); n < matrix.end(row); n++) {
             target.setValue(row,
-                    matrix.col_index.get(n),
-                    target.getValue(row, matrix.col_index.get(n)) - matrix.val.get(n));
+                    matrix.col_index[n],
+                    target.getValue(row, matrix.col_index[n]) - matrix.val[n]);
+        }
+    }
+
+    /**
+     * rows of a linear combination which are claimed by a thread at once
+     */
+    public static int MERGE_CHUNK = 1024;
+
+    @Override
+    public SparseMatrix addInto(SparseMatrix other, SparseMatrix target) {
+        return linear_combinationInto(1, this, 1, other, target);
+    }
+
+    @Override
+    public SparseMatrix addInto(SparseMatrix other, SparseMatrix target, Pool pool) {
+        return linear_combinationInto(1, this, 1, other, target, pool);
+    }
+
+    @Override
+    public SparseMatrix subInto(SparseMatrix other, SparseMatrix target) {
+        return linear_combinationInto(1, this, -1, other, target);
+    }
+
+    @Override
+    public SparseMatrix subInto(SparseMatrix other, SparseMatrix target, Pool pool) {
+        return linear_combinationInto(1, this, -1, other, target, pool);
+    }
+
+    /**
+     * alpha * a + beta * b. The sparsity pattern of the result is the union of both patterns.
+     */
+    public static SparseMatrix linear_combination(double alpha, SparseMatrix a, double beta, SparseMatrix b) {
+        return combine(alpha, a, beta, b, new SparseMatrix(a.getM(), a.getN()), null);
+    }
+
+    public static SparseMatrix linear_combination(double alpha, SparseMatrix a, double beta, SparseMatrix b, Pool pool) {
+        return combine(alpha, a, beta, b, new SparseMatrix(a.getM(), a.getN()), pool);
+    }
+
+    /**
+     * writes alpha * a + beta * b into the target, which may be a or b.
+     * If the target is frozen, its sparsity pattern is kept and only the values are overwritten. Entries of the
+     * target which are in neither a nor b become zero. If the union of the patterns of a and b is not part of
+     * the pattern of the target, a NotSupportedOperation is thrown. Repeated combinations like M + dt * K
+     * into a frozen target therefore do not allocate.
+     * Otherwise the storage of the target is replaced by the merged rows.
+     */
+    public static SparseMatrix linear_combinationInto(double alpha, SparseMatrix a, double beta, SparseMatrix b,
+                                                      SparseMatrix target) {
+        return combine(alpha, a, beta, b, target, null);
+    }
+
+    public static SparseMatrix linear_combinationInto(double alpha, SparseMatrix a, double beta, SparseMatrix b,
+                                                      SparseMatrix target, Pool pool) {
+        return combine(alpha, a, beta, b, target, pool);
+    }
+
+    private static SparseMatrix combine(double alpha, SparseMatrix a, double beta, SparseMatrix b,
+                                        SparseMatrix target, Pool pool) {
+        if (a.getM() != b.getM() || a.getN() != b.getN()) throw new RuntimeException();
+        if (a.getM() != target.getM() || a.getN() != target.getN()) throw new RuntimeException();
+        target.checkWritable();
+        int m = a.getM();
+        int chunks = (m + MERGE_CHUNK - 1) / MERGE_CHUNK;
+        if (target.frozen) {
+            execute(pool, chunks, (chunk, core) -> {
+                for (int i = chunk * MERGE_CHUNK; i < Math.min(m, (chunk + 1) * MERGE_CHUNK); i++) {
+                    merge_frozen_partial_row(alpha, a, beta, b, target, i);
+                }
+            });
+            return target;
+        }
+
+        //symbolic pass: length of every merged row, stored at row_ptr[row + 1]
+        int[] result_ptr = new int[m + 1];
+        execute(pool, chunks, (chunk, core) -> {
+            for (int i = chunk * MERGE_CHUNK; i < Math.min(m, (chunk + 1) * MERGE_CHUNK); i++) {
+                result_ptr[i + 1] = merge_partial_row(alpha, a, beta, b, i, null, null, 0);
+            }
+        });
+        for (int i = 0; i < m; i++) {
+            result_ptr[i + 1] += result_ptr[i];
+        }
+        int[] result_index = new int[result_ptr[m]];
+        double[] result_val = new double[result_ptr[m]];
+        execute(pool, chunks, (chunk, core) -> {
+            for (int i = chunk * MERGE_CHUNK; i < Math.min(m, (chunk + 1) * MERGE_CHUNK); i++) {
+                merge_partial_row(alpha, a, beta, b, i, result_index, result_val, result_ptr[i]);
+            }
+        });
+        target.row_ptr = result_ptr;
+        target.col_index = result_index;
+        target.val = result_val;
+        target.partition = null;
+        return target;
+    }
+
+    /**
+     * merges the row of a and b with two pointers. Only counts the entries if index is null.
+     * @return  the position after the last written entry
+     */
+    private static int merge_partial_row(double alpha, SparseMatrix a, double beta, SparseMatrix b, int row,
+                                         int[] index, double[] values, int pos) {
+        int i = a.start(row), iEnd = a.end(row);
+        int j = b.start(row), jEnd = b.end(row);
+        while (i < iEnd || j < jEnd) {
+            int ca = i < iEnd ? a.col_index[i] : Integer.MAX_VALUE;
+            int cb = j < jEnd ? b.col_index[j] : Integer.MAX_VALUE;
+            if (index != null) {
+                if (ca < cb) {
+                    index[pos] = ca;
+                    values[pos] = alpha * a.val[i];
+                } else if (cb < ca) {
+                    index[pos] = cb;
+                    values[pos] = beta * b.val[j];
+                } else {
+                    index[pos] = ca;
+                    values[pos] = alpha * a.val[i] + beta * b.val[j];
+                }
+            }
+            if (ca <= cb) i++;
+            if (cb <= ca) j++;
+            pos++;
+        }
+        return pos;
+    }
+
+    /**
+     * merges the row of a and b into the existing pattern of the row of the target
+     */
+    private static void merge_frozen_partial_row(double alpha, SparseMatrix a, double beta, SparseMatrix b,
+                                                 SparseMatrix target, int row) {
+        int i = a.start(row), iEnd = a.end(row);
+        int j = b.start(row), jEnd = b.end(row);
+        int t = target.start(row), tEnd = target.end(row);
+        while (i < iEnd || j < jEnd) {
+            int ca = i < iEnd ? a.col_index[i] : Integer.MAX_VALUE;
+            int cb = j < jEnd ? b.col_index[j] : Integer.MAX_VALUE;
+            int c = Math.min(ca, cb);
+            double v;
+            if (ca < cb) v = alpha * a.val[i++];
+            else if (cb < ca) v = beta * b.val[j++];
+            else v = alpha * a.val[i++] + beta * b.val[j++];
+            while (t < tEnd && target.col_index[t] < c) {
+                target.val[t++] = 0;
+            }
+            if (t == tEnd || target.col_index[t] != c) throw new NotSupportedOperation();
+            target.val[t++] = v;
+        }
+        while (t < tEnd) {
+            target.val[t++] = 0;
         }
     }
 
     @Override
     public int storageSize() {
-        return this.row_ptr.get(row_ptr.size() - 1);
+        return row_ptr[row_offset + this.getM()] - row_ptr[row_offset];
     }
 
     @Override
     public SparseMatrix transpose() {
-        HashMatrix hashMatrix = new HashMatrix(this.getN(), this.getM());
-        for(int i = 0; i < this.getM(); i++){
-            for (int n = row_ptr.get(i); n < row_ptr.get(i + 1); n++) {
-                hashMatrix.setValue(col_index.get(n), i, val.get(n));
-            }
-        }return new SparseMatrix(hashMatrix);
+        CompressedArrays t = CompressedArrays.transpose(this.getM(), this.getN(), row_ptr, row_offset, col_index, val);
+        return new SparseMatrix(this.getN(), this.getM(), t.ptr, t.index, t.val);
     }
 
+    /**
+     * replaces the arrays by the ones of the transpose. Views can not be transposed.
+     */
     @Override
     public SparseMatrix self_transpose() {
-        throw new NotSupportedOperation();
+        checkWritable();
+        CompressedArrays t = CompressedArrays.transpose(this.getM(), this.getN(), row_ptr, 0, col_index, val);
+        row_ptr = t.ptr;
+        col_index = t.index;
+        val = t.val;
+        int m = this.M;
+        this.M = this.N;
+        this.N = m;
+        partition = null;
+        return this;
+    }
+
+    /**
+     * the same matrix in compressed sparse column format. The columns of A are the rows of A^T,
+     * so this is the counting sort of {@link #transpose()} without swapping the dimensions.
+     */
+    public CscMatrix toCsc() {
+        CompressedArrays t = CompressedArrays.transpose(this.getM(), this.getN(), row_ptr, row_offset, col_index, val);
+        return new CscMatrix(this.getM(), this.getN(), t.ptr, t.index, t.val);
+    }
+
+    /**
+     * the matrix B with B[i][j] = A[p[i]][q[j]], built in O(nnz + m + n). The columns are sorted by
+     * transposing twice instead of sorting every row.
+     * @param p     row permutation, new row -> old row
+     * @param q     column permutation, new column -> old column
+     */
+    public SparseMatrix permute(int[] p, int[] q) {
+        if (p.length != this.getM() || q.length != this.getN()) throw new RuntimeException();
+        int[] qinv = Ordering.inverse(q);
+        int m = this.getM();
+        int[] ptr = new int[m + 1];
+        for (int i = 0; i < m; i++) {
+            ptr[i + 1] = ptr[i] + end(p[i]) - start(p[i]);
+        }
+        int[] index = new int[ptr[m]];
+        double[] values = new double[ptr[m]];
+        for (int i = 0; i < m; i++) {
+            int k = ptr[i];
+            for (int n = start(p[i]); n < end(p[i]); n++) {
+                index[k] = qinv[col_index[n]];
+                values[k++] = val[n];
+            }
+        }
+        CompressedArrays t = CompressedArrays.transpose(m, this.getN(), ptr, 0, index, values);
+        CompressedArrays r = CompressedArrays.transpose(this.getN(), m, t.ptr, 0, t.index, t.val);
+        return new SparseMatrix(m, this.getN(), r.ptr, r.index, r.val);
     }
 
     @Override
@@ -184,8 +646,8 @@ public class SparseMatrix extends Matrix<SparseMatrix> {
         double sum;
         for (int i = 0; i < this.getM(); i++) {
             sum = 0;
-            for (int n = row_ptr.get(i); n < row_ptr.get(i + 1); n++) {
-                sum += Math.abs(val.get(n));
+            for (int n = start(i); n < end(i); n++) {
+                sum += Math.abs(val[n]);
             }
             if (sum > max) max = sum;
         }
@@ -194,13 +656,12 @@ public class SparseMatrix extends Matrix<SparseMatrix> {
 
     @Override
     public double norm_infinity() {
+        double[] sums = new double[this.getN()];
+        for (int n = start(0); n < end(this.getM() - 1); n++) {
+            sums[col_index[n]] += Math.abs(val[n]);
+        }
         double max = 0;
-        double sum;
-        for (int i = 0; i < this.getN(); i++) {
-            sum = 0;
-            for (int n = 0; n < this.getM(); n++) {
-                sum += Math.abs(getValue(n, i));
-            }
+        for (double sum : sums) {
             if (sum > max) max = sum;
         }
         return max;
@@ -209,8 +670,8 @@ public class SparseMatrix extends Matrix<SparseMatrix> {
     @Override
     public boolean isSymmetric() {
         for (int i = 0; i < this.getM(); i++) {
-            for (int n = row_ptr.get(i); n < row_ptr.get(i + 1); n++) {
-                if (getValue(col_index.get(n), i) != val.get(n)) {
+            for (int n = start(i); n < end(i); n++) {
+                if (getValue(col_index[n], i) != val[n]) {
                     return false;
                 }
             }
@@ -238,50 +699,215 @@ public class SparseMatrix extends Matrix<SparseMatrix> {
         scale_partial_row(this, scalar, row);
     }
 
+    /**
+     * overwrites an existing entry or inserts a new one. Inserting moves all following entries by one,
+     * so matrices should be assembled row by row (or with a {@link HashMatrix}) and frozen afterwards.
+     * Zeros are not inserted.
+     */
     @Override
     public void setValue(int m, int n, double value) {
-        int insertIndex = row_ptr.get(m + 1);
-        for (int i = row_ptr.get(m); i < row_ptr.get(m + 1); i++) {
-            if (col_index.get(i) < n) {
-                continue;
-            } else if (col_index.get(i) == n) {
-                val.set(i, value);
-                return;
-            } else if (col_index.get(i) > n) {
-                insertIndex = i;
-                break;
-            }
+        checkWritable();
+        int index = Arrays.binarySearch(col_index, start(m), end(m), n);
+        if (index >= 0) {
+            val[index] = value;
+            return;
         }
-        col_index.add(insertIndex, n);
-        val.add(insertIndex, value);
-        for (int i = m + 1; i < getM() + 1; i++) {
-            row_ptr.set(i, row_ptr.get(i) + 1);
+        if (value == 0) return;
+        if (frozen) throw new NotSupportedOperation();
+        insert(m, -index - 1, n, value);
+    }
+
+    private void insert(int row, int index, int column, double value) {
+        int nnz = row_ptr[this.getM()];
+        if (nnz == val.length) {
+            //amortised growth, the arrays are trimmed by freeze()
+            int capacity = Math.max(16, nnz + (nnz >> 1));
+            val = Arrays.copyOf(val, capacity);
+            col_index = Arrays.copyOf(col_index, capacity);
         }
+        System.arraycopy(val, index, val, index + 1, nnz - index);
+        System.arraycopy(col_index, index, col_index, index + 1, nnz - index);
+        val[index] = value;
+        col_index[index] = column;
+        for (int i = row + 1; i < getM() + 1; i++) {
+            row_ptr[i]++;
+        }
+        partition = null;
+    }
+
+    /**
+     * splits the rows into the given number of consecutive blocks with about the same amount of work.
+     * The work of a row is its number of entries plus one, so blocks of many short rows and blocks containing
+     * a few long rows take about the same time. The split points are found by a binary search along the
+     * merge path of row_ptr and the entries (row r ends at r + row_ptr[r + 1] on that path).
+     * The result is cached until the sparsity pattern changes.
+     * @return  parts + 1 row indices, block i covers the rows [result[i], result[i+1])
+     */
+    public int[] getRowPartition(int parts) {
+        int[] cached = partition;
+        if (cached != null && cached.length == parts + 1) return cached;
+        int[] result = new int[parts + 1];
+        long total = (long) this.getM() + storageSize();
+        int base = start(0);
+        for (int p = 1; p < parts; p++) {
+            long diagonal = total * p / parts;
+            //first row whose end on the merge path lies beyond the diagonal
+            int low = result[p - 1];
+            int high = this.getM();
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (mid + 1 + (long) end(mid) - base <= diagonal) low = mid + 1;
+                else high = mid;
+            }
+            result[p] = low;
+        }
+        result[parts] = this.getM();
+        partition = result;
+        return result;
     }
 
+    /**
+     * parallel SpMV which hands every thread a block of rows with about the same number of entries
+     * (see {@link #getRowPartition(int)}) instead of the same number of rows. Every row is still summed up
+     * by one thread in the order of its entries, so the result is bitwise identical to the serial product.
+     */
     @Override
-    public double getValue(int m, int n) {
-        for (int i = row_ptr.get(m); i < row_ptr.get(m + 1); i++) {
-            if (col_index.get(i) == n) {
-                return val.get(i);
+    public DenseVector mulInto(Vector<?> vec, DenseVector target, Pool pool) {
+        if (vec.getSize() != this.getN() || target.getSize() != this.getM()) throw new RuntimeException();
+        int threads = pool.getActiveThreads();
+        int[] blocks = getRowPartition(threads);
+        PoolFunction function = (index, core) -> {
+            for (int i = blocks[index]; i < blocks[index + 1]; i++) {
+                mul_partial_row(target, vec, i);
             }
+        };
+        pool.executeTotal(function, threads, false);
+        return target;
+    }
+
+    /**
+     * rows of the sparse product which are claimed by a thread at once
+     */
+    public static int SPGEMM_CHUNK = 256;
+
+    /**
+     * sparse product this * b in csr format (Gustavson). A symbolic pass counts the entries of every row of the
+     * result, a numeric pass sums up the products of every row in a dense accumulator of the length b.getN().
+     * Explicit zeros caused by cancellation are kept.
+     */
+    public SparseMatrix mulSparse(SparseMatrix b) {
+        return mulSparse(b, null);
+    }
+
+    /**
+     * parallel sparse product. The rows are claimed in chunks of SPGEMM_CHUNK rows because the work of a row
+     * depends on the lengths of the rows of b it touches. Every thread owns its accumulator and the products
+     * of a row are summed up in the same order as in the serial product, so the results are bitwise identical.
+     */
+    public SparseMatrix mulSparse(SparseMatrix b, Pool pool) {
+        if (this.getN() != b.getM()) throw new RuntimeException("dimensions do not match");
+        int m = this.getM();
+        int threads = pool == null ? 1 : pool.getActiveThreads();
+        int[][] markers = new int[threads][];
+        double[][] accumulators = new double[threads][];
+        int chunks = (m + SPGEMM_CHUNK - 1) / SPGEMM_CHUNK;
+
+        //symbolic pass: number of distinct columns per row, stored at row_ptr[row + 1]
+        int[] result_ptr = new int[m + 1];
+        execute(pool, chunks, (chunk, core) -> {
+            int[] marker = marker(markers, core, b.getN());
+            for (int i = chunk * SPGEMM_CHUNK; i < Math.min(m, (chunk + 1) * SPGEMM_CHUNK); i++) {
+                int count = 0;
+                for (int n = start(i); n < end(i); n++) {
+                    int k = col_index[n];
+                    for (int l = b.start(k); l < b.end(k); l++) {
+                        int c = b.col_index[l];
+                        if (marker[c] != i) {
+                            marker[c] = i;
+                            count++;
+                        }
+                    }
+                }
+                result_ptr[i + 1] = count;
+            }
+        });
+        for (int i = 0; i < m; i++) {
+            result_ptr[i + 1] += result_ptr[i];
         }
-        return 0;
+        int[] result_index = new int[result_ptr[m]];
+        double[] result_val = new double[result_ptr[m]];
+
+        //numeric pass, marks the columns of row i with ~i so the marks of the symbolic pass do not need to be reset
+        execute(pool, chunks, (chunk, core) -> {
+            int[] marker = marker(markers, core, b.getN());
+            if (accumulators[core] == null) accumulators[core] = new double[b.getN()];
+            double[] acc = accumulators[core];
+            for (int i = chunk * SPGEMM_CHUNK; i < Math.min(m, (chunk + 1) * SPGEMM_CHUNK); i++) {
+                int pos = result_ptr[i];
+                for (int n = start(i); n < end(i); n++) {
+                    int k = col_index[n];
+                    double v = val[n];
+                    for (int l = b.start(k); l < b.end(k); l++) {
+                        int c = b.col_index[l];
+                        if (marker[c] != ~i) {
+                            marker[c] = ~i;
+                            acc[c] = v * b.val[l];
+                            result_index[pos++] = c;
+                        } else {
+                            acc[c] += v * b.val[l];
+                        }
+                    }
+                }
+                Arrays.sort(result_index, result_ptr[i], pos);
+                for (int p = result_ptr[i]; p < pos; p++) {
+                    result_val[p] = acc[result_index[p]];
+                }
+            }
+        });
+        return new SparseMatrix(m, b.getN(), result_ptr, result_index, result_val);
+    }
+
+    private static int[] marker(int[][] markers, int core, int n) {
+        if (markers[core] == null) {
+            markers[core] = new int[n];
+            Arrays.fill(markers[core], Integer.MIN_VALUE);
+        }
+        return markers[core];
+    }
+
+    /**
+     * runs the function for all indices in [0, range) on the pool or on the calling thread if there is no pool
+     */
+    static void execute(Pool pool, int range, PoolFunction function) {
+        if (pool == null) {
+            for (int i = 0; i < range; i++) {
+                function.execute(i, 0);
+            }
+        } else {
+            pool.executeSequential(function, range, false);
+        }
+    }
+
+    @Override
+    public double getValue(int m, int n) {
+        int index = Arrays.binarySearch(col_index, start(m), end(m), n);
+        return index >= 0 ? val[index] : 0;
     }
 
     @Override
     public boolean hasValue(double v) {
-        for (double va : val) {
-            if (va == v) return true;
+        for (int i = start(0); i < end(this.getM() - 1); i++) {
+            if (val[i] == v) return true;
         }
         return false;
     }
 
     @Override
     public void replaceValue(double v, double r) {
-        for(int i = 0; i < val.size(); i++){
-            if(val.get(i) == v){
-                val.set(i,r);
+        checkWritable();
+        for(int i = start(0); i < end(this.getM() - 1); i++){
+            if(val[i] == v){
+                val[i] = r;
             }
         }
     }
@@ -289,9 +915,13 @@ public class SparseMatrix extends Matrix<SparseMatrix> {
     @Override
     public SparseMatrix copy() {
         SparseMatrix m = new SparseMatrix(this.getM(), this.getN());
-        m.val = new ArrayList<>(this.val);
-        m.row_ptr = new ArrayList<>(row_ptr);
-        m.col_index = new ArrayList<>(col_index);
+        int base = start(0);
+        int end = end(this.getM() - 1);
+        m.val = Arrays.copyOfRange(this.val, base, end);
+        m.col_index = Arrays.copyOfRange(col_index, base, end);
+        for (int i = 0; i <= this.getM(); i++) {
+            m.row_ptr[i] = row_ptr[i + row_offset] - base;
+        }
         return m;
     }
 
@@ -299,8 +929,8 @@ public class SparseMatrix extends Matrix<SparseMatrix> {
     public DenseMatrix copyToDense() {
         DenseMatrix matrix = new DenseMatrix(this.getM(), this.getN());
         for (int m = 0; m < this.getM(); m++) {
-            for (int i = row_ptr.get(m); i < row_ptr.get(m + 1); i++) {
-                matrix.setValue(m, col_index.get(i), val.get(i));
+            for (int i = start(m); i < end(m); i++) {
+                matrix.setValue(m, col_index[i], val[i]);
             }
         }
         return matrix;
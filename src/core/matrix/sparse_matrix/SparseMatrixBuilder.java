@@ -0,0 +1,302 @@
+package core.matrix.sparse_matrix;
+
+import core.threads.Pool;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * assembles a {@link SparseMatrix} from (row, column, value) triplets.
+ *
+ * Every thread which adds triplets gets its own buffer of primitive arrays, so threads can add concurrently
+ * without locking. The buffers belong to the builder and not to the threads, so they are garbage collected
+ * together with the builder even if the threads live on. {@link #build()} sorts the triplets with two stable counting sorts (by column, then by row)
+ * and sums up duplicates, which takes O(nnz + m + n) and can use the threads of a pool.
+ *
+ * Duplicates are summed in the order of the buffers and the order in which they were added to a buffer.
+ * Entries are kept even if their value is zero.
+ */
+public class SparseMatrixBuilder {
+
+    /**
+     * initial number of triplets of a buffer
+     */
+    public static int INITIAL_CAPACITY = 1024;
+
+    /**
+     * rows which are compressed by a thread at once when duplicates are summed
+     */
+    public static int CHUNK = 1024;
+
+    private final int M;
+    private final int N;
+
+    private final List<Buffer> buffers = new ArrayList<>();
+    private final Map<Thread, Buffer> local = new ConcurrentHashMap<>();
+
+    public SparseMatrixBuilder(int m, int n) {
+        this.M = m;
+        this.N = n;
+    }
+
+    /**
+     * the triplets added by one thread. A buffer must only be used by the thread it was returned to.
+     */
+    public static final class Buffer {
+        private final int M;
+        private final int N;
+        private int[] rows = new int[INITIAL_CAPACITY];
+        private int[] cols = new int[INITIAL_CAPACITY];
+        private double[] vals = new double[INITIAL_CAPACITY];
+        private int size;
+
+        private Buffer(int m, int n) {
+            this.M = m;
+            this.N = n;
+        }
+
+        public void add(int row, int col, double value) {
+            if (row < 0 || row >= M || col < 0 || col >= N) throw new IndexOutOfBoundsException();
+            if (size == rows.length) {
+                int capacity = Math.max(16, size * 2);
+                rows = Arrays.copyOf(rows, capacity);
+                cols = Arrays.copyOf(cols, capacity);
+                vals = Arrays.copyOf(vals, capacity);
+            }
+            rows[size] = row;
+            cols[size] = col;
+            vals[size] = value;
+            size++;
+        }
+
+        public int size() {
+            return size;
+        }
+    }
+
+    private synchronized Buffer register(Thread thread) {
+        Buffer buffer = new Buffer(M, N);
+        buffers.add(buffer);
+        return buffer;
+    }
+
+    /**
+     * the buffer of the calling thread. Keeping it in a local variable avoids the lookup of
+     * {@link #add(int, int, double)} in hot loops.
+     */
+    public Buffer buffer() {
+        Thread thread = Thread.currentThread();
+        Buffer buffer = local.get(thread);
+        return buffer != null ? buffer : local.computeIfAbsent(thread, this::register);
+    }
+
+    /**
+     * adds the triplet to the buffer of the calling thread. May be called by several threads at once.
+     */
+    public void add(int row, int col, double value) {
+        buffer().add(row, col, value);
+    }
+
+    /**
+     * number of triplets added so far, including duplicates
+     */
+    public synchronized long size() {
+        long size = 0;
+        for (Buffer b : buffers) {
+            size += b.size;
+        }
+        return size;
+    }
+
+    /**
+     * removes all triplets. Must not be called while other threads are adding.
+     */
+    public synchronized void clear() {
+        for (Buffer b : buffers) {
+            b.size = 0;
+        }
+    }
+
+    public int getM() {
+        return M;
+    }
+
+    public int getN() {
+        return N;
+    }
+
+    public SparseMatrix build() {
+        return build(null);
+    }
+
+    /**
+     * sorts the triplets into a csr matrix using the threads of the pool. Must not be called while other threads
+     * are adding. The builder keeps its triplets, so more triplets can be added and the matrix can be built again.
+     */
+    public synchronized SparseMatrix build(Pool pool) {
+        Buffer[] sources = buffers.toArray(new Buffer[0]);
+        long total = size();
+        if (total > Integer.MAX_VALUE) throw new RuntimeException("too many entries");
+        int nnz = (int) total;
+        int parts = pool == null ? 1 : pool.getActiveThreads();
+
+        //segments of at most nnz / parts triplets, so one large buffer is still sorted by all threads
+        int length = Math.max(1, (nnz + parts - 1) / parts);
+        int segments = 0;
+        for (Buffer b : sources) {
+            segments += (b.size + length - 1) / length;
+        }
+        int[][] rows = new int[segments][];
+        int[][] cols = new int[segments][];
+        double[][] vals = new double[segments][];
+        int[] start = new int[segments];
+        int[] end = new int[segments];
+        int s = 0;
+        for (Buffer b : sources) {
+            for (int k = 0; k < b.size; k += length, s++) {
+                rows[s] = b.rows;
+                cols[s] = b.cols;
+                vals[s] = b.vals;
+                start[s] = k;
+                end[s] = Math.min(b.size, k + length);
+            }
+        }
+
+        //stable sort by column, then stable sort by row. Afterwards the columns within every row are sorted.
+        int[] sortedRows = new int[nnz];
+        int[] sortedCols = new int[nnz];
+        double[] sortedVals = new double[nnz];
+        countingSort(cols, rows, vals, start, end, N, sortedCols, sortedRows, sortedVals, pool);
+
+        int[][] single_rows = new int[parts][];
+        int[][] single_cols = new int[parts][];
+        double[][] single_vals = new double[parts][];
+        int[] single_start = new int[parts];
+        int[] single_end = new int[parts];
+        for (int p = 0; p < parts; p++) {
+            single_rows[p] = sortedRows;
+            single_cols[p] = sortedCols;
+            single_vals[p] = sortedVals;
+            single_start[p] = (int) ((long) p * nnz / parts);
+            single_end[p] = (int) ((long) (p + 1) * nnz / parts);
+        }
+        int[] col_index = new int[nnz];
+        double[] val = new double[nnz];
+        int[] row_ptr = countingSort(single_rows, single_cols, single_vals, single_start, single_end, M,
+                null, col_index, val, pool);
+        return sumDuplicates(row_ptr, col_index, val, pool);
+    }
+
+    /**
+     * stable counting sort of the segments [start[s], end[s]) of the arrays key[s], other[s] and val[s].
+     * Every segment counts its keys, the prefix sum over (key, segment) gives every segment its own positions
+     * in every bucket, so the segments are scattered in parallel.
+     * @param keyDst    may be null if the sorted keys are not needed
+     * @return  the bucket pointers, bucket k is located at [result[k], result[k+1])
+     */
+    private static int[] countingSort(int[][] key, int[][] other, double[][] val, int[] start, int[] end, int keys,
+                                      int[] keyDst, int[] otherDst, double[] valDst, Pool pool) {
+        int segments = start.length;
+        int[][] counts = new int[segments][];
+        SparseMatrix.execute(pool, segments, (s, core) -> {
+            int[] count = new int[keys];
+            int[] k = key[s];
+            for (int i = start[s]; i < end[s]; i++) {
+                count[k[i]]++;
+            }
+            counts[s] = count;
+        });
+        int[] ptr = new int[keys + 1];
+        int pos = 0;
+        for (int k = 0; k < keys; k++) {
+            ptr[k] = pos;
+            for (int s = 0; s < segments; s++) {
+                int c = counts[s][k];
+                counts[s][k] = pos;
+                pos += c;
+            }
+        }
+        ptr[keys] = pos;
+        SparseMatrix.execute(pool, segments, (s, core) -> {
+            int[] next = counts[s];
+            int[] k = key[s];
+            int[] o = other[s];
+            double[] v = val[s];
+            for (int i = start[s]; i < end[s]; i++) {
+                int p = next[k[i]]++;
+                if (keyDst != null) keyDst[p] = k[i];
+                otherDst[p] = o[i];
+                valDst[p] = v[i];
+            }
+        });
+        return ptr;
+    }
+
+    /**
+     * sums up consecutive entries with the same column within every row
+     */
+    private SparseMatrix sumDuplicates(int[] row_ptr, int[] col_index, double[] val, Pool pool) {
+        int chunks = (M + CHUNK - 1) / CHUNK;
+        int[] unique_ptr = new int[M + 1];
+        SparseMatrix.execute(pool, chunks, (chunk, core) -> {
+            for (int i = chunk * CHUNK; i < Math.min(M, (chunk + 1) * CHUNK); i++) {
+                int count = 0;
+                for (int k = row_ptr[i]; k < row_ptr[i + 1]; k++) {
+                    if (k == row_ptr[i] || col_index[k] != col_index[k - 1]) count++;
+                }
+                unique_ptr[i + 1] = count;
+            }
+        });
+        for (int i = 0; i < M; i++) {
+            unique_ptr[i + 1] += unique_ptr[i];
+        }
+        if (unique_ptr[M] == row_ptr[M]) return new SparseMatrix(M, N, row_ptr, col_index, val);
+
+        int[] unique_index = new int[unique_ptr[M]];
+        double[] unique_val = new double[unique_ptr[M]];
+        SparseMatrix.execute(pool, chunks, (chunk, core) -> {
+            for (int i = chunk * CHUNK; i < Math.min(M, (chunk + 1) * CHUNK); i++) {
+                int p = unique_ptr[i] - 1;
+                for (int k = row_ptr[i]; k < row_ptr[i + 1]; k++) {
+                    if (k == row_ptr[i] || col_index[k] != col_index[k - 1]) {
+                        unique_index[++p] = col_index[k];
+                        unique_val[p] = val[k];
+                    } else {
+                        unique_val[p] += val[k];
+                    }
+                }
+            }
+        });
+        return new SparseMatrix(M, N, unique_ptr, unique_index, unique_val);
+    }
+
+    public static void main(String[] args) {
+        int n = 1_000_000;
+        int perRow = 20;
+        Pool pool = new Pool(Pool.getAvailableProcessors());
+        try {
+            for (int rep = 0; rep < 3; rep++) {
+                SparseMatrixBuilder builder = new SparseMatrixBuilder(n, n);
+                long time = System.currentTimeMillis();
+                pool.executeSequential((index, core) -> {
+                    Buffer buffer = builder.buffer();
+                    java.util.Random random = new java.util.Random(index);
+                    for (int i = index * 1000; i < Math.min(n, (index + 1) * 1000); i++) {
+                        for (int k = 0; k < perRow; k++) {
+                            buffer.add(i, random.nextInt(n), 1);
+                        }
+                    }
+                }, (n + 999) / 1000, false);
+                long added = System.currentTimeMillis();
+                SparseMatrix matrix = builder.build(pool);
+                System.out.println("triplets: " + builder.size() + "  entries: " + matrix.storageSize()
+                        + "  add[ms]: " + (added - time) + "  build[ms]: " + (System.currentTimeMillis() - added));
+            }
+        } finally {
+            pool.stop();
+        }
+    }
+}
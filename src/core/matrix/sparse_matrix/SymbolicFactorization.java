@@ -0,0 +1,277 @@
+package core.matrix.sparse_matrix;
+
+import visuals.Printer;
+
+import java.util.Arrays;
+
+/**
+ * symbolic cholesky analysis of the pattern of A + A^T under a symmetric permutation.
+ *
+ * The elimination tree and the column counts of L are computed without forming L (Gilbert, Ng and Peyton),
+ * in O(nnz(A) * alpha(n)) time, so the fill of an ordering is known before a factorization is attempted.
+ * Numerical cancellation is ignored, the counts are exact for the pattern and include the diagonal.
+ *
+ * etree and columnCounts are ported from cs_etree, cs_counts and cs_leaf of CSparse, Copyright (c) 2006-2022
+ * Timothy A. Davis. CSparse is licensed under the GNU Lesser General Public License, version 2.1 or later, and
+ * these methods are distributed under the same license (see {@link Ordering}).
+ */
+public class SymbolicFactorization {
+
+    private final int[] permutation;
+    private final int[] parent;
+    private final int[] counts;
+    private final long nnz;
+
+    private SymbolicFactorization(int[] permutation, int[] parent, int[] counts) {
+        this.permutation = permutation;
+        this.parent = parent;
+        this.counts = counts;
+        long nnz = 0;
+        for (int c : counts) {
+            nnz += c;
+        }
+        this.nnz = nnz;
+    }
+
+    /**
+     * analysis for the approximate minimum degree ordering of a
+     */
+    public static SymbolicFactorization analyze(SparseMatrix a) {
+        return analyze(a, Ordering.amd(a));
+    }
+
+    /**
+     * analysis for the given ordering, new index -> old index. p may be null for the natural order.
+     */
+    public static SymbolicFactorization analyze(SparseMatrix a, int[] p) {
+        CompressedArrays g = Ordering.adjacency(a);
+        int n = a.getM();
+        if (p == null) {
+            p = new int[n];
+            for (int i = 0; i < n; i++) p[i] = i;
+        }
+        if (p.length != n) throw new RuntimeException("permutation has the wrong length");
+        CompressedArrays c = permute(g, p, Ordering.inverse(p));
+        int[] parent = etree(c.ptr, c.index, n);
+        int[] post = postorder(parent, n);
+        return new SymbolicFactorization(p, parent, columnCounts(c.ptr, c.index, parent, post, n));
+    }
+
+    /**
+     * the graph g with node p[i] renamed to i
+     */
+    private static CompressedArrays permute(CompressedArrays g, int[] p, int[] pinv) {
+        int n = p.length;
+        int[] ptr = new int[n + 1];
+        int[] index = new int[g.ptr[n]];
+        for (int i = 0; i < n; i++) {
+            int old = p[i];
+            int pos = ptr[i];
+            for (int e = g.ptr[old]; e < g.ptr[old + 1]; e++) {
+                index[pos++] = pinv[g.index[e]];
+            }
+            ptr[i + 1] = pos;
+        }
+        return new CompressedArrays(ptr, index, null);
+    }
+
+    /**
+     * elimination tree of a symmetric pattern, parent[j] is the first off-diagonal row of column j of L or -1.
+     * Only the neighbours i < k of node k are used, the paths to the roots are compressed through ancestor.
+     */
+    static int[] etree(int[] ptr, int[] adj, int n) {
+        int[] parent = new int[n];
+        int[] ancestor = new int[n];
+        for (int k = 0; k < n; k++) {
+            parent[k] = -1;
+            ancestor[k] = -1;
+            for (int e = ptr[k]; e < ptr[k + 1]; e++) {
+                int i = adj[e];
+                while (i != -1 && i < k) {
+                    int next = ancestor[i];
+                    ancestor[i] = k;
+                    if (next == -1) parent[i] = k;
+                    i = next;
+                }
+            }
+        }
+        return parent;
+    }
+
+    /**
+     * postorder of a forest given by its parent array
+     */
+    static int[] postorder(int[] parent, int n) {
+        int[] head = new int[n];
+        int[] next = new int[n];
+        int[] stack = new int[n];
+        int[] post = new int[n];
+        Arrays.fill(head, -1);
+        for (int j = n - 1; j >= 0; j--) {
+            if (parent[j] == -1) continue;
+            next[j] = head[parent[j]];
+            head[parent[j]] = j;
+        }
+        int k = 0;
+        for (int j = 0; j < n; j++) {
+            if (parent[j] == -1) k = Ordering.postorder(j, k, head, next, post, stack);
+        }
+        return post;
+    }
+
+    /**
+     * number of entries in every column of L, including the diagonal. Row i of L is the union of the paths from
+     * the neighbours j < i to i in the elimination tree, so column j gains one entry for every row subtree it
+     * lies on. The leaves of the row subtrees are found in postorder and the overlaps are subtracted at the
+     * least common ancestors of consecutive leaves.
+     */
+    static int[] columnCounts(int[] ptr, int[] adj, int[] parent, int[] post, int n) {
+        int[] delta = new int[n];
+        int[] ancestor = new int[n];
+        int[] maxfirst = new int[n];
+        int[] prevleaf = new int[n];
+        int[] first = new int[n];
+        Arrays.fill(maxfirst, -1);
+        Arrays.fill(prevleaf, -1);
+        Arrays.fill(first, -1);
+        for (int k = 0; k < n; k++) {
+            int j = post[k];
+            delta[j] = first[j] == -1 ? 1 : 0;
+            for (; j != -1 && first[j] == -1; j = parent[j]) {
+                first[j] = k;
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            ancestor[i] = i;
+        }
+        for (int k = 0; k < n; k++) {
+            int j = post[k];
+            if (parent[j] != -1) delta[parent[j]]--;
+            for (int e = ptr[j]; e < ptr[j + 1]; e++) {
+                int i = adj[e];
+                //j is a leaf of the row subtree of i if it is not below the previous leaf
+                if (i <= j || first[j] <= maxfirst[i]) continue;
+                maxfirst[i] = first[j];
+                int jprev = prevleaf[i];
+                prevleaf[i] = j;
+                delta[j]++;
+                if (jprev == -1) continue;
+                int q = jprev;
+                while (q != ancestor[q]) q = ancestor[q];
+                for (int s = jprev; s != q; ) {
+                    int sparent = ancestor[s];
+                    ancestor[s] = q;
+                    s = sparent;
+                }
+                delta[q]--;
+            }
+            if (parent[j] != -1) ancestor[j] = parent[j];
+        }
+        for (int k = 0; k < n; k++) {
+            int j = post[k];
+            if (parent[j] != -1) delta[parent[j]] += delta[j];
+        }
+        return delta;
+    }
+
+    /**
+     * the ordering, new index -> old index
+     */
+    public int[] getPermutation() {
+        return permutation;
+    }
+
+    /**
+     * elimination tree in the new numbering, -1 for the roots
+     */
+    public int[] getParent() {
+        return parent;
+    }
+
+    /**
+     * number of entries of every column of L in the new numbering, including the diagonal
+     */
+    public int[] getColumnCounts() {
+        return counts;
+    }
+
+    /**
+     * predicted number of entries of L, including the diagonal
+     */
+    public long getNnz() {
+        return nnz;
+    }
+
+    /**
+     * floating point operations of a left looking cholesky factorization with this pattern
+     */
+    public double getFlops() {
+        double flops = 0;
+        for (int c : counts) {
+            flops += (double) c * c;
+        }
+        return flops;
+    }
+
+    /**
+     * height of the elimination tree. Columns on a path to the root depend on each other, so the height bounds
+     * the parallelism of the factorization
+     */
+    public int getHeight() {
+        int n = parent.length;
+        int[] depth = new int[n];
+        int height = 0;
+        //parents always have a larger index than their children
+        for (int j = n - 1; j >= 0; j--) {
+            depth[j] = parent[j] == -1 ? 1 : depth[parent[j]] + 1;
+            height = Math.max(height, depth[j]);
+        }
+        return height;
+    }
+
+    public static void main(String[] args) {
+        int m = 40;
+        int n = m * m * m;
+        HashMatrix laplace = new HashMatrix(n, n);
+        int[] shuffle = new int[n];
+        for (int i = 0; i < n; i++) shuffle[i] = i;
+        java.util.Random random = new java.util.Random(1);
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int t = shuffle[i];
+            shuffle[i] = shuffle[j];
+            shuffle[j] = t;
+        }
+        for (int x = 0; x < m; x++) {
+            for (int y = 0; y < m; y++) {
+                for (int z = 0; z < m; z++) {
+                    int i = shuffle[(x * m + y) * m + z];
+                    laplace.setValue(i, i, 6);
+                    if (x > 0) laplace.setValue(i, shuffle[((x - 1) * m + y) * m + z], -1);
+                    if (x < m - 1) laplace.setValue(i, shuffle[((x + 1) * m + y) * m + z], -1);
+                    if (y > 0) laplace.setValue(i, shuffle[(x * m + y - 1) * m + z], -1);
+                    if (y < m - 1) laplace.setValue(i, shuffle[(x * m + y + 1) * m + z], -1);
+                    if (z > 0) laplace.setValue(i, shuffle[(x * m + y) * m + z - 1], -1);
+                    if (z < m - 1) laplace.setValue(i, shuffle[(x * m + y) * m + z + 1], -1);
+                }
+            }
+        }
+        SparseMatrix a = new SparseMatrix(laplace);
+        for (int rep = 0; rep < 3; rep++) {
+            long time = System.currentTimeMillis();
+            int[] rcm = Ordering.rcm(a);
+            long rcmTime = System.currentTimeMillis() - time;
+            time = System.currentTimeMillis();
+            int[] amd = Ordering.amd(a);
+            long amdTime = System.currentTimeMillis() - time;
+            time = System.currentTimeMillis();
+            SymbolicFactorization natural = analyze(a, null);
+            long analyzeTime = System.currentTimeMillis() - time;
+            Printer.print_symbolic("natural", a.storageSize(), natural.getNnz(), natural.getFlops(), analyzeTime);
+            SymbolicFactorization reversed = analyze(a, rcm);
+            Printer.print_symbolic("rcm", a.storageSize(), reversed.getNnz(), reversed.getFlops(), rcmTime);
+            SymbolicFactorization minimum = analyze(a, amd);
+            Printer.print_symbolic("amd", a.storageSize(), minimum.getNnz(), minimum.getFlops(), amdTime);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package core.memory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * direct byte buffers and memory mapped files of java.nio. Their memory can not be freed explicitly without
+ * risking a crash of a thread which still holds a buffer, so {@link #close()} does nothing and the memory is
+ * reclaimed by the garbage collector once the buffers are unreachable.
+ */
+public class DirectMemory implements MemoryBackend {
+
+    @Override
+    public ByteBuffer allocate(int bytes, int alignment) {
+        //alignedSlice rounds both ends to the alignment, so the padding must cover the start and the end
+        int padded = Math.addExact((bytes + alignment - 1) / alignment * alignment, alignment);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(padded);
+        return buffer.alignedSlice(alignment).limit(bytes).slice();
+    }
+
+    @Override
+    public ByteBuffer map(Path path, long position, long size, boolean writable) throws IOException {
+        try (FileChannel channel = writable
+                ? FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(path, StandardOpenOption.READ)) {
+            return channel.map(writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY,
+                    position, size);
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,130 @@
+package core.memory;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+
+/**
+ * a sequence of rows of doubles which lives outside of the java heap.
+ *
+ * A single buffer is limited to 2^31 bytes, so the rows are distributed over several buffers ("chunks").
+ * A row never crosses the border of a chunk, so a kernel working on a row can fetch the chunk once
+ * and then address it with {@link #index(long, int)}.
+ *
+ * Once the storage is released (its arena is closed) every access throws an IllegalStateException. Whether chunks
+ * which were fetched before stay valid depends on the backend of the arena (see {@link MemoryArena}).
+ */
+public class DoubleStorage {
+
+    /**
+     * maximum size of a single chunk in bytes
+     */
+    public static int CHUNK_BYTES = 1 << 30;
+
+    private volatile DoubleBuffer[] chunks;
+    private volatile ByteBuffer[] buffers;
+    private final long rows;
+    private final int rowLength;
+    private final int rowsPerChunk;
+
+    DoubleStorage(ByteBuffer[] buffers, long rows, int rowLength, int rowsPerChunk) {
+        this(buffers, rows, rowLength, rowsPerChunk, ByteOrder.nativeOrder());
+    }
+
+    DoubleStorage(ByteBuffer[] buffers, long rows, int rowLength, int rowsPerChunk, ByteOrder order) {
+        this.rows = rows;
+        this.rowLength = rowLength;
+        this.rowsPerChunk = rowsPerChunk;
+        this.buffers = buffers;
+        this.chunks = new DoubleBuffer[buffers.length];
+        for (int i = 0; i < buffers.length; i++) {
+            chunks[i] = buffers[i].order(order).asDoubleBuffer();
+        }
+    }
+
+    /**
+     * number of rows which fit into one chunk
+     */
+    static int rowsPerChunk(int rowLength) {
+        long perChunk = (CHUNK_BYTES / Double.BYTES) / Math.max(1, rowLength);
+        if (perChunk < 1) throw new RuntimeException("a single row does not fit into a chunk");
+        return (int) Math.min(perChunk, Integer.MAX_VALUE);
+    }
+
+    /**
+     * the chunk containing the given row. Throws an IllegalStateException if the storage has been released.
+     */
+    public DoubleBuffer chunk(long row) {
+        return chunks()[(int) (row / rowsPerChunk)];
+    }
+
+    private DoubleBuffer[] chunks() {
+        DoubleBuffer[] c = chunks;
+        if (c == null) throw new IllegalStateException("storage has been released");
+        return c;
+    }
+
+    /**
+     * position of the element (row, col) inside of {@link #chunk(long)}
+     */
+    public int index(long row, int col) {
+        return (int) (row % rowsPerChunk) * rowLength + col;
+    }
+
+    /**
+     * number of rows from the given row to the end of its chunk
+     */
+    public int remaining(long row) {
+        return (int) Math.min(rowsPerChunk - row % rowsPerChunk, rows - row);
+    }
+
+    public double get(long row, int col) {
+        return chunk(row).get(index(row, col));
+    }
+
+    public void set(long row, int col, double value) {
+        chunk(row).put(index(row, col), value);
+    }
+
+    public void fill(double value) {
+        for (DoubleBuffer chunk : chunks()) {
+            for (int i = 0; i < chunk.capacity(); i++) {
+                chunk.put(i, value);
+            }
+        }
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public int getRowLength() {
+        return rowLength;
+    }
+
+    public boolean isReleased() {
+        return chunks == null;
+    }
+
+    /**
+     * writes the changes of a memory mapped storage back to the file. Does nothing for other storages.
+     */
+    public void force() {
+        ByteBuffer[] b = buffers;
+        if (b == null) throw new IllegalStateException("storage has been released");
+        for (ByteBuffer buffer : b) {
+            if (buffer instanceof MappedByteBuffer && !buffer.isReadOnly()) {
+                ((MappedByteBuffer) buffer).force();
+            }
+        }
+    }
+
+    /**
+     * drops the references to the chunks, the arena frees the memory afterwards
+     */
+    void release() {
+        chunks = null;
+        buffers = null;
+    }
+}
@@ -0,0 +1,135 @@
+package core.memory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * file format for dense matrices which are mapped into memory instead of being read.
+ *
+ * The file starts with a header of {@link #HEADER_BYTES} bytes followed by the raw entries:
+ * <pre>
+ * int   magic       'J' 'M' 'A' 'T'
+ * int   version
+ * int   M
+ * int   N
+ * int   layout      0 = row-major
+ * int   dtype       0 = float64
+ * int   byte order  0 = little endian, 1 = big endian
+ * </pre>
+ * The header is always little endian. The entries start at a multiple of 64 bytes, so mapping
+ * the file yields aligned rows, and opening a file only reads the header (no parse step).
+ */
+public class MatrixFile {
+
+    public static final int MAGIC = 0x54414D4A;
+    public static final int VERSION = 1;
+    public static final int HEADER_BYTES = 64;
+
+    public static final int LAYOUT_ROW_MAJOR = 0;
+    public static final int DTYPE_FLOAT64 = 0;
+
+    private final Path path;
+    private final int m;
+    private final int n;
+    private final int layout;
+    private final int dtype;
+    private final ByteOrder order;
+
+    private MatrixFile(Path path, int m, int n, int layout, int dtype, ByteOrder order) {
+        this.path = path;
+        this.m = m;
+        this.n = n;
+        this.layout = layout;
+        this.dtype = dtype;
+        this.order = order;
+    }
+
+    /**
+     * creates (or overwrites) a file for a m x n matrix. The entries are initialised to 0.
+     */
+    public static MatrixFile create(Path path, int m, int n) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(m).putInt(n).putInt(LAYOUT_ROW_MAJOR).putInt(DTYPE_FLOAT64)
+                .putInt(ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN ? 0 : 1);
+        header.clear();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (header.hasRemaining()) channel.write(header);
+            //sparse file: the entries are only backed by disk pages once they are written
+            long size = HEADER_BYTES + (long) m * n * Double.BYTES;
+            if (size > HEADER_BYTES) channel.write(ByteBuffer.allocate(1), size - 1);
+        }
+        return new MatrixFile(path, m, n, LAYOUT_ROW_MAJOR, DTYPE_FLOAT64, ByteOrder.nativeOrder());
+    }
+
+    /**
+     * reads the header of an existing file
+     */
+    public static MatrixFile open(Path path) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (header.hasRemaining()) {
+                if (channel.read(header) < 0) throw new IOException("incomplete header: " + path);
+            }
+            header.flip();
+            if (header.getInt() != MAGIC) throw new IOException("not a matrix file: " + path);
+            int version = header.getInt();
+            if (version != VERSION) throw new IOException("unsupported version " + version + ": " + path);
+            int m = header.getInt();
+            int n = header.getInt();
+            int layout = header.getInt();
+            int dtype = header.getInt();
+            ByteOrder order = header.getInt() == 0 ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+            if (layout != LAYOUT_ROW_MAJOR || dtype != DTYPE_FLOAT64)
+                throw new IOException("unsupported layout/dtype " + layout + "/" + dtype + ": " + path);
+            if (channel.size() < HEADER_BYTES + (long) m * n * Double.BYTES)
+                throw new IOException("file is shorter than the header announces: " + path);
+            return new MatrixFile(path, m, n, layout, dtype, order);
+        }
+    }
+
+    /**
+     * maps the entries into memory. The mapping belongs to the arena and is removed when the arena is closed
+     * (see {@link MemoryArena}).
+     * @param writable  if false, writing to the storage throws a ReadOnlyBufferException
+     */
+    public DoubleStorage map(MemoryArena arena, boolean writable) throws IOException {
+        int rowsPerChunk = DoubleStorage.rowsPerChunk(n);
+        int count = (int) (((long) m + rowsPerChunk - 1) / rowsPerChunk);
+        ByteBuffer[] buffers = new ByteBuffer[count];
+        for (int i = 0; i < count; i++) {
+            long rows = Math.min(rowsPerChunk, m - (long) i * rowsPerChunk);
+            long position = HEADER_BYTES + (long) i * rowsPerChunk * n * Double.BYTES;
+            buffers[i] = arena.map(path, position, rows * n * Double.BYTES, writable);
+        }
+        return arena.register(new DoubleStorage(buffers, m, n, rowsPerChunk, order));
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public int getM() {
+        return m;
+    }
+
+    public int getN() {
+        return n;
+    }
+
+    public int getLayout() {
+        return layout;
+    }
+
+    public int getDtype() {
+        return dtype;
+    }
+
+    public ByteOrder getOrder() {
+        return order;
+    }
+}
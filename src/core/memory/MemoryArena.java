@@ -0,0 +1,120 @@
+package core.memory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+/**
+ * owns off-heap memory. Everything allocated or mapped by an arena is released together when the arena is closed.
+ * Accessing a storage of a closed arena throws an IllegalStateException.
+ *
+ * <pre>
+ * try (MemoryArena arena = new MemoryArena()) {
+ *     OffHeapDenseMatrix m = new OffHeapDenseMatrix(arena, 40000, 40000);
+ *     ...
+ * }
+ * </pre>
+ *
+ * If the jvm was started with --add-modules jdk.incubator.foreign, the memory comes from {@link ForeignMemory}
+ * and close() frees it immediately. A chunk which a kernel fetched before throws an IllegalStateException on its
+ * next access, so closing an arena while kernels are still running is safe. ForeignMemory lives in the separate
+ * source root src-foreign:
+ * <pre>
+ *     javac -d out $(find src -name '*.java')
+ *     javac --add-modules jdk.incubator.foreign -cp out -d out $(find src-foreign -name '*.java')
+ *     java --add-modules jdk.incubator.foreign -XX:MaxDirectMemorySize=16g -cp out ...
+ * </pre>
+ * Otherwise {@link DirectMemory} is used, whose memory is only reclaimed by the garbage collector.
+ *
+ * Both backends count the allocated memory against -XX:MaxDirectMemorySize, which defaults to the maximum heap
+ * size (-Xmx). Arenas larger than the heap therefore need a larger limit, e.g. a 40000 x 40000 matrix needs
+ * -XX:MaxDirectMemorySize=13g. Mapped files do not count against the limit.
+ */
+public class MemoryArena implements AutoCloseable {
+
+    /**
+     * every chunk starts at a multiple of this many bytes
+     */
+    public static int ALIGNMENT = 64;
+
+    private static final boolean FOREIGN = foreign();
+
+    private final MemoryBackend backend = FOREIGN ? newForeign() : new DirectMemory();
+    private final ArrayList<DoubleStorage> storages = new ArrayList<>();
+    private volatile boolean closed = false;
+
+    private static boolean foreign() {
+        if (Boolean.getBoolean("core.memory.foreign.disable")) return false;
+        if (!ModuleLayer.boot().findModule("jdk.incubator.foreign").isPresent()) return false;
+        try {
+            Class.forName("core.memory.ForeignMemory");
+            return true;
+        } catch (Throwable e) {
+            return false;
+        }
+    }
+
+    private static MemoryBackend newForeign() {
+        try {
+            return (MemoryBackend) Class.forName("core.memory.ForeignMemory").getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * true if close() frees the memory immediately
+     */
+    public static boolean isForeign() {
+        return FOREIGN;
+    }
+
+    /**
+     * allocates rows * rowLength doubles initialised to 0
+     */
+    public synchronized DoubleStorage allocate(long rows, int rowLength) {
+        if (closed) throw new IllegalStateException("arena is closed");
+        int rowsPerChunk = DoubleStorage.rowsPerChunk(rowLength);
+        int count = (int) ((rows + rowsPerChunk - 1) / rowsPerChunk);
+        ByteBuffer[] buffers = new ByteBuffer[count];
+        for (int i = 0; i < count; i++) {
+            long chunkRows = Math.min(rowsPerChunk, rows - (long) i * rowsPerChunk);
+            buffers[i] = backend.allocate((int) (chunkRows * rowLength * Double.BYTES), ALIGNMENT);
+        }
+        return register(new DoubleStorage(buffers, rows, rowLength, rowsPerChunk));
+    }
+
+    /**
+     * maps size bytes of the file starting at the given position. The mapping belongs to this arena.
+     */
+    synchronized ByteBuffer map(Path path, long position, long size, boolean writable) throws IOException {
+        if (closed) throw new IllegalStateException("arena is closed");
+        return backend.map(path, position, size, writable);
+    }
+
+    synchronized DoubleStorage register(DoubleStorage storage) {
+        if (closed) throw new IllegalStateException("arena is closed");
+        storages.add(storage);
+        return storage;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * releases every storage of the arena and frees the memory if the backend supports it (see {@link #isForeign()}).
+     * Later accesses through a storage throw an IllegalStateException.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        for (DoubleStorage storage : storages) {
+            storage.release();
+        }
+        storages.clear();
+        backend.close();
+    }
+}
@@ -0,0 +1,28 @@
+package core.memory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+/**
+ * provides the memory of one {@link MemoryArena}. Everything allocated or mapped by a backend belongs to it
+ * until {@link #close()} is called.
+ */
+public interface MemoryBackend {
+
+    /**
+     * a buffer of the given size initialised to 0, which starts at a multiple of alignment bytes
+     */
+    ByteBuffer allocate(int bytes, int alignment);
+
+    /**
+     * maps size bytes of the file starting at the given position
+     * @param writable  if false, the returned buffer is read-only
+     */
+    ByteBuffer map(Path path, long position, long size, boolean writable) throws IOException;
+
+    /**
+     * releases the memory. May be called while other threads still hold buffers of this backend.
+     */
+    void close();
+}
@@ -0,0 +1,44 @@
+package core.simd;
+
+/**
+ * element-wise kernels on double and float arrays. Every kernel works on n consecutive elements
+ * starting at the given offsets. The target may be one of the inputs.
+ */
+public interface KernelBackend {
+
+    void add(double[] a, int ao, double[] b, int bo, double[] target, int to, int n);
+
+    void sub(double[] a, int ao, double[] b, int bo, double[] target, int to, int n);
+
+    void hadamard(double[] a, int ao, double[] b, int bo, double[] target, int to, int n);
+
+    void scale(double[] a, int ao, double scalar, double[] target, int to, int n);
+
+    /**
+     * y = alpha * x + y
+     */
+    void axpy(double alpha, double[] x, int xo, double[] y, int yo, int n);
+
+    double dot(double[] a, int ao, double[] b, int bo, int n);
+
+    void add(float[] a, int ao, float[] b, int bo, float[] target, int to, int n);
+
+    void sub(float[] a, int ao, float[] b, int bo, float[] target, int to, int n);
+
+    void hadamard(float[] a, int ao, float[] b, int bo, float[] target, int to, int n);
+
+    void scale(float[] a, int ao, float scalar, float[] target, int to, int n);
+
+    void axpy(float alpha, float[] x, int xo, float[] y, int yo, int n);
+
+    float dot(float[] a, int ao, float[] b, int bo, int n);
+
+    /**
+     * product of one slice of a sliced ellpack matrix with x. The slice has c rows and width columns stored
+     * column by column: entry r of column j is located at offset + j * c + r.
+     * sums[r] = sum over j of val[offset + j * c + r] * x[index[offset + j * c + r]]
+     */
+    void sell(double[] val, int[] index, int offset, int c, int width, double[] x, double[] sums);
+
+    String name();
+}
@@ -0,0 +1,128 @@
+package core.simd;
+
+/**
+ * entry point for the element-wise kernels. The backend is chosen once when this class is loaded:
+ * if the jvm was started with --add-modules jdk.incubator.vector, the vector api kernels are used,
+ * otherwise the scalar loops.
+ *
+ * The vector api kernels live in the separate source root src-simd, because only they need the incubator module
+ * at compile time. src compiles on its own and runs with the scalar kernels:
+ * <pre>
+ *     javac -d out $(find src -name '*.java')
+ *     javac --add-modules jdk.incubator.vector -cp out -d out $(find src-simd -name '*.java')
+ *     java --add-modules jdk.incubator.vector -cp out ...
+ * </pre>
+ * SimdKernels is only looked up by name, so a missing class also falls back to the scalar kernels.
+ */
+public class Kernels {
+
+    private static final KernelBackend BACKEND = load();
+
+    private static KernelBackend load() {
+        if (Boolean.getBoolean("core.simd.disable")) {
+            return new ScalarKernels();
+        }
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                return (KernelBackend) Class.forName("core.simd.SimdKernels").getConstructor().newInstance();
+            } catch (Throwable e) {
+                //fall through to the scalar kernels
+            }
+        }
+        return new ScalarKernels();
+    }
+
+    public static KernelBackend getBackend() {
+        return BACKEND;
+    }
+
+    public static void add(double[] a, int ao, double[] b, int bo, double[] target, int to, int n) {
+        BACKEND.add(a, ao, b, bo, target, to, n);
+    }
+
+    public static void sub(double[] a, int ao, double[] b, int bo, double[] target, int to, int n) {
+        BACKEND.sub(a, ao, b, bo, target, to, n);
+    }
+
+    public static void hadamard(double[] a, int ao, double[] b, int bo, double[] target, int to, int n) {
+        BACKEND.hadamard(a, ao, b, bo, target, to, n);
+    }
+
+    public static void scale(double[] a, int ao, double scalar, double[] target, int to, int n) {
+        BACKEND.scale(a, ao, scalar, target, to, n);
+    }
+
+    public static void axpy(double alpha, double[] x, int xo, double[] y, int yo, int n) {
+        BACKEND.axpy(alpha, x, xo, y, yo, n);
+    }
+
+    public static double dot(double[] a, int ao, double[] b, int bo, int n) {
+        return BACKEND.dot(a, ao, b, bo, n);
+    }
+
+    public static void add(float[] a, int ao, float[] b, int bo, float[] target, int to, int n) {
+        BACKEND.add(a, ao, b, bo, target, to, n);
+    }
+
+    public static void sub(float[] a, int ao, float[] b, int bo, float[] target, int to, int n) {
+        BACKEND.sub(a, ao, b, bo, target, to, n);
+    }
+
+    public static void hadamard(float[] a, int ao, float[] b, int bo, float[] target, int to, int n) {
+        BACKEND.hadamard(a, ao, b, bo, target, to, n);
+    }
+
+    public static void scale(float[] a, int ao, float scalar, float[] target, int to, int n) {
+        BACKEND.scale(a, ao, scalar, target, to, n);
+    }
+
+    public static void axpy(float alpha, float[] x, int xo, float[] y, int yo, int n) {
+        BACKEND.axpy(alpha, x, xo, y, yo, n);
+    }
+
+    public static float dot(float[] a, int ao, float[] b, int bo, int n) {
+        return BACKEND.dot(a, ao, b, bo, n);
+    }
+
+    public static void sell(double[] val, int[] index, int offset, int c, int width, double[] x, double[] sums) {
+        BACKEND.sell(val, index, offset, c, width, x, sums);
+    }
+
+    public static void main(String[] args) {
+        System.out.println("backend: " + BACKEND.name());
+
+        int size = 1 << 22;
+        double[] x = new double[size];
+        double[] y = new double[size];
+        float[] fx = new float[size];
+        float[] fy = new float[size];
+        for (int i = 0; i < size; i++) {
+            x[i] = Math.random();
+            y[i] = Math.random();
+            fx[i] = (float) x[i];
+            fy[i] = (float) y[i];
+        }
+
+        for (int r = 0; r < 10; r++) {
+            long time = System.nanoTime();
+            for (int i = 0; i < 20; i++) {
+                axpy(1E-3, x, 0, y, 0, size);
+            }
+            double axpy = (System.nanoTime() - time) / 20d;
+            time = System.nanoTime();
+            double s = 0;
+            for (int i = 0; i < 20; i++) {
+                s += dot(x, 0, y, 0, size);
+            }
+            double dot = (System.nanoTime() - time) / 20d;
+            //axpy reads two and writes one array, dot reads two
+            time = System.nanoTime();
+            for (int i = 0; i < 20; i++) {
+                axpy(1E-3f, fx, 0, fy, 0, size);
+            }
+            double faxpy = (System.nanoTime() - time) / 20d;
+            System.out.format("axpy: %6.2f GB/s   dot: %6.2f GB/s   float axpy: %6.2f GB/s %6.2f ms -> %6.2f ms  (%.1f)%n",
+                    3d * 8 * size / axpy, 2d * 8 * size / dot, 3d * 4 * size / faxpy, axpy / 1E6, faxpy / 1E6, s);
+        }
+    }
+}
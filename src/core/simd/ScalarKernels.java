@@ -0,0 +1,113 @@
+package core.simd;
+
+/**
+ * plain loops. Used when the vector api is not available.
+ */
+public class ScalarKernels implements KernelBackend {
+
+    @Override
+    public void add(double[] a, int ao, double[] b, int bo, double[] target, int to, int n) {
+        for (int i = 0; i < n; i++) {
+            target[to + i] = a[ao + i] + b[bo + i];
+        }
+    }
+
+    @Override
+    public void sub(double[] a, int ao, double[] b, int bo, double[] target, int to, int n) {
+        for (int i = 0; i < n; i++) {
+            target[to + i] = a[ao + i] - b[bo + i];
+        }
+    }
+
+    @Override
+    public void hadamard(double[] a, int ao, double[] b, int bo, double[] target, int to, int n) {
+        for (int i = 0; i < n; i++) {
+            target[to + i] = a[ao + i] * b[bo + i];
+        }
+    }
+
+    @Override
+    public void scale(double[] a, int ao, double scalar, double[] target, int to, int n) {
+        for (int i = 0; i < n; i++) {
+            target[to + i] = a[ao + i] * scalar;
+        }
+    }
+
+    @Override
+    public void axpy(double alpha, double[] x, int xo, double[] y, int yo, int n) {
+        for (int i = 0; i < n; i++) {
+            y[yo + i] += alpha * x[xo + i];
+        }
+    }
+
+    @Override
+    public double dot(double[] a, int ao, double[] b, int bo, int n) {
+        double s = 0;
+        for (int i = 0; i < n; i++) {
+            s += a[ao + i] * b[bo + i];
+        }
+        return s;
+    }
+
+    @Override
+    public void add(float[] a, int ao, float[] b, int bo, float[] target, int to, int n) {
+        for (int i = 0; i < n; i++) {
+            target[to + i] = a[ao + i] + b[bo + i];
+        }
+    }
+
+    @Override
+    public void sub(float[] a, int ao, float[] b, int bo, float[] target, int to, int n) {
+        for (int i = 0; i < n; i++) {
+            target[to + i] = a[ao + i] - b[bo + i];
+        }
+    }
+
+    @Override
+    public void hadamard(float[] a, int ao, float[] b, int bo, float[] target, int to, int n) {
+        for (int i = 0; i < n; i++) {
+            target[to + i] = a[ao + i] * b[bo + i];
+        }
+    }
+
+    @Override
+    public void scale(float[] a, int ao, float scalar, float[] target, int to, int n) {
+        for (int i = 0; i < n; i++) {
+            target[to + i] = a[ao + i] * scalar;
+        }
+    }
+
+    @Override
+    public void axpy(float alpha, float[] x, int xo, float[] y, int yo, int n) {
+        for (int i = 0; i < n; i++) {
+            y[yo + i] += alpha * x[xo + i];
+        }
+    }
+
+    @Override
+    public float dot(float[] a, int ao, float[] b, int bo, int n) {
+        float s = 0;
+        for (int i = 0; i < n; i++) {
+            s += a[ao + i] * b[bo + i];
+        }
+        return s;
+    }
+
+    @Override
+    public void sell(double[] val, int[] index, int offset, int c, int width, double[] x, double[] sums) {
+        for (int r = 0; r < c; r++) {
+            sums[r] = 0;
+        }
+        for (int j = 0; j < width; j++) {
+            int o = offset + j * c;
+            for (int r = 0; r < c; r++) {
+                sums[r] += val[o + r] * x[index[o + r]];
+            }
+        }
+    }
+
+    @Override
+    public String name() {
+        return "scalar";
+    }
+}
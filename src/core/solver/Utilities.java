@@ -1,6 +1,7 @@
 package core.solver;
 
 import core.matrix.Matrix;
+import core.matrix.SymmetricMatrix;
 import core.matrix.dense.DenseMatrix;
 import core.matrix.sparse_matrix.HashMatrix;
 import core.matrix.sparse_matrix.SparseMatrix;
@@ -8,7 +9,10 @@ import core.solver.decomposition.CholeskyDecomposition;
 import core.solver.direct.Solver;
 import core.threads.Pool;
 import core.vector.DenseVector;
+import core.vector.Vector;
+import com.sun.management.ThreadMXBean;
 
+import java.lang.management.ManagementFactory;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -43,7 +47,10 @@ public class Utilities {
 
             A.setValue(i1,i1,A.getValue(i1,i1)+v1*v1);
             A.setValue(i1,i2,A.getValue(i1,i2)+v1*v2);
-            A.setValue(i2,i1,A.getValue(i2,i1)+v2*v1);
+            //(i1,i2) and (i2,i1) are the same entry in symmetric storage
+            if(!(A instanceof SymmetricMatrix) || i1 == i2){
+                A.setValue(i2,i1,A.getValue(i2,i1)+v2*v1);
+            }
             A.setValue(i2,i2,A.getValue(i2,i2)+v2*v2);
         }
         return A;
@@ -175,8 +182,51 @@ public class Utilities {
         pool.stop();
     }
 
+    /**
+     * runs the function count times after a warmup and prints the bytes allocated by the calling thread per run.
+     * Allocations of other threads (e.g. pool workers) are not included.
+     */
+    public static double measureAllocation(String name, Runnable func, int count){
+        if(!(ManagementFactory.getThreadMXBean() instanceof ThreadMXBean)){
+            throw new RuntimeException("allocation measurement is not supported by this jvm");
+        }
+        ThreadMXBean threadBean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        for(int i = 0; i < count; i++){
+            func.run();
+        }
+        long before = threadBean.getThreadAllocatedBytes(thread);
+        for(int i = 0; i < count; i++){
+            func.run();
+        }
+        double bytes = (threadBean.getThreadAllocatedBytes(thread) - before) / (double) count;
+        System.out.format("%-30s %12.1f bytes/run%n", name, bytes);
+        return bytes;
+    }
+
     public static void main(String[] args) {
 
+        DenseMatrix A = generateSymmetricPositiveDefiniteMatrix(DenseMatrix.class, 1000, 1230);
+        DenseVector p = new DenseVector(1000);
+        DenseVector x = new DenseVector(1000);
+        DenseVector r = new DenseVector(1000);
+        DenseVector Ap = new DenseVector(1000);
+        p.randomise(0,1);
+        r.randomise(0,1);
+
+        //the same conjugate gradient update x += a * p, r -= a * Ap with the allocating and the in-place operations
+        measureAllocation("cg step (allocating)", () -> {
+            DenseVector z = A.mul(p);
+            double a = p.dot(p) / p.dot(z);
+            x.self_add(p.scale(a));
+            r.self_sub(z.scale(a));
+        }, 1000);
+        measureAllocation("cg step (into)", () -> {
+            A.mulInto(p, Ap);
+            double a = p.dot(p) / p.dot(Ap);
+            Vector.axpy(a, p, x);
+            Vector.axpy(-a, Ap, r);
+        }, 1000);
 
 //        measure(5000, DenseMatrix.class, SparseMatrix.class);
 //        System.out.println();
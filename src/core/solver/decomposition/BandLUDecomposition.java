@@ -0,0 +1,123 @@
+package core.solver.decomposition;
+
+import core.matrix.band.BandMatrix;
+import core.simd.Kernels;
+import core.vector.DenseVector;
+
+/**
+ * LU decomposition with partial pivoting of a square band matrix (P * A = L * U) in O(n * kl * (kl + ku)).
+ *
+ * Row exchanges widen the upper band of U to kl + ku, so every row of U is stored with the columns
+ * r-kl ... r+kl+ku (the same scheme as LAPACK's dgbtrf, but row-major). The multipliers of the elimination
+ * step k are stored in l[k * kl ... (k+1) * kl].
+ */
+public class BandLUDecomposition {
+
+    private final int n;
+    private final int kl;
+    private final int ku;
+    private final int width;
+    private final double[] u;
+    private final double[] l;
+    private final int[] pivot;
+
+    private BandLUDecomposition(int n, int kl, int ku) {
+        this.n = n;
+        this.kl = kl;
+        this.ku = ku;
+        this.width = 2 * kl + ku + 1;
+        this.u = new double[n * width];
+        this.l = new double[n * kl];
+        this.pivot = new int[n];
+    }
+
+    private int index(int row, int col) {
+        return row * width + col - row + kl;
+    }
+
+    public static BandLUDecomposition decompose(BandMatrix matrix) {
+        if (matrix.getM() != matrix.getN()) throw new RuntimeException("matrix must be square");
+        int n = matrix.getN();
+        int kl = matrix.getLowerBandwidth();
+        int ku = matrix.getUpperBandwidth();
+        BandLUDecomposition lu = new BandLUDecomposition(n, kl, ku);
+        double[] u = lu.u;
+        for (int i = 0; i < n; i++) {
+            for (int j = matrix.first(i); j < matrix.last(i); j++) {
+                u[lu.index(i, j)] = matrix.getValue(i, j);
+            }
+        }
+        for (int k = 0; k < n; k++) {
+            int rEnd = Math.min(n, k + kl + 1);
+            int cEnd = Math.min(n, k + kl + ku + 1);
+
+            int p = k;
+            double max = Math.abs(u[lu.index(k, k)]);
+            for (int r = k + 1; r < rEnd; r++) {
+                double v = Math.abs(u[lu.index(r, k)]);
+                if (v > max) {
+                    max = v;
+                    p = r;
+                }
+            }
+            if (max == 0) throw new RuntimeException("Matrix is singular!");
+            lu.pivot[k] = p;
+            if (p != k) {
+                for (int c = k; c < cEnd; c++) {
+                    double v = u[lu.index(k, c)];
+                    u[lu.index(k, c)] = u[lu.index(p, c)];
+                    u[lu.index(p, c)] = v;
+                }
+            }
+
+            double d = u[lu.index(k, k)];
+            for (int r = k + 1; r < rEnd; r++) {
+                double f = u[lu.index(r, k)] / d;
+                lu.l[k * kl + r - k - 1] = f;
+                u[lu.index(r, k)] = 0;
+                if (f == 0 || cEnd == k + 1) continue;
+                Kernels.axpy(-f, u, lu.index(k, k + 1), u, lu.index(r, k + 1), cEnd - k - 1);
+            }
+        }
+        return lu;
+    }
+
+    /**
+     * solves A * x = b using the decomposition
+     */
+    public DenseVector solve(DenseVector b) {
+        if (b.getSize() != n) throw new RuntimeException();
+        double[] x = new DenseVector(b).getValues();
+        for (int k = 0; k < n; k++) {
+            int p = pivot[k];
+            if (p != k) {
+                double v = x[k];
+                x[k] = x[p];
+                x[p] = v;
+            }
+            for (int r = k + 1; r < Math.min(n, k + kl + 1); r++) {
+                x[r] -= l[k * kl + r - k - 1] * x[k];
+            }
+        }
+        for (int i = n - 1; i >= 0; i--) {
+            int cEnd = Math.min(n, i + kl + ku + 1);
+            double sum = x[i];
+            if (cEnd > i + 1) sum -= Kernels.dot(u, index(i, i + 1), x, i + 1, cEnd - i - 1);
+            x[i] = sum / u[index(i, i)];
+        }
+        return new DenseVector(x);
+    }
+
+    public double determinant() {
+        double det = 1;
+        for (int i = 0; i < n; i++) {
+            det *= u[index(i, i)];
+            if (pivot[i] != i) det = -det;
+        }
+        return det;
+    }
+
+    public int[] getPivot() {
+        return pivot;
+    }
+}
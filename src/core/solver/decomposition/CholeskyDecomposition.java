@@ -1,7 +1,12 @@
 package core.solver.decomposition;
 
+import core.matrix.LowerTriangularMatrix;
 import core.matrix.Matrix;
+import core.matrix.SymmetricMatrix;
+import core.matrix.band.BandMatrix;
 import core.matrix.dense.DenseMatrix;
+import core.matrix.dense.FloatDenseMatrix;
+import core.simd.Kernels;
 import core.vector.DenseVector;
 
 public class CholeskyDecomposition<T extends Matrix<T>> {
@@ -10,7 +15,7 @@ public class CholeskyDecomposition<T extends Matrix<T>> {
     private DenseVector D;
 
 
-    public static CholeskyDecomposition decomposeLDLT(DenseMatrix mat){
+    public static CholeskyDecomposition<DenseMatrix> decomposeLDLT(DenseMatrix mat){
 //        if(matrix.getM() != matrix.getN()) throw new RuntimeException("matrix must be symmetric!");
 //        for(int i = 0; i < matrix.getM(); i++){
 //
@@ -20,6 +25,31 @@ public class CholeskyDecomposition<T extends Matrix<T>> {
     }
 
     public static <T extends Matrix<T>> CholeskyDecomposition<T> decomposeGGT(T mat){
+        //the specialised kernels factor the copy in place, so the factor keeps the type T
+        if(mat instanceof DenseMatrix){
+            T matrix = mat.copy();
+            factorGGT((DenseMatrix) matrix);
+            return new CholeskyDecomposition<>(matrix);
+        }
+        if(mat instanceof FloatDenseMatrix){
+            T matrix = mat.copy();
+            factorGGT((FloatDenseMatrix) matrix);
+            return new CholeskyDecomposition<>(matrix);
+        }
+        if(mat instanceof BandMatrix){
+            T matrix = mat.copy();
+            factorGGT((BandMatrix) mat, (BandMatrix) matrix);
+            for(int i = 0; i < matrix.getM(); i++){
+                for(int j = i+1; j <= ((BandMatrix) matrix).last(i); j++){
+                    matrix.setValue(i,j,0);
+                }
+            }
+            return new CholeskyDecomposition<>(matrix);
+        }
+        if(mat instanceof SymmetricMatrix){
+            //the factor of a packed symmetric matrix is a LowerTriangularMatrix, not a SymmetricMatrix
+            throw new RuntimeException("use decomposeGGT(SymmetricMatrix)");
+        }
         T matrix = mat.copy();
         for(int i = 0; i < matrix.getM(); i++){
             for(int j = i+1; j < mat.getN(); j++){
@@ -42,6 +72,129 @@ public class CholeskyDecomposition<T extends Matrix<T>> {
         return new CholeskyDecomposition<T>(matrix);
     }
 
+    /**
+     * same algorithm as the generic version but working directly on the row-major storage.
+     * the inner product of row i and row j is a unit stride loop over both rows.
+     */
+    public static CholeskyDecomposition<DenseMatrix> decomposeGGT(DenseMatrix mat){
+        DenseMatrix matrix = mat.copy();
+        factorGGT(matrix);
+        return new CholeskyDecomposition<>(matrix);
+    }
+
+    private static void factorGGT(DenseMatrix matrix){
+        double[] data = matrix.getData();
+        int ld = matrix.getLeadingDimension();
+        for(int i = 0; i < matrix.getM(); i++){
+            int ri = i * ld;
+            for(int j = i+1; j < matrix.getN(); j++){
+                data[ri + j] = 0;
+            }
+            for(int j = 0; j <= i; j++){
+                int rj = j * ld;
+                double sum = data[ri + j];
+                for(int k = 0; k < j; k++){
+                    sum -= data[ri + k] * data[rj + k];
+                }
+                if(i > j){
+                    data[ri + j] = sum / data[rj + j];
+                }else if (sum > 0) {
+                    data[ri + i] = Math.sqrt(sum);
+                }else{
+                    throw new RuntimeException("Matrix is not symmetric positive definite!");
+                }
+            }
+        }
+    }
+
+    /**
+     * decomposition of a packed symmetric matrix. Only the lower triangle is read and the factor is stored
+     * in the same packed layout, so neither the input nor the factor ever occupy a full square.
+     */
+    public static CholeskyDecomposition<LowerTriangularMatrix> decomposeGGT(SymmetricMatrix mat){
+        double[] data = mat.getData().clone();
+        for(int i = 0; i < mat.getM(); i++){
+            int ri = SymmetricMatrix.start(i);
+            for(int j = 0; j <= i; j++){
+                int rj = SymmetricMatrix.start(j);
+                double sum = data[ri + j] - Kernels.dot(data, ri, data, rj, j);
+                if(i > j){
+                    data[ri + j] = sum / data[rj + j];
+                }else if (sum > 0) {
+                    data[ri + i] = Math.sqrt(sum);
+                }else{
+                    throw new RuntimeException("Matrix is not symmetric positive definite!");
+                }
+            }
+        }
+        return new CholeskyDecomposition<>(new LowerTriangularMatrix(data, mat.getN()));
+    }
+
+    /**
+     * decomposition of a symmetric band matrix with bandwidth bw = kl = ku in O(n * bw^2).
+     * The factor is a band matrix with bw lower and no upper diagonals. Only the lower band is read.
+     */
+    public static CholeskyDecomposition<BandMatrix> decomposeGGT(BandMatrix mat){
+        BandMatrix matrix = new BandMatrix(mat.getN(), mat.getLowerBandwidth(), 0);
+        factorGGT(mat, matrix);
+        return new CholeskyDecomposition<>(matrix);
+    }
+
+    /**
+     * writes the factor of mat into the lower band of matrix, which has the same lower bandwidth
+     */
+    private static void factorGGT(BandMatrix mat, BandMatrix matrix){
+        if(mat.getM() != mat.getN() || mat.getUpperBandwidth() != mat.getLowerBandwidth())
+            throw new RuntimeException("Matrix must be square with equal bandwidths!");
+        double[] data = matrix.getData();
+        for(int i = 0; i < matrix.getM(); i++){
+            int first = matrix.first(i);
+            for(int j = first; j <= i; j++){
+                //row i and row j of the factor overlap in the columns first ... j-1
+                double sum = mat.getValue(i,j) - Kernels.dot(data, matrix.index(i, first), data, matrix.index(j, first), j - first);
+                if(i > j){
+                    data[matrix.index(i,j)] = sum / data[matrix.index(j,j)];
+                }else if (sum > 0) {
+                    data[matrix.index(i,i)] = Math.sqrt(sum);
+                }else{
+                    throw new RuntimeException("Matrix is not symmetric positive definite!");
+                }
+            }
+        }
+    }
+
+    /**
+     * single precision version of the dense decomposition, used as the factorisation of the
+     * mixed precision solver. The inner products are computed in single precision as well.
+     */
+    public static CholeskyDecomposition<FloatDenseMatrix> decomposeGGT(FloatDenseMatrix mat){
+        FloatDenseMatrix matrix = mat.copy();
+        factorGGT(matrix);
+        return new CholeskyDecomposition<>(matrix);
+    }
+
+    private static void factorGGT(FloatDenseMatrix matrix){
+        float[] data = matrix.getData();
+        int ld = matrix.getN();
+        for(int i = 0; i < matrix.getM(); i++){
+            int ri = i * ld;
+            for(int j = i+1; j < matrix.getN(); j++){
+                data[ri + j] = 0;
+            }
+            for(int j = 0; j <= i; j++){
+                int rj = j * ld;
+                float sum = data[ri + j] - Kernels.dot(data, ri, data, rj, j);
+                if(i > j){
+                    data[ri + j] = sum / data[rj + j];
+                }else if (sum > 0) {
+                    data[ri + i] = (float) Math.sqrt(sum);
+                }else{
+                    throw new RuntimeException("Matrix is not symmetric positive definite!");
+                }
+            }
+        }
+    }
+
     CholeskyDecomposition(T g) {
         L = g;
         D = null;
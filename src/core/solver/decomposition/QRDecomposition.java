@@ -19,42 +19,53 @@ public class QRDecomposition<T extends Matrix<T>> {
 
     public static <T extends Matrix<T>> QRDecomposition<DenseMatrix> givens(T matrix){
 
-        DenseMatrix Q = new DenseMatrix(matrix.getM(), matrix.getM()).self_identity();
+        //the rotations are applied to the rows of Q^T instead of the columns of Q
+        //so that both updates run along contiguous rows of the storage.
+        DenseMatrix Q_T = new DenseMatrix(matrix.getM(), matrix.getM()).self_identity();
         DenseMatrix R = matrix.copyToDense();
 
+        double[] r_data = R.getData();
+        double[] q_data = Q_T.getData();
+        int r_ld = R.getLeadingDimension();
+        int q_ld = Q_T.getLeadingDimension();
+
         double v1,v2;
         for(int i = 1; i < matrix.getM(); i++){
+            int ri = i * r_ld;
+            int qi = i * q_ld;
             for(int n = 0; n < Math.min(i, matrix.getN()); n++){
-                if(R.getValue(i,n) != 0){
-                    v1 = R.getValue(n,n);
-                    v2 = R.getValue(i,n);
+                if(r_data[ri + n] != 0){
+                    int rn = n * r_ld;
+                    int qn = n * q_ld;
+                    v1 = r_data[rn + n];
+                    v2 = r_data[ri + n];
 
                     double r = Math.sqrt(v1 * v1 +v2 * v2);
                     double c = v1 / r;
                     double s = -v2 / r;
 
-                    R.setValue(n,n,r);
-                    R.setValue(i,n,0);
+                    r_data[rn + n] = r;
+                    r_data[ri + n] = 0;
 
                     for(int k = n+1; k < matrix.getN(); k++){
-                        v1 = R.getValue(n,k);
-                        v2 = R.getValue(i,k);
-                        R.setValue(n,k, v1 * c - s * v2);
-                        R.setValue(i,k, v1 * s + c * v2);
+                        v1 = r_data[rn + k];
+                        v2 = r_data[ri + k];
+                        r_data[rn + k] = v1 * c - s * v2;
+                        r_data[ri + k] = v1 * s + c * v2;
                     }
 
                     for(int k = 0; k < matrix.getM(); k++){
-                        v1 = Q.getValue(k,n);
-                        v2 = Q.getValue(k,i);
-                        Q.setValue(k,n, c * v1 - s * v2);
-                        Q.setValue(k,i, s * v1 + c * v2);
+                        v1 = q_data[qn + k];
+                        v2 = q_data[qi + k];
+                        q_data[qn + k] = c * v1 - s * v2;
+                        q_data[qi + k] = s * v1 + c * v2;
                     }
                 }
             }
         }
 
 
-        return new QRDecomposition<DenseMatrix>(Q,R);
+        return new QRDecomposition<DenseMatrix>(Q_T.transpose(),R);
     }
 
     public static void main(String[] args) {
@@ -0,0 +1,144 @@
+package core.solver.direct;
+
+import core.matrix.band.BandMatrix;
+import core.matrix.band.TridiagonalMatrix;
+import core.simd.Kernels;
+import core.solver.decomposition.BandLUDecomposition;
+import core.solver.decomposition.CholeskyDecomposition;
+import core.threads.Pool;
+import core.threads.PoolFunction;
+import core.vector.DenseVector;
+
+/**
+ * direct solvers for band matrices. All of them run in O(n * bw^2) time instead of O(n^3)
+ * and never leave the band storage.
+ */
+public class BandSolver {
+
+    /**
+     * solves A * x = b with a banded LU decomposition with partial pivoting
+     */
+    public static DenseVector solve(BandMatrix A, DenseVector b) {
+        return BandLUDecomposition.decompose(A).solve(b);
+    }
+
+    /**
+     * solves A * x = b for a symmetric positive definite band matrix with a banded cholesky decomposition
+     */
+    public static DenseVector cholesky(BandMatrix A, DenseVector b) {
+        if (A.getM() != b.getSize()) throw new RuntimeException();
+        BandMatrix L = CholeskyDecomposition.decomposeGGT(A).getL();
+        double[] l = L.getData();
+        double[] x = new DenseVector(b).getValues();
+        int n = x.length;
+        for (int i = 0; i < n; i++) {
+            int first = L.first(i);
+            x[i] = (x[i] - Kernels.dot(l, L.index(i, first), x, first, i - first)) / l[L.index(i, i)];
+        }
+        //L^T * x = y: every solved x[i] is removed from the rows above using row i of L
+        for (int i = n - 1; i >= 0; i--) {
+            int first = L.first(i);
+            x[i] /= l[L.index(i, i)];
+            Kernels.axpy(-x[i], l, L.index(i, first), x, first, i - first);
+        }
+        return new DenseVector(x);
+    }
+
+    /**
+     * solves A * x = d for a tridiagonal matrix with the thomas algorithm in O(n).
+     * No pivoting is done, so A should be diagonally dominant or symmetric positive definite.
+     */
+    public static DenseVector thomas(TridiagonalMatrix A, DenseVector d) {
+        if (A.getN() != d.getSize()) throw new RuntimeException();
+        DenseVector x = new DenseVector(d.getSize());
+        thomas(A.getLower(), A.getDiagonal(), A.getUpper(), d.getValues(), new double[d.getSize()], x.getValues());
+        return x;
+    }
+
+    /**
+     * solves many independent tridiagonal systems. The systems are distributed over the active threads of the pool,
+     * every thread reuses one scratch array for all of its systems.
+     */
+    public static DenseVector[] thomas(TridiagonalMatrix[] A, DenseVector[] d, Pool pool) {
+        if (A.length != d.length) throw new RuntimeException();
+        DenseVector[] x = new DenseVector[A.length];
+        int threads = pool.getActiveThreads();
+        PoolFunction function = (index, core) -> {
+            int start = (int) ((long) index * A.length / threads);
+            int end = (int) ((long) (index + 1) * A.length / threads);
+            double[] scratch = new double[0];
+            for (int i = start; i < end; i++) {
+                if (A[i].getN() != d[i].getSize()) throw new RuntimeException();
+                if (scratch.length < A[i].getN()) scratch = new double[A[i].getN()];
+                x[i] = new DenseVector(A[i].getN());
+                thomas(A[i].getLower(), A[i].getDiagonal(), A[i].getUpper(), d[i].getValues(), scratch, x[i].getValues());
+            }
+        };
+        pool.executeTotal(function, threads, false);
+        return x;
+    }
+
+    /**
+     * forward sweep eliminating the lower diagonal, followed by back substitution.
+     * scratch holds the modified upper diagonal and the inputs are not changed.
+     */
+    private static void thomas(double[] a, double[] b, double[] c, double[] d, double[] scratch, double[] x) {
+        int n = b.length;
+        if (n == 0) return;
+        double pivot = b[0];
+        if (pivot == 0) throw new RuntimeException("zero pivot, the thomas algorithm needs a diagonally dominant matrix");
+        scratch[0] = c[0] / pivot;
+        x[0] = d[0] / pivot;
+        for (int i = 1; i < n; i++) {
+            pivot = b[i] - a[i] * scratch[i - 1];
+            if (pivot == 0) throw new RuntimeException("zero pivot, the thomas algorithm needs a diagonally dominant matrix");
+            scratch[i] = c[i] / pivot;
+            x[i] = (d[i] - a[i] * x[i - 1]) / pivot;
+        }
+        for (int i = n - 2; i >= 0; i--) {
+            x[i] -= scratch[i] * x[i + 1];
+        }
+    }
+
+    public static void main(String[] args) {
+        int n = 2000;
+        int bw = 5;
+        BandMatrix A = new BandMatrix(n, bw, bw);
+        for (int i = 0; i < n; i++) {
+            for (int j = A.first(i); j < A.last(i); j++) {
+                A.setValue(i, j, i == j ? 4 * bw : -Math.random());
+            }
+        }
+        DenseVector b = new DenseVector(n);
+        b.randomise(-1, 1);
+
+        long time = System.nanoTime();
+        DenseVector x = solve(A, b);
+        System.out.format("band lu:             %8.3f ms  residual %.3E%n", (System.nanoTime() - time) / 1E6, A.mul(x).sub(b).length());
+
+        time = System.nanoTime();
+        x = GaussianElimination.lsolve(A.copyToDense(), new DenseVector(b.getValues().clone()));
+        System.out.format("gaussian elimination: %8.3f ms  residual %.3E%n", (System.nanoTime() - time) / 1E6, A.mul(x).sub(b).length());
+
+        int systems = 10000;
+        TridiagonalMatrix[] T = new TridiagonalMatrix[systems];
+        DenseVector[] d = new DenseVector[systems];
+        for (int s = 0; s < systems; s++) {
+            T[s] = new TridiagonalMatrix(256);
+            for (int i = 0; i < 256; i++) {
+                T[s].setValue(i, i, 2);
+                if (i > 0) T[s].setValue(i, i - 1, -1);
+                if (i < 255) T[s].setValue(i, i + 1, -1);
+            }
+            d[s] = new DenseVector(256);
+            d[s].randomise(0, 1);
+        }
+        for (int threads = 1; threads <= Pool.getAvailableProcessors(); threads *= 2) {
+            Pool pool = new Pool(threads);
+            time = System.nanoTime();
+            thomas(T, d, pool);
+            System.out.format("%d tridiagonal systems on %d threads: %8.3f ms%n", systems, threads, (System.nanoTime() - time) / 1E6);
+            pool.stop();
+        }
+    }
+}
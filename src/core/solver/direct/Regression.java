@@ -71,7 +71,8 @@ public class Regression {
      */
     public static DenseVector linear_regression(Matrix A, Vector b){
         QRDecomposition decomposition = QRDecomposition.givens(A);
-        DenseVector r = decomposition.getQ().transpose().mul(b);
+        DenseMatrix Q = (DenseMatrix) decomposition.getQ();
+        DenseVector r = Matrix.gemv(1, Q, true, b, 0, new DenseVector(Q.getN()));
 
         DenseVector solution = solveUpperTriangularMatrix(decomposition.getR(),r);
 
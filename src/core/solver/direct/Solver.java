@@ -1,13 +1,19 @@
 package core.solver.direct;
 
+import core.matrix.LowerTriangularMatrix;
 import core.matrix.Matrix;
+import core.matrix.SymmetricMatrix;
 import core.matrix.dense.DenseMatrix;
+import core.matrix.dense.FloatDenseMatrix;
+import core.matrix.sparse_matrix.Ordering;
 import core.matrix.sparse_matrix.SparseMatrix;
 import core.solver.Utilities;
 import core.solver.decomposition.CholeskyDecomposition;
 import core.solver.decomposition.QRDecomposition;
 import core.threads.Pool;
 import core.vector.DenseVector;
+import core.vector.FloatDenseVector;
+import core.vector.Vector;
 import visuals.Printer;
 
 import java.util.function.Function;
@@ -19,6 +25,13 @@ public class Solver {
     public static double GAUSS_NEWTON_MAX_ERROR = 1E-14;
     public static double CONJUGATE_GRADIENT_MAX_ERROR = 1E-14;
     public static double EIGENVALUE_ITERARTION_MAX_ERROR = 1E-14;
+    public static double MIXED_PRECISION_MAX_ERROR = 1E-14;
+    public static int MIXED_PRECISION_MAX_ITERATIONS = 30;
+    /**
+     * if set, the conjugate gradient solvers reorder a SparseMatrix with reverse cuthill-mckee before iterating
+     * and return the solution in the original order. The reordering is skipped if it does not reduce the profile.
+     */
+    public static boolean REORDER = false;
 
     public static DenseVector gaussian() {
         //
@@ -55,7 +68,7 @@ public class Solver {
         if (!matrix.isSymmetric()) {
             throw new RuntimeException("Matrix must be symmetric!");
         }
-        DenseMatrix copy = (DenseMatrix) matrix.copy();
+        DenseMatrix copy = matrix.copyToDense();
         DenseMatrix newCopy;
         double e = 1;
         while (e > EIGENVALUE_ITERARTION_MAX_ERROR) {
@@ -85,7 +98,7 @@ public class Solver {
 
     public static <T extends Matrix<T>> DenseVector eigenValue_powerIteration(T matrix) {
         DenseVector b = new DenseVector(matrix.getN());
-        DenseMatrix copy = (DenseMatrix) matrix.copy();
+        DenseMatrix copy = matrix.copyToDense();
         DenseMatrix newCopy;
         double e = 1;
         while (e > EIGENVALUE_ITERARTION_MAX_ERROR) {
@@ -127,52 +140,141 @@ public class Solver {
         return sol;
     }
 
+    /**
+     * cholesky solver for packed symmetric matrices. The factor stays packed and both triangular solves
+     * work on it directly, so no transpose is created.
+     */
+    public static DenseVector cholesky(SymmetricMatrix matrix, DenseVector vec) {
+        if (matrix.getM() != vec.getSize()) throw new RuntimeException();
+        LowerTriangularMatrix g = CholeskyDecomposition.decomposeGGT(matrix).getL();
+        return g.solveTransposed(g.solve(vec));
+    }
+
+    /**
+     * solves A * x = b for a symmetric positive definite matrix with a single precision cholesky factor
+     * and iterative refinement in double precision:
+     *      r = b - A * x       (double)
+     *      L * L^T * d = r     (float)
+     *      x = x + d           (double)
+     * The factorisation reads and writes half of the bytes of the double precision version. For well conditioned
+     * matrices every iteration gains about 7 digits, so a few iterations reach the accuracy of a double solve.
+     * Iterates until the relative residual |r| / |b| falls below MIXED_PRECISION_MAX_ERROR or stops improving,
+     * in which case the iterate before the last correction is returned.
+     */
+    public static DenseVector cholesky_mixed_precision(Matrix<?> A, DenseVector b) {
+        if (A.getM() != A.getN() || A.getM() != b.getSize()) throw new RuntimeException();
+        FloatDenseMatrix L = CholeskyDecomposition.decomposeGGT(new FloatDenseMatrix(A)).getL();
+
+        DenseVector x = new DenseVector(b.getSize());
+        DenseVector r = new DenseVector(b);
+        FloatDenseVector d = new FloatDenseVector(b.getSize());
+        //the last iterate, restored if a correction makes the residual worse
+        double[] previous = new double[b.getSize()];
+        double norm_b = b.length();
+        double e = Double.MAX_VALUE;
+        for (int i = 0; i < MIXED_PRECISION_MAX_ITERATIONS && norm_b > 0; i++) {
+            //the residual is scaled to 1 before rounding it to float, so it does not underflow once it gets small
+            double scale = 0;
+            for (int n = 0; n < r.getSize(); n++) {
+                scale = Math.max(scale, Math.abs(r.getValue(n)));
+            }
+            if (scale == 0) break;
+            float[] dv = d.getValues();
+            for (int n = 0; n < r.getSize(); n++) {
+                dv[n] = (float) (r.getValue(n) / scale);
+            }
+            solveCholeskyFactor(L, dv);
+            double[] xv = x.getValues();
+            System.arraycopy(xv, 0, previous, 0, xv.length);
+            for (int n = 0; n < xv.length; n++) {
+                xv[n] += scale * dv[n];
+            }
 
+            A.mulInto(x, r);
+            r.self_negate().self_add(b);
+            double new_e = r.length() / norm_b;
+            if (new_e >= e) {
+                System.arraycopy(previous, 0, xv, 0, xv.length);
+                break;
+            }
+            e = new_e;
+            if (e < MIXED_PRECISION_MAX_ERROR) break;
+        }
+        return x;
+    }
 
+    /**
+     * solves L * L^T * x = v in place. Both substitutions traverse L along its rows.
+     */
+    private static void solveCholeskyFactor(FloatDenseMatrix L, float[] v) {
+        float[] l = L.getData();
+        int n = L.getN();
+        for (int i = 0; i < n; i++) {
+            float sum = v[i];
+            for (int k = 0; k < i; k++) {
+                sum -= l[i * n + k] * v[k];
+            }
+            v[i] = sum / l[i * n + i];
+        }
+        for (int i = n - 1; i >= 0; i--) {
+            v[i] /= l[i * n + i];
+            float xi = v[i];
+            for (int k = 0; k < i; k++) {
+                v[k] -= l[i * n + k] * xi;
+            }
+        }
+    }
 
     public static DenseVector precon_conjugate_gradient(Matrix<?> A, DenseVector b, int cores) {
         return precon_conjugate_gradient(A, b, new DenseVector(b.getSize()), cores);
     }
 
     public static DenseVector precon_conjugate_gradient(Matrix<?> A, DenseVector b, DenseVector x_0, int cores) {
+        if (REORDER && A instanceof SparseMatrix) {
+            int[] p = Ordering.rcm((SparseMatrix) A);
+            SparseMatrix reordered = reorder((SparseMatrix) A, p);
+            if (reordered != null) {
+                return run_precon_conjugate_gradient(reordered, b.permute(p), x_0.permute(p), cores).permuteInverse(p);
+            }
+        }
+        return run_precon_conjugate_gradient(A, b, x_0, cores);
+    }
+
+    private static DenseVector run_precon_conjugate_gradient(Matrix<?> A, DenseVector b, DenseVector x_0, int cores) {
         Pool p = new Pool(cores);
         long startTime = System.currentTimeMillis();
         DenseVector C = preconditioner_jacobi(A);
 
-        DenseVector old_r = new DenseVector(b.sub(A.mul(x_0,p)));
-        DenseVector old_h = C.hadamard(old_r,p);
-        DenseVector old_d = new DenseVector(old_h);
-        DenseVector old_x = new DenseVector(x_0);
-        DenseVector new_r;
-        DenseVector new_h;
-        DenseVector new_d;
-        DenseVector new_x;
+        //all vectors are allocated once and updated in place inside of the loop
+        DenseVector x = new DenseVector(x_0);
+        DenseVector r = b.sub(A.mul(x, p), p);
+        DenseVector h = C.hadamard(r, p);
+        DenseVector d = new DenseVector(h);
+        DenseVector z = new DenseVector(b.getSize());
 
         double a, beta;
+        double rh = r.dot(h, p);
         double e = 1;
         int counter = 1;
         while (e > CONJUGATE_GRADIENT_MAX_ERROR) {
-            DenseVector z = A.mul(old_d,p);
-            a = old_r.dot(old_h,p) / (old_d.dot(z,p));
-            new_x = old_x.add(old_d.scale(a,p),p);
-            new_r = old_r.sub(z.scale(a,p),p);
-            new_h = C.hadamard(new_r,p);
-            beta = new_r.dot(new_h,p) / (old_r.dot(old_h,p));
-            new_d = new_h.add(old_d.scale(beta,p),p);
-
-            old_d = new_d;
-            old_x = new_x;
-            old_h = new_h;
-            old_r = new_r;
+            A.mulInto(d, z, p);
+            a = rh / d.dot(z, p);
+            Vector.axpy(a, d, x, p);
+            Vector.axpy(-a, z, r, p);
+            C.hadamardInto(r, h, p);
+            double new_rh = r.dot(h, p);
+            beta = new_rh / rh;
+            d.self_scale(beta, p).self_add(h, p);
+            rh = new_rh;
 
             counter ++;
-            e = new_r.length(p);
+            e = r.length(p);
             Printer.print_conjugateGradient(e, counter, System.currentTimeMillis()-startTime, cores);
 
         }
         p.stop();
         System.out.println();
-        return old_x;
+        return x;
     }
 
     public static DenseVector conjugate_gradient(Matrix<?> A, DenseVector b, int cores) {
@@ -180,38 +282,59 @@ public class Solver {
     }
 
     public static DenseVector conjugate_gradient(Matrix<?> A, DenseVector b, DenseVector x_0, int cores) {
+        if (REORDER && A instanceof SparseMatrix) {
+            int[] p = Ordering.rcm((SparseMatrix) A);
+            SparseMatrix reordered = reorder((SparseMatrix) A, p);
+            if (reordered != null) {
+                return run_conjugate_gradient(reordered, b.permute(p), x_0.permute(p), cores).permuteInverse(p);
+            }
+        }
+        return run_conjugate_gradient(A, b, x_0, cores);
+    }
+
+    /**
+     * returns P * A * P^T for the permutation p or null if it does not reduce the profile of A
+     */
+    private static SparseMatrix reorder(SparseMatrix A, int[] p) {
+        SparseMatrix reordered = A.permute(p, p);
+        long before = Ordering.profile(A);
+        long after = Ordering.profile(reordered);
+        Printer.print_reordering(Ordering.bandwidth(A), Ordering.bandwidth(reordered), before, after);
+        return after < before ? reordered : null;
+    }
+
+    private static DenseVector run_conjugate_gradient(Matrix<?> A, DenseVector b, DenseVector x_0, int cores) {
         long startTime = System.currentTimeMillis();
         Pool pool = new Pool(cores);
 
-        DenseVector old_x = new DenseVector(x_0);
-        DenseVector new_x;
-        DenseVector old_p = b.sub(A.mul(old_x,pool),pool);
-        DenseVector new_p;
-        DenseVector old_r = new DenseVector(old_p);
-        DenseVector new_r;
+        //all vectors are allocated once and updated in place inside of the loop
+        DenseVector x = new DenseVector(x_0);
+        DenseVector r = b.sub(A.mul(x, pool), pool);
+        DenseVector p = new DenseVector(r);
+        DenseVector Ap = new DenseVector(A.getM());
 
         double a, beta;
+        double rr = r.dot(r, pool);
         double e = 1;
         int counter = 1;
         while (e > CONJUGATE_GRADIENT_MAX_ERROR) {
-            a = old_r.dot(old_r,pool) / (old_p.dot(A.mul(old_p,pool),pool));
-            new_x = old_x.add(old_p.scale(a,pool),pool);
-            new_r = old_r.sub(A.mul(old_p,pool).scale(a,pool),pool);
-            beta = new_r.dot(new_r,pool) / old_r.dot(old_r,pool);
-            new_p = new_r.add(old_p.scale(beta,pool));
-
-            old_p = new_p;
-            old_r = new_r;
-            old_x = new_x;
-
-            e = new_r.length(pool);
+            A.mulInto(p, Ap, pool);
+            a = rr / p.dot(Ap, pool);
+            Vector.axpy(a, p, x, pool);
+            Vector.axpy(-a, Ap, r, pool);
+            double new_rr = r.dot(r, pool);
+            beta = new_rr / rr;
+            p.self_scale(beta, pool).self_add(r, pool);
+            rr = new_rr;
+
+            e = Math.sqrt(rr);
             Printer.print_conjugateGradient(e, counter, System.currentTimeMillis()-startTime, cores);
             counter ++;
 
         }
         System.out.println();
         pool.stop();
-        return old_x;
+        return x;
     }
 
     public static DenseVector conjugate_gradient_normal_equation(Matrix<?> A, DenseVector b, int cores) {
@@ -222,39 +345,37 @@ public class Solver {
         long startTime = System.currentTimeMillis();
         Pool pool = new Pool(cores);
 
-        Matrix<?> A_T = A.transpose();
-        b = A_T.mul(b,pool);
-
-        DenseVector old_x = new DenseVector(x_0);
-        DenseVector new_x;
-        DenseVector old_p = b.sub(A_T.mul(A.mul(old_x,pool)),pool);
-        DenseVector new_p;
-        DenseVector old_r = new DenseVector(old_p);
-        DenseVector new_r;
+        //A^T is never built, A^T * v is computed by mulTransposedInto. All vectors are updated in place.
+        DenseVector x = new DenseVector(x_0);
+        DenseVector Ax = A.mul(x, pool);
+        DenseVector r = A.mulTransposed(b.sub(Ax, pool), pool);
+        DenseVector p = new DenseVector(r);
+        DenseVector Ap = new DenseVector(A.getM());
+        DenseVector AtAp = new DenseVector(A.getN());
 
         double a, beta;
+        double rr = r.dot(r, pool);
         double e = 1;
         int counter = 1;
         while (e > CONJUGATE_GRADIENT_MAX_ERROR) {
-            a = old_r.dot(old_r,pool) / (old_p.dot(
-                    A_T.mul(A.mul(old_p,pool),pool),pool));
-            new_x = old_x.add(old_p.scale(a,pool),pool);
-            new_r = old_r.sub(A_T.mul(A.mul(old_p,pool),pool).scale(a,pool),pool);
-            beta = new_r.dot(new_r,pool) / old_r.dot(old_r,pool);
-            new_p = new_r.add(old_p.scale(beta,pool));
-
-            old_p = new_p;
-            old_r = new_r;
-            old_x = new_x;
-
-            e = new_r.length(pool);
+            A.mulInto(p, Ap, pool);
+            A.mulTransposedInto(Ap, AtAp, pool);
+            a = rr / p.dot(AtAp, pool);
+            Vector.axpy(a, p, x, pool);
+            Vector.axpy(-a, AtAp, r, pool);
+            double new_rr = r.dot(r, pool);
+            beta = new_rr / rr;
+            p.self_scale(beta, pool).self_add(r, pool);
+            rr = new_rr;
+
+            e = Math.sqrt(rr);
             Printer.print_conjugateGradient(e, counter, System.currentTimeMillis()-startTime, cores);
             counter ++;
 
         }
         System.out.println();
         pool.stop();
-        return old_x;
+        return x;
     }
 
 
@@ -268,11 +389,11 @@ public class Solver {
             if (counter % recalculation == 0) {
                 der = derivative.apply(x);
             }
-            Matrix transpose = der.transpose();
-            Matrix leftSide = transpose.mul(der);
-            DenseVector rightSide = transpose.mul(function.apply(x));
+            //J^T * J and J^T * f without materialising J^T
+            DenseMatrix leftSide = Matrix.gemm(1, der, true, der, false, 0, new DenseMatrix(der.getN(), der.getN()));
+            DenseVector rightSide = Matrix.gemv(1, der, true, function.apply(x), 0, new DenseVector(der.getN()));
             DenseVector dx = conjugate_gradient(leftSide, rightSide,1);
-            x.self_sub(dx.scale(alpha_k));
+            Vector.axpy(-alpha_k, dx, x);
             e = dx.length();
             System.err.println(x);
             counter++;
@@ -4,6 +4,7 @@ package core.vector;
 import core.exceptions.NotEnoughSlotsException;
 import core.exceptions.NotMatchingSlotsException;
 import core.matrix.dense.DenseMatrix;
+import core.simd.Kernels;
 
 import java.util.Arrays;
 
@@ -46,55 +47,44 @@ public class DenseVector extends Vector<DenseVector> {
 
     @Override
     public void scale_partial(DenseVector target, double scalar, int start, int end) {
-        for (int i = start; i < end; i++) {
-            target.setValue(i, getValue(i) * scalar);
-        }
+        Kernels.scale(values, start, scalar, target.values, start, end - start);
     }
 
     @Override
     public void negate_partial(DenseVector target, int start, int end) {
-        for (int i = start; i < end; i++) {
-            target.setValue(i, -getValue(i));
-        }
+        Kernels.scale(values, start, -1, target.values, start, end - start);
     }
 
     @Override
     public void add_partial(DenseVector target, DenseVector other, int start, int end) {
-        for (int i = start; i < end; i++) {
-            target.setValue(i, other.getValue(i) + getValue(i));
-        }
+        Kernels.add(values, start, other.values, start, target.values, start, end - start);
     }
 
     @Override
     public void sub_partial(DenseVector target, DenseVector other, int start, int end) {
-        for (int i = start; i < end; i++) {
-            target.setValue(i, getValue(i) - other.getValue(i));
-        }
+        Kernels.sub(values, start, other.values, start, target.values, start, end - start);
     }
 
     @Override
     public double dot_partial(DenseVector other, int start, int end) {
-        double k = 0;
-        for (int i = start; i < end; i++) {
-            k += getValue(i) * other.getValue(i);
-        }
-        return k;
+        return Kernels.dot(values, start, other.values, start, end - start);
     }
 
     @Override
     public void outerProduct_partial(DenseMatrix target, DenseVector other, int row) {
         if(this.getValue(row) != 0){
-            for(int n = 0; n < other.getSize(); n++){
-                target.setValue(row,n,this.getValue(row) * other.getValue(n));
-            }
+            Kernels.scale(other.values, 0, values[row], target.getData(), target.index(row, 0), other.getSize());
         }
     }
 
     @Override
     public void hadamard_partial(DenseVector target, DenseVector other, int start, int end) {
-        for (int i = start; i < end; i++) {
-            target.setValue(i, getValue(i) * other.getValue(i));
-        }
+        Kernels.hadamard(values, start, other.values, start, target.values, start, end - start);
+    }
+
+    @Override
+    public void axpy_partial(double alpha, DenseVector x, int start, int end) {
+        Kernels.axpy(alpha, x.values, start, values, start, end - start);
     }
 
     @Override
@@ -116,6 +106,30 @@ public class DenseVector extends Vector<DenseVector> {
         return s + "]";
     }
 
+    /**
+     * the vector y with y[i] = x[p[i]], used to reorder a vector like the rows of a permuted matrix
+     */
+    public DenseVector permute(int[] p) {
+        if (p.length != this.values.length) throw new RuntimeException();
+        double[] result = new double[p.length];
+        for (int i = 0; i < p.length; i++) {
+            result[i] = values[p[i]];
+        }
+        return new DenseVector(result);
+    }
+
+    /**
+     * the vector y with y[p[i]] = x[i], which undoes {@link #permute(int[])}
+     */
+    public DenseVector permuteInverse(int[] p) {
+        if (p.length != this.values.length) throw new RuntimeException();
+        double[] result = new double[p.length];
+        for (int i = 0; i < p.length; i++) {
+            result[p[i]] = values[i];
+        }
+        return new DenseVector(result);
+    }
+
     public double[] getValues() {
         return values;
     }
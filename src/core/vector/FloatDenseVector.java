@@ -0,0 +1,122 @@
+package core.vector;
+
+import core.matrix.dense.DenseMatrix;
+import core.simd.Kernels;
+
+import java.util.Arrays;
+
+/**
+ * dense vector in single precision. Memory bound kernels move half of the bytes of a {@link DenseVector},
+ * at the cost of about 7 significant digits.
+ */
+public class FloatDenseVector extends Vector<FloatDenseVector> {
+
+    private float[] values;
+
+    public FloatDenseVector(int size) {
+        super(size);
+    }
+
+    public FloatDenseVector(float... values) {
+        super(values.length);
+        this.values = values;
+    }
+
+    /**
+     * rounds the values of the other vector to single precision
+     */
+    public FloatDenseVector(Vector<?> other) {
+        super(other);
+    }
+
+    @Override
+    public void genArrays() {
+        values = new float[this.getSize()];
+    }
+
+    @Override
+    public void setValue(int index, double val) {
+        values[index] = (float) val;
+    }
+
+    @Override
+    public double getValue(int index) {
+        return values[index];
+    }
+
+    @Override
+    public void scale_partial(FloatDenseVector target, double scalar, int start, int end) {
+        Kernels.scale(values, start, (float) scalar, target.values, start, end - start);
+    }
+
+    @Override
+    public void negate_partial(FloatDenseVector target, int start, int end) {
+        Kernels.scale(values, start, -1f, target.values, start, end - start);
+    }
+
+    @Override
+    public void add_partial(FloatDenseVector target, FloatDenseVector other, int start, int end) {
+        Kernels.add(values, start, other.values, start, target.values, start, end - start);
+    }
+
+    @Override
+    public void sub_partial(FloatDenseVector target, FloatDenseVector other, int start, int end) {
+        Kernels.sub(values, start, other.values, start, target.values, start, end - start);
+    }
+
+    @Override
+    public double dot_partial(FloatDenseVector other, int start, int end) {
+        return Kernels.dot(values, start, other.values, start, end - start);
+    }
+
+    @Override
+    public void outerProduct_partial(DenseMatrix target, FloatDenseVector other, int row) {
+        double v = values[row];
+        if (v == 0) return;
+        double[] data = target.getData();
+        int t = target.index(row, 0);
+        for (int i = 0; i < other.getSize(); i++) {
+            data[t + i] = v * other.values[i];
+        }
+    }
+
+    @Override
+    public void hadamard_partial(FloatDenseVector target, FloatDenseVector other, int start, int end) {
+        Kernels.hadamard(values, start, other.values, start, target.values, start, end - start);
+    }
+
+    @Override
+    public void axpy_partial(double alpha, FloatDenseVector x, int start, int end) {
+        Kernels.axpy((float) alpha, x.values, start, values, start, end - start);
+    }
+
+    @Override
+    public FloatDenseVector copy() {
+        return new FloatDenseVector(Arrays.copyOf(values, values.length));
+    }
+
+    @Override
+    public FloatDenseVector newInstance() {
+        return new FloatDenseVector(values.length);
+    }
+
+    /**
+     * widens the values to double precision
+     */
+    public DenseVector toDouble() {
+        return new DenseVector(this);
+    }
+
+    @Override
+    public String toString() {
+        String s = "[";
+        for (float v : values) {
+            s += " " + String.format("%.3E", v);
+        }
+        return s + "]";
+    }
+
+    public float[] getValues() {
+        return values;
+    }
+}
@@ -0,0 +1,184 @@
+package core.vector;
+
+import core.matrix.dense.DenseMatrix;
+import core.memory.DoubleStorage;
+import core.memory.MemoryArena;
+
+import java.nio.DoubleBuffer;
+
+/**
+ * dense vector whose values are stored outside of the java heap.
+ * The storage belongs to the arena and is released when the arena is closed.
+ */
+public class OffHeapDenseVector extends Vector<OffHeapDenseVector> {
+
+    private MemoryArena arena;
+    private DoubleStorage storage;
+
+    public OffHeapDenseVector(MemoryArena arena, int size) {
+        super(size);
+        this.arena = arena;
+        this.storage = arena.allocate(size, 1);
+    }
+
+    public OffHeapDenseVector(MemoryArena arena, Vector<?> other) {
+        this(arena, other.getSize());
+        other.loadTo(this);
+    }
+
+    /**
+     * the storage is allocated by the constructor once the arena is known
+     */
+    @Override
+    public void genArrays() {
+    }
+
+    @Override
+    public void setValue(int index, double val) {
+        storage.set(index, 0, val);
+    }
+
+    @Override
+    public double getValue(int index) {
+        return storage.get(index, 0);
+    }
+
+    @Override
+    public void scale_partial(OffHeapDenseVector target, double scalar, int start, int end) {
+        for (int i = start; i < end; ) {
+            int n = Math.min(end - i, storage.remaining(i));
+            DoubleBuffer a = storage.chunk(i);
+            DoubleBuffer t = target.storage.chunk(i);
+            int o = storage.index(i, 0);
+            for (int k = o; k < o + n; k++) {
+                t.put(k, a.get(k) * scalar);
+            }
+            i += n;
+        }
+    }
+
+    @Override
+    public void negate_partial(OffHeapDenseVector target, int start, int end) {
+        scale_partial(target, -1, start, end);
+    }
+
+    @Override
+    public void add_partial(OffHeapDenseVector target, OffHeapDenseVector other, int start, int end) {
+        for (int i = start; i < end; ) {
+            int n = Math.min(end - i, storage.remaining(i));
+            DoubleBuffer a = storage.chunk(i);
+            DoubleBuffer b = other.storage.chunk(i);
+            DoubleBuffer t = target.storage.chunk(i);
+            int o = storage.index(i, 0);
+            for (int k = o; k < o + n; k++) {
+                t.put(k, a.get(k) + b.get(k));
+            }
+            i += n;
+        }
+    }
+
+    @Override
+    public void sub_partial(OffHeapDenseVector target, OffHeapDenseVector other, int start, int end) {
+        for (int i = start; i < end; ) {
+            int n = Math.min(end - i, storage.remaining(i));
+            DoubleBuffer a = storage.chunk(i);
+            DoubleBuffer b = other.storage.chunk(i);
+            DoubleBuffer t = target.storage.chunk(i);
+            int o = storage.index(i, 0);
+            for (int k = o; k < o + n; k++) {
+                t.put(k, a.get(k) - b.get(k));
+            }
+            i += n;
+        }
+    }
+
+    @Override
+    public double dot_partial(OffHeapDenseVector other, int start, int end) {
+        double sum = 0;
+        for (int i = start; i < end; ) {
+            int n = Math.min(end - i, storage.remaining(i));
+            DoubleBuffer a = storage.chunk(i);
+            DoubleBuffer b = other.storage.chunk(i);
+            int o = storage.index(i, 0);
+            for (int k = o; k < o + n; k++) {
+                sum += a.get(k) * b.get(k);
+            }
+            i += n;
+        }
+        return sum;
+    }
+
+    @Override
+    public void outerProduct_partial(DenseMatrix target, OffHeapDenseVector other, int row) {
+        double v = getValue(row);
+        if (v == 0) return;
+        for (int i = 0; i < other.getSize(); i++) {
+            target.setValue(row, i, v * other.getValue(i));
+        }
+    }
+
+    @Override
+    public void hadamard_partial(OffHeapDenseVector target, OffHeapDenseVector other, int start, int end) {
+        for (int i = start; i < end; ) {
+            int n = Math.min(end - i, storage.remaining(i));
+            DoubleBuffer a = storage.chunk(i);
+            DoubleBuffer b = other.storage.chunk(i);
+            DoubleBuffer t = target.storage.chunk(i);
+            int o = storage.index(i, 0);
+            for (int k = o; k < o + n; k++) {
+                t.put(k, a.get(k) * b.get(k));
+            }
+            i += n;
+        }
+    }
+
+    @Override
+    public void axpy_partial(double alpha, OffHeapDenseVector x, int start, int end) {
+        for (int i = start; i < end; ) {
+            int n = Math.min(end - i, storage.remaining(i));
+            DoubleBuffer a = x.storage.chunk(i);
+            DoubleBuffer t = storage.chunk(i);
+            int o = storage.index(i, 0);
+            for (int k = o; k < o + n; k++) {
+                t.put(k, t.get(k) + alpha * a.get(k));
+            }
+            i += n;
+        }
+    }
+
+    @Override
+    public OffHeapDenseVector copy() {
+        OffHeapDenseVector vector = newInstance();
+        scale_partial(vector, 1, 0, getSize());
+        return vector;
+    }
+
+    @Override
+    public OffHeapDenseVector newInstance() {
+        return new OffHeapDenseVector(arena, getSize());
+    }
+
+    /**
+     * copies the values onto the heap
+     */
+    public DenseVector toDense() {
+        return new DenseVector(this);
+    }
+
+    public MemoryArena getArena() {
+        return arena;
+    }
+
+    public DoubleStorage getStorage() {
+        return storage;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder s = new StringBuilder("[");
+        for (int i = 0; i < getSize(); i++) {
+            s.append(" ").append(String.format("%.3E", getValue(i)));
+        }
+        return s.append("]").toString();
+    }
+}
@@ -95,104 +95,110 @@ public abstract class Vector<T extends Vector<T>> {
     }
 
     public T add(T other, Pool pool) {
-        if (this.getSize() != other.getSize()) throw new RuntimeException();
-        T result = newInstance();
-        PoolFunction function = (index, core) -> {
-            add_partial(result, other, (int) (index * this.getSize() / (double)pool.getActiveThreads()),
-                    (int) ((index+1) * this.getSize() / (double)pool.getActiveThreads()));
-        };
-        pool.executeTotal(function, pool.getActiveThreads(), false);
-        return result;
+        return addInto(other, newInstance(), pool);
     }
 
     public T sub(T other, Pool pool) {
-        if (this.getSize() != other.getSize()) throw new RuntimeException();
-        T result = newInstance();
-        PoolFunction function = (index, core) -> {
-            sub_partial(result, other, (int) (index * this.getSize() / (double)pool.getActiveThreads()),
-                    (int) ((index+1) * this.getSize() / (double)pool.getActiveThreads()));
-        };
-        pool.executeTotal(function, pool.getActiveThreads(), false);
-        return result;
+        return subInto(other, newInstance(), pool);
     }
 
     public T scale(double scalar, Pool pool) {
-        T result = newInstance();
-        PoolFunction function = (index, core) -> {
-            scale_partial(result, scalar, (int) (index * this.getSize() / (double)pool.getActiveThreads()),
-                    (int) ((index+1) * this.getSize() / (double)pool.getActiveThreads()));
-        };
-        pool.executeTotal(function, pool.getActiveThreads(), false);
-        return result;
+        return scaleInto(scalar, newInstance(), pool);
     }
 
     public T negate(Pool pool) {
-        T result = newInstance();
-        PoolFunction function = (index, core) -> {
-            negate_partial(result, (int) (index * this.getSize() / (double)pool.getActiveThreads()),
-                    (int) ((index+1) * this.getSize() / (double)pool.getActiveThreads()));
-        };
-        pool.executeTotal(function, pool.getActiveThreads(), false);
-        return result;
+        return negateInto(newInstance(), pool);
     }
 
     public T hadamard(T other, Pool pool) {
-        if (this.getSize() != other.getSize()) throw new RuntimeException();
-        T result = newInstance();
+        return hadamardInto(other, newInstance(), pool);
+    }
+
+    public T self_add(T other, Pool pool) {
+        return addInto(other, (T) this, pool);
+    }
+
+    public T self_sub(T other, Pool pool) {
+        return subInto(other, (T) this, pool);
+    }
+
+    public T self_scale(double scalar, Pool pool) {
+        return scaleInto(scalar, (T) this, pool);
+    }
+
+    public T self_negate(Pool pool) {
+        return negateInto((T) this, pool);
+    }
+
+    public T self_hadamard(T other, Pool pool) {
+        return hadamardInto(other, (T) this, pool);
+    }
+
+    /**
+     * The *Into methods write their result into the given target instead of allocating a new vector.
+     * The target must have the same size and may be one of the operands. They return the target.
+     */
+    public T addInto(T other, T target, Pool pool) {
+        if (this.getSize() != other.getSize() || this.getSize() != target.getSize()) throw new RuntimeException();
         PoolFunction function = (index, core) -> {
-            hadamard_partial(result, other, (int) (index * this.getSize() / (double)pool.getActiveThreads()),
+            add_partial(target, other, (int) (index * this.getSize() / (double)pool.getActiveThreads()),
                     (int) ((index+1) * this.getSize() / (double)pool.getActiveThreads()));
         };
         pool.executeTotal(function, pool.getActiveThreads(), false);
-        return result;
+        return target;
     }
 
-    public T self_add(T other, Pool pool) {
-        if (this.getSize() != other.getSize()) throw new RuntimeException();
+    public T subInto(T other, T target, Pool pool) {
+        if (this.getSize() != other.getSize() || this.getSize() != target.getSize()) throw new RuntimeException();
         PoolFunction function = (index, core) -> {
-            add_partial((T) this, other, (int) (index * this.getSize() / (double)pool.getActiveThreads()),
+            sub_partial(target, other, (int) (index * this.getSize() / (double)pool.getActiveThreads()),
                     (int) ((index+1) * this.getSize() / (double)pool.getActiveThreads()));
         };
         pool.executeTotal(function, pool.getActiveThreads(), false);
-        return (T) this;
+        return target;
     }
 
-    public T self_sub(T other, Pool pool) {
-        if (this.getSize() != other.getSize()) throw new RuntimeException();
+    public T scaleInto(double scalar, T target, Pool pool) {
+        if (this.getSize() != target.getSize()) throw new RuntimeException();
         PoolFunction function = (index, core) -> {
-            sub_partial((T) this, other, (int) (index * this.getSize() / (double)pool.getActiveThreads()),
+            scale_partial(target, scalar, (int) (index * this.getSize() / (double)pool.getActiveThreads()),
                     (int) ((index+1) * this.getSize() / (double)pool.getActiveThreads()));
         };
         pool.executeTotal(function, pool.getActiveThreads(), false);
-        return (T) this;
+        return target;
     }
 
-    public T self_scale(double scalar, Pool pool) {
+    public T negateInto(T target, Pool pool) {
+        if (this.getSize() != target.getSize()) throw new RuntimeException();
         PoolFunction function = (index, core) -> {
-            scale_partial((T) this, scalar,(int) (index * this.getSize() / (double)pool.getActiveThreads()),
+            negate_partial(target, (int) (index * this.getSize() / (double)pool.getActiveThreads()),
                     (int) ((index+1) * this.getSize() / (double)pool.getActiveThreads()));
         };
         pool.executeTotal(function, pool.getActiveThreads(), false);
-        return (T) this;
+        return target;
     }
 
-    public T self_negate(Pool pool) {
+    public T hadamardInto(T other, T target, Pool pool) {
+        if (this.getSize() != other.getSize() || this.getSize() != target.getSize()) throw new RuntimeException();
         PoolFunction function = (index, core) -> {
-            negate_partial((T) this, (int) (index * this.getSize() / (double)pool.getActiveThreads()),
+            hadamard_partial(target, other, (int) (index * this.getSize() / (double)pool.getActiveThreads()),
                     (int) ((index+1) * this.getSize() / (double)pool.getActiveThreads()));
         };
         pool.executeTotal(function, pool.getActiveThreads(), false);
-        return (T) this;
+        return target;
     }
 
-    public T self_hadamard(T other, Pool pool) {
-        if (this.getSize() != other.getSize()) throw new RuntimeException();
+    /**
+     * computes y = alpha * x + y and returns y
+     */
+    public static <T extends Vector<T>> T axpy(double alpha, T x, T y, Pool pool) {
+        if (x.getSize() != y.getSize()) throw new RuntimeException();
         PoolFunction function = (index, core) -> {
-            hadamard_partial((T) this, other, (int) (index * this.getSize() / (double)pool.getActiveThreads()),
-                    (int) ((index+1) * this.getSize() / (double)pool.getActiveThreads()));
+            y.axpy_partial(alpha, x, (int) (index * y.getSize() / (double)pool.getActiveThreads()),
+                    (int) ((index+1) * y.getSize() / (double)pool.getActiveThreads()));
         };
         pool.executeTotal(function, pool.getActiveThreads(), false);
-        return (T) this;
+        return y;
     }
 
     public double dot(T other, Pool pool) {
@@ -225,64 +231,82 @@ public abstract class Vector<T extends Vector<T>> {
     }
 
     public T add(T other) {
-        if (this.getSize() != other.getSize()) throw new RuntimeException();
-        T result = newInstance();
-        this.add_partial(result, other, 0, this.getSize());
-        return result;
+        return addInto(other, newInstance());
     }
 
     public T sub(T other) {
-        if (this.getSize() != other.getSize()) throw new RuntimeException();
-        T result = newInstance();
-        this.sub_partial(result, other, 0, this.getSize());
-        return result;
+        return subInto(other, newInstance());
     }
 
     public T scale(double scalar) {
-        T result = newInstance();
-        this.scale_partial(result, scalar, 0, this.getSize());
-        return result;
+        return scaleInto(scalar, newInstance());
     }
 
     public T negate() {
-        T result = newInstance();
-        this.negate_partial(result, 0, this.getSize());
-        return result;
+        return negateInto(newInstance());
     }
 
     public T hadamard(T other) {
-        if (this.getSize() != other.getSize()) throw new RuntimeException();
-        T result = newInstance();
-        this.hadamard_partial(result, other, 0, this.getSize());
-        return result;
+        return hadamardInto(other, newInstance());
     }
 
     public T self_add(T other) {
-        if (this.getSize() != other.getSize()) throw new RuntimeException();
-        this.add_partial((T) this, other, 0, this.getSize());
-        return (T) this;
+        return addInto(other, (T) this);
     }
 
     public T self_sub(T other) {
-        if (this.getSize() != other.getSize()) throw new RuntimeException();
-        this.sub_partial((T) this, other, 0, this.getSize());
-        return (T) this;
+        return subInto(other, (T) this);
     }
 
     public T self_scale(double scalar) {
-        this.scale_partial((T) this, scalar, 0, this.getSize());
-        return (T) this;
+        return scaleInto(scalar, (T) this);
     }
 
     public T self_negate() {
-        this.negate_partial((T) this, 0, this.getSize());
-        return (T) this;
+        return negateInto((T) this);
     }
 
     public T self_hadamard(T other) {
-        if (this.getSize() != other.getSize()) throw new RuntimeException();
-        this.hadamard_partial((T) this, other, 0, this.getSize());
-        return (T) this;
+        return hadamardInto(other, (T) this);
+    }
+
+    public T addInto(T other, T target) {
+        if (this.getSize() != other.getSize() || this.getSize() != target.getSize()) throw new RuntimeException();
+        this.add_partial(target, other, 0, this.getSize());
+        return target;
+    }
+
+    public T subInto(T other, T target) {
+        if (this.getSize() != other.getSize() || this.getSize() != target.getSize()) throw new RuntimeException();
+        this.sub_partial(target, other, 0, this.getSize());
+        return target;
+    }
+
+    public T scaleInto(double scalar, T target) {
+        if (this.getSize() != target.getSize()) throw new RuntimeException();
+        this.scale_partial(target, scalar, 0, this.getSize());
+        return target;
+    }
+
+    public T negateInto(T target) {
+        if (this.getSize() != target.getSize()) throw new RuntimeException();
+        this.negate_partial(target, 0, this.getSize());
+        return target;
+    }
+
+    public T hadamardInto(T other, T target) {
+        if (this.getSize() != other.getSize() || this.getSize() != target.getSize()) throw new RuntimeException();
+        this.hadamard_partial(target, other, 0, this.getSize());
+        return target;
+    }
+
+    /**
+     * computes y = alpha * x + y and returns y
+     */
+    public static <T extends Vector<T>> T axpy(double alpha, T x, T y) {
+        if (x.getSize() != y.getSize()) throw new RuntimeException();
+        y.axpy_partial(alpha, x, 0, y.getSize());
+        return y;
     }
 
     public double dot(T other) {
@@ -304,6 +328,15 @@ public abstract class Vector<T extends Vector<T>> {
 
     public abstract void hadamard_partial(T target, T other, int start, int end);
 
+    /**
+     * this = alpha * x + this for the elements [start, end)
+     */
+    public void axpy_partial(double alpha, T x, int start, int end) {
+        for (int i = start; i < end; i++) {
+            this.setValue(i, this.getValue(i) + alpha * x.getValue(i));
+        }
+    }
+
 
     public abstract T copy();
 
@@ -226,37 +226,53 @@ public class Vector2d extends Vector<Vector2d> {
 
     @Override
     public void scale_partial(Vector2d target, double scalar, int start, int end) {
-        throw new RuntimeException();
+        for (int i = start; i < end; i++) {
+            target.setValue(i, getValue(i) * scalar);
+        }
     }
 
     @Override
     public void negate_partial(Vector2d target, int start, int end) {
-        throw new RuntimeException();
+        for (int i = start; i < end; i++) {
+            target.setValue(i, -getValue(i));
+        }
     }
 
     @Override
     public void add_partial(Vector2d target, Vector2d other, int start, int end) {
-        throw new RuntimeException();
+        for (int i = start; i < end; i++) {
+            target.setValue(i, getValue(i) + other.getValue(i));
+        }
     }
 
     @Override
     public void sub_partial(Vector2d target, Vector2d other, int start, int end) {
-        throw new RuntimeException();
+        for (int i = start; i < end; i++) {
+            target.setValue(i, getValue(i) - other.getValue(i));
+        }
     }
 
     @Override
     public double dot_partial(Vector2d other, int start, int end) {
-        throw new RuntimeException();
+        double k = 0;
+        for (int i = start; i < end; i++) {
+            k += getValue(i) * other.getValue(i);
+        }
+        return k;
     }
 
     @Override
     public void outerProduct_partial(DenseMatrix target, Vector2d other, int row) {
-        throw new RuntimeException();
+        for (int n = 0; n < other.getSize(); n++) {
+            target.setValue(row, n, getValue(row) * other.getValue(n));
+        }
     }
 
     @Override
     public void hadamard_partial(Vector2d target, Vector2d other, int start, int end) {
-        throw new RuntimeException();
+        for (int i = start; i < end; i++) {
+            target.setValue(i, getValue(i) * other.getValue(i));
+        }
     }
 
 
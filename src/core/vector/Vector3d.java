@@ -261,37 +261,53 @@ public class Vector3d extends Vector<Vector3d> {
 
     @Override
     public void scale_partial(Vector3d target, double scalar, int start, int end) {
-        throw new RuntimeException();
+        for (int i = start; i < end; i++) {
+            target.setValue(i, getValue(i) * scalar);
+        }
     }
 
     @Override
     public void negate_partial(Vector3d target, int start, int end) {
-        throw new RuntimeException();
+        for (int i = start; i < end; i++) {
+            target.setValue(i, -getValue(i));
+        }
     }
 
     @Override
     public void add_partial(Vector3d target, Vector3d other, int start, int end) {
-        throw new RuntimeException();
+        for (int i = start; i < end; i++) {
+            target.setValue(i, getValue(i) + other.getValue(i));
+        }
     }
 
     @Override
     public void sub_partial(Vector3d target, Vector3d other, int start, int end) {
-        throw new RuntimeException();
+        for (int i = start; i < end; i++) {
+            target.setValue(i, getValue(i) - other.getValue(i));
+        }
     }
 
     @Override
     public double dot_partial(Vector3d other, int start, int end) {
-        throw new RuntimeException();
+        double k = 0;
+        for (int i = start; i < end; i++) {
+            k += getValue(i) * other.getValue(i);
+        }
+        return k;
     }
 
     @Override
     public void outerProduct_partial(DenseMatrix target, Vector3d other, int row) {
-        throw new RuntimeException();
+        for (int n = 0; n < other.getSize(); n++) {
+            target.setValue(row, n, getValue(row) * other.getValue(n));
+        }
     }
 
     @Override
     public void hadamard_partial(Vector3d target, Vector3d other, int start, int end) {
-        throw new RuntimeException();
+        for (int i = start; i < end; i++) {
+            target.setValue(i, getValue(i) * other.getValue(i));
+        }
     }
 
     @Override
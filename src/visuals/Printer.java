@@ -18,5 +18,23 @@ public class Printer {
                 cores);
     }
 
+    public static void print_reordering(long bandwidthBefore, long bandwidthAfter, long profileBefore, long profileAfter){
+        System.out.format("reordering  bandwidth: %d -> %d  profile: %d -> %d%n",
+                bandwidthBefore,
+                bandwidthAfter,
+                profileBefore,
+                profileAfter);
+    }
+
+    public static void print_symbolic(String ordering, long nnzA, long nnzL, double flops, long time){
+        System.out.format("%-8s nnz(A): %d  nnz(L): %d  fill: %.2f  flops: %.3e  ordering[ms]: %d%n",
+                ordering,
+                nnzA,
+                nnzL,
+                (double) nnzL / nnzA,
+                flops,
+                time);
+    }
+
 
 }